@@ -1,11 +1,17 @@
 package com.planbana.backend;
 
+import io.mongock.runner.springboot.EnableMongock;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableMongoAuditing
+@EnableScheduling
+@EnableAsync
+@EnableMongock
 public class BackendApplication {
   public static void main(String[] args) {
     SpringApplication.run(BackendApplication.class, args);
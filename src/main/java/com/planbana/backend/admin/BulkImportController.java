@@ -0,0 +1,93 @@
+package com.planbana.backend.admin;
+
+import com.planbana.backend.destinations.Destination;
+import com.planbana.backend.events.Event;
+import com.planbana.backend.events.EventController;
+import com.planbana.backend.events.NearbyEventCache;
+import com.planbana.backend.feed.FeedService;
+import com.planbana.backend.security.AuthenticatedUser;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Bulk import of partner feeds. Bodies are NDJSON (one JSON record per line, same shape as the
+ * single-record endpoints) and are streamed, validated and inserted in batches.
+ */
+@RestController
+@RequestMapping("/api/admin/import")
+@PreAuthorize("hasRole('ADMIN')")
+public class BulkImportController {
+
+  private final NdjsonImporter importer;
+  private final NearbyEventCache nearbyCache;
+  private final FeedService feed;
+  private final int defaultBatchSize;
+  private final int maxErrors;
+
+  public BulkImportController(NdjsonImporter importer, NearbyEventCache nearbyCache, FeedService feed,
+                              @Value("${app.import.batch-size:1000}") int defaultBatchSize,
+                              @Value("${app.import.max-errors:1000}") int maxErrors) {
+    this.importer = importer;
+    this.nearbyCache = nearbyCache;
+    this.feed = feed;
+    this.defaultBatchSize = defaultBatchSize;
+    this.maxErrors = maxErrors;
+  }
+
+  @PostMapping("/events")
+  public NdjsonImporter.ImportReport importEvents(HttpServletRequest request, Authentication auth,
+                                                  @RequestParam(defaultValue = "false") boolean ordered,
+                                                  @RequestParam(required = false) Integer batchSize) throws IOException {
+    String userId = AuthenticatedUser.idOf(auth);
+    NdjsonImporter.ImportReport report = importer.importStream(request.getInputStream(),
+        EventController.CreateEvent.class, Event.class,
+        r -> validEvent(r).toEvent(userId), ordered, batchSize(batchSize), maxErrors, feed::eventsChanged);
+    if (report.inserted() > 0) {
+      nearbyCache.invalidateAll();
+    }
+    return report;
+  }
+
+  @PostMapping("/destinations")
+  public NdjsonImporter.ImportReport importDestinations(HttpServletRequest request,
+                                                        @RequestParam(defaultValue = "false") boolean ordered,
+                                                        @RequestParam(required = false) Integer batchSize) throws IOException {
+    return importer.importStream(request.getInputStream(), Destination.class, Destination.class,
+        this::validDestination, ordered, batchSize(batchSize), maxErrors);
+  }
+
+  private int batchSize(Integer requested) {
+    return requested == null ? defaultBatchSize : Math.max(1, Math.min(requested, 10_000));
+  }
+
+  private EventController.CreateEvent validEvent(EventController.CreateEvent r) {
+    if (r.title == null || r.title.isBlank()) {
+      throw new IllegalArgumentException("title is required");
+    }
+    if ((r.lat == null) != (r.lng == null)) {
+      throw new IllegalArgumentException("lat and lng must be given together");
+    }
+    if (r.lat != null && (r.lat < -90 || r.lat > 90 || r.lng < -180 || r.lng > 180)) {
+      throw new IllegalArgumentException("lat/lng out of range");
+    }
+    if (r.startAt != null && r.endAt != null && r.endAt.isBefore(r.startAt)) {
+      throw new IllegalArgumentException("endAt is before startAt");
+    }
+    return r;
+  }
+
+  private Destination validDestination(Destination d) {
+    if (d.getName() == null || d.getName().isBlank()) {
+      throw new IllegalArgumentException("name is required");
+    }
+    if (d.getId() != null) {
+      throw new IllegalArgumentException("id must not be set");
+    }
+    return d;
+  }
+}
@@ -0,0 +1,197 @@
+package com.planbana.backend.admin;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.planbana.backend.chat.Message;
+import com.planbana.backend.chat.MessageStore;
+import com.planbana.backend.events.Event;
+import com.planbana.backend.user.User;
+import jakarta.servlet.http.HttpServletResponse;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Streams whole collections for exports and analytics pulls. Documents are read from a Mongo
+ * cursor in {@code _id} order and written straight to the response, so heap use does not depend
+ * on collection size. An interrupted export resumes with {@code after=<last _id received>}.
+ * Messages are read through the {@link MessageStore}, so bucketed storage exports the same rows.
+ */
+@RestController
+@RequestMapping("/api/admin/export")
+@PreAuthorize("hasRole('ADMIN')")
+public class ExportController {
+
+  private record Column<T>(String header, Function<T, Object> value) {}
+
+  private static final List<Column<Event>> EVENT_COLUMNS = List.of(
+      new Column<>("id", Event::getId),
+      new Column<>("title", Event::getTitle),
+      new Column<>("description", Event::getDescription),
+      new Column<>("startAt", Event::getStartAt),
+      new Column<>("endAt", Event::getEndAt),
+      new Column<>("lat", e -> e.getLocation() != null ? e.getLocation().getY() : null),
+      new Column<>("lng", e -> e.getLocation() != null ? e.getLocation().getX() : null),
+      new Column<>("tags", e -> String.join("|", e.getTags())),
+      new Column<>("createdByUserId", Event::getCreatedByUserId),
+      new Column<>("createdAt", Event::getCreatedAt));
+
+  private static final List<Column<Message>> MESSAGE_COLUMNS = List.of(
+      new Column<>("id", Message::getId),
+      new Column<>("conversationId", Message::getConversationId),
+      new Column<>("senderUserId", Message::getSenderUserId),
+      new Column<>("content", Message::getContent),
+      new Column<>("createdAt", Message::getCreatedAt));
+
+  private static final List<Column<User>> USER_COLUMNS = List.of(
+      new Column<>("id", User::getId),
+      new Column<>("email", User::getEmail),
+      new Column<>("displayName", User::getDisplayName),
+      new Column<>("emailVerified", User::isEmailVerified),
+      new Column<>("roles", u -> String.join("|", u.getRoles())),
+      new Column<>("interests", u -> String.join("|", u.getInterests())),
+      new Column<>("city", User::getCity),
+      new Column<>("latitude", User::getLatitude),
+      new Column<>("longitude", User::getLongitude),
+      new Column<>("createdAt", User::getCreatedAt));
+
+  private final MongoTemplate mongo;
+  private final MessageStore messages;
+  private final ObjectWriter jsonWriter;
+  private final int cursorBatchSize;
+  private final int flushEvery;
+
+  public ExportController(MongoTemplate mongo, MessageStore messages, ObjectMapper objectMapper,
+                          @Value("${app.export.cursor-batch-size:1000}") int cursorBatchSize,
+                          @Value("${app.export.flush-every:500}") int flushEvery) {
+    this.mongo = mongo;
+    this.messages = messages;
+    this.jsonWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    this.cursorBatchSize = cursorBatchSize;
+    this.flushEvery = flushEvery;
+  }
+
+  @GetMapping("/{collection}")
+  public void export(@PathVariable String collection,
+                     @RequestParam(defaultValue = "ndjson") String format,
+                     @RequestParam(required = false) String after,
+                     HttpServletResponse response) throws IOException {
+    switch (collection) {
+      case "events" -> write(EVENT_COLUMNS, format, response, () -> mongo.stream(byId(after), Event.class));
+      // Through the store, so bucketed messages are exported too
+      case "messages" -> write(MESSAGE_COLUMNS, format, response,
+          () -> messages.export(validAfter(after), cursorBatchSize));
+      case "users" -> write(USER_COLUMNS, format, response, () -> {
+        Query query = byId(after);
+        query.fields().exclude("passwordHash");
+        return mongo.stream(query, User.class);
+      });
+      default -> throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown export " + collection);
+    }
+  }
+
+  private Query byId(String after) {
+    Query query = new Query().with(Sort.by("_id")).cursorBatchSize(cursorBatchSize);
+    String from = validAfter(after);
+    if (from != null) {
+      query.addCriteria(Criteria.where("_id").gt(from));
+    }
+    return query;
+  }
+
+  private static String validAfter(String after) {
+    if (after == null || after.isBlank()) {
+      return null;
+    }
+    if (!ObjectId.isValid(after)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "after must be an id from a previous export");
+    }
+    return after;
+  }
+
+  private <T> void write(List<Column<T>> columns, String format, HttpServletResponse response,
+                         Supplier<Stream<T>> source) throws IOException {
+    boolean csv = "csv".equalsIgnoreCase(format);
+    if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format must be ndjson or csv");
+    }
+    try (Stream<T> docs = source.get()) {
+      response.setContentType(csv ? "text/csv;charset=UTF-8" : "application/x-ndjson");
+      OutputStream out = response.getOutputStream();
+      if (csv) {
+        writeCsv(docs.iterator(), columns, new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      } else {
+        writeNdjson(docs.iterator(), out);
+      }
+    }
+  }
+
+  private <T> void writeNdjson(Iterator<T> docs, OutputStream out) throws IOException {
+    JsonGenerator gen = jsonWriter.createGenerator(out);
+    // Lines are ended below; the default root separator would start every line after the first with a space
+    gen.setRootValueSeparator(null);
+    int n = 0;
+    while (docs.hasNext()) {
+      jsonWriter.writeValue(gen, docs.next());
+      gen.writeRaw('\n');
+      if (++n % flushEvery == 0) {
+        gen.flush();
+      }
+    }
+    gen.flush();
+  }
+
+  private <T> void writeCsv(Iterator<T> docs, List<Column<T>> columns, Writer out) throws IOException {
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) out.write(',');
+      out.write(columns.get(i).header());
+    }
+    out.write("\r\n");
+    int n = 0;
+    while (docs.hasNext()) {
+      T doc = docs.next();
+      for (int i = 0; i < columns.size(); i++) {
+        if (i > 0) out.write(',');
+        Object v = columns.get(i).value().apply(doc);
+        if (v != null) {
+          writeCsvField(out, v.toString());
+        }
+      }
+      out.write("\r\n");
+      if (++n % flushEvery == 0) {
+        out.flush();
+      }
+    }
+    out.flush();
+  }
+
+  private static void writeCsvField(Writer out, String s) throws IOException {
+    if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+      out.write(s);
+      return;
+    }
+    out.write('"');
+    out.write(s.replace("\"", "\"\""));
+    out.write('"');
+  }
+}
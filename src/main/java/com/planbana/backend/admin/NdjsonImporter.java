@@ -0,0 +1,178 @@
+package com.planbana.backend.admin;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mongodb.bulk.BulkWriteError;
+import com.planbana.backend.common.BaseEntity;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streams an NDJSON body into a collection. Lines are parsed and validated one at a time and
+ * written in bulk batches, so memory use is bounded by the batch size rather than the body size.
+ */
+@Component
+public class NdjsonImporter {
+
+  public record LineError(long line, String error) {}
+
+  /**
+   * @param resumeAtLine for a stopped ordered import, the first line that was not imported: resend the body
+   *                     from there once it is fixed. {@code null} when nothing was skipped
+   */
+  public record ImportReport(long lines, long inserted, long failed, boolean stopped, Long resumeAtLine,
+                             List<LineError> errors) {}
+
+  private final MongoTemplate mongo;
+  private final ObjectMapper objectMapper;
+
+  public NdjsonImporter(MongoTemplate mongo, ObjectMapper objectMapper) {
+    this.mongo = mongo;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * @param mapper    maps a parsed record to the entity to insert, or throws {@link IllegalArgumentException}
+   *                  when it is invalid
+   * @param ordered   stop at the first invalid line or failed write (later lines are not imported);
+   *                  otherwise keep going and report every failure
+   * @param maxErrors error details kept in the report; failures beyond it are only counted
+   */
+  public <R, T> ImportReport importStream(InputStream body, Class<R> recordType, Class<T> entityType,
+                                          Function<R, T> mapper, boolean ordered, int batchSize, int maxErrors)
+      throws IOException {
+    return importStream(body, recordType, entityType, mapper, ordered, batchSize, maxErrors, inserted -> {});
+  }
+
+  /** As above, handing each batch's successfully inserted entities to {@code afterBatch}. */
+  public <R, T> ImportReport importStream(InputStream body, Class<R> recordType, Class<T> entityType,
+                                          Function<R, T> mapper, boolean ordered, int batchSize, int maxErrors,
+                                          Consumer<List<T>> afterBatch) throws IOException {
+    ObjectReader reader = objectMapper.readerFor(recordType);
+    Run<T> run = new Run<>(entityType, ordered, batchSize, maxErrors, afterBatch);
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+      String line;
+      while (!run.stopped && (line = in.readLine()) != null) {
+        run.lines++;
+        if (line.isBlank()) {
+          continue;
+        }
+        T entity;
+        try {
+          R record = reader.readValue(line);
+          if (record == null) {
+            // A literal null line; the mapper would only fail on it with a NullPointerException
+            run.fail(run.lines, "Expected a JSON object");
+            continue;
+          }
+          entity = mapper.apply(record);
+        } catch (JsonProcessingException e) {
+          run.fail(run.lines, "Malformed JSON: " + e.getOriginalMessage());
+          continue;
+        } catch (IllegalArgumentException e) {
+          run.fail(run.lines, e.getMessage());
+          continue;
+        }
+        run.add(run.lines, entity);
+      }
+    }
+    // An ordered run that stopped on a bad line still writes the valid lines before it
+    run.flush();
+    Long resumeAt = run.stopped ? run.firstFailedLine : null;
+    return new ImportReport(run.lines, run.inserted, run.failed, run.stopped, resumeAt, run.errors);
+  }
+
+  private final class Run<T> {
+    final Class<T> entityType;
+    final boolean ordered;
+    final int batchSize;
+    final int maxErrors;
+    final Consumer<List<T>> afterBatch;
+    final List<T> batch;
+    final long[] batchLines;
+    final List<LineError> errors = new ArrayList<>();
+    long lines;
+    long inserted;
+    long failed;
+    long firstFailedLine = Long.MAX_VALUE;
+    boolean stopped;
+
+    Run(Class<T> entityType, boolean ordered, int batchSize, int maxErrors, Consumer<List<T>> afterBatch) {
+      this.entityType = entityType;
+      this.ordered = ordered;
+      this.batchSize = batchSize;
+      this.maxErrors = maxErrors;
+      this.afterBatch = afterBatch;
+      this.batch = new ArrayList<>(batchSize);
+      this.batchLines = new long[batchSize];
+    }
+
+    void add(long line, T entity) {
+      if (entity instanceof BaseEntity e) {
+        // Bulk inserts bypass the template's version initialisation and do not hand generated ids back,
+        // so ids are assigned here for afterBatch to see
+        if (e.getId() == null) {
+          e.setId(new ObjectId().toHexString());
+        }
+        e.setVersion(0L);
+      }
+      batchLines[batch.size()] = line;
+      batch.add(entity);
+      if (batch.size() == batchSize) {
+        flush();
+      }
+    }
+
+    void fail(long line, String error) {
+      failed++;
+      firstFailedLine = Math.min(firstFailedLine, line);
+      if (errors.size() < maxErrors) {
+        errors.add(new LineError(line, error));
+      }
+      if (ordered) {
+        stopped = true;
+      }
+    }
+
+    void flush() {
+      if (batch.isEmpty()) {
+        return;
+      }
+      BulkOperations.BulkMode mode = ordered ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED;
+      List<T> written = new ArrayList<>(batch);
+      try {
+        inserted += mongo.bulkOps(mode, entityType).insert(batch).execute().getInsertedCount();
+      } catch (BulkOperationException e) {
+        inserted += e.getResult().getInsertedCount();
+        // Ordered writes stop at the first error; unordered ones skip only the failed documents
+        written = new ArrayList<>(batch.subList(0, ordered ? e.getResult().getInsertedCount() : batch.size()));
+        for (BulkWriteError error : e.getErrors()) {
+          fail(batchLines[error.getIndex()], error.getMessage());
+          if (!ordered) {
+            written.set(error.getIndex(), null);
+          }
+        }
+        written.removeIf(Objects::isNull);
+      }
+      batch.clear();
+      if (!written.isEmpty()) {
+        afterBatch.accept(written);
+      }
+    }
+  }
+}
@@ -1,9 +1,12 @@
 package com.planbana.backend.auth;
 
 import com.planbana.backend.auth.dto.AuthDtos;
+import com.planbana.backend.common.PartialUpdater;
 import com.planbana.backend.security.JwtService;
+import com.planbana.backend.security.UserDetailsCache;
 import com.planbana.backend.user.User;
 import com.planbana.backend.user.UserRepository;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -14,7 +17,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
-//import java.time.temporal.ChronoUnit;
+import java.time.temporal.ChronoUnit;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -30,10 +33,12 @@ public class AuthController {
   private final VerificationTokenRepository verifyRepo;
   private final PasswordResetTokenRepository resetRepo;
   private final MailService mailService;
+  private final UserDetailsCache userDetailsCache;
+  private final PartialUpdater updater;
 
   public AuthController(UserRepository users, PasswordEncoder encoder, AuthenticationManager authManager,
                         JwtService jwt, VerificationTokenRepository verifyRepo, PasswordResetTokenRepository resetRepo,
-                        MailService mailService) {
+                        MailService mailService, UserDetailsCache userDetailsCache, PartialUpdater updater) {
     this.users = users;
     this.encoder = encoder;
     this.authManager = authManager;
@@ -41,6 +46,8 @@ public class AuthController {
     this.verifyRepo = verifyRepo;
     this.resetRepo = resetRepo;
     this.mailService = mailService;
+    this.userDetailsCache = userDetailsCache;
+    this.updater = updater;
   }
 
   @PostMapping("/register")
@@ -57,7 +64,7 @@ public class AuthController {
 
     String token = UUID.randomUUID().toString();
     verifyRepo.save(new VerificationToken(u.getId(), token, Instant.now().plus(24, ChronoUnit.HOURS)));
-    mailService.sendSimple(u.getEmail(), "Verify your email", "Click to verify: /verify-email?token=" + token);
+    mailService.queue("verify-email", u.getEmail(), u.getId(), "Verify your email", "Click to verify: /verify-email?token=" + token);
 
     return ResponseEntity.ok(Map.of("message", "Registered. Please verify your email."));
   }
@@ -68,9 +75,9 @@ public class AuthController {
       if (v.getExpiresAt().isBefore(Instant.now())) {
         return ResponseEntity.badRequest().body(Map.of("error", "Token expired"));
       }
-      User u = users.findById(v.getUserId()).orElseThrow();
-      u.setEmailVerified(true);
-      users.save(u);
+      // A targeted $set, so a concurrent profile update neither loses this nor fails on the version
+      User u = updater.apply(User.class, v.getUserId(), null, Map.of("emailVerified", true));
+      userDetailsCache.evict(u.getEmail());
       verifyRepo.delete(v);
       return ResponseEntity.ok(Map.of("message", "Email verified."));
     }).orElse(ResponseEntity.badRequest().body(Map.of("error", "Invalid token")));
@@ -80,7 +87,7 @@ public class AuthController {
   public ResponseEntity<?> login(@Valid @RequestBody AuthDtos.LoginRequest req, HttpServletResponse res) {
     authManager.authenticate(new UsernamePasswordAuthenticationToken(req.email, req.password));
     User u = users.findByEmail(req.email).orElseThrow();
-    String access = jwt.generateAccess(u.getEmail(), Map.of("roles", u.getRoles()));
+    String access = jwt.generateAccess(u.getEmail(), Map.of("uid", u.getId(), "roles", u.getRoles()));
     String refresh = jwt.generateRefresh(u.getEmail());
     Cookie cookie = new Cookie("access_token", access);
     cookie.setPath("/");
@@ -92,12 +99,14 @@ public class AuthController {
 
   @PostMapping("/refresh")
   public ResponseEntity<?> refresh(@RequestBody AuthDtos.RefreshRequest req, HttpServletResponse res) {
-    if (!jwt.validateToken(req.refreshToken)) {
+    String username;
+    try {
+      username = jwt.verify(req.refreshToken).subject();
+    } catch (JwtException e) {
       return ResponseEntity.badRequest().body(Map.of("error", "Invalid refresh token"));
     }
-    String username = jwt.getUsername(req.refreshToken);
     User u = users.findByEmail(username).orElseThrow();
-    String access = jwt.generateAccess(u.getEmail(), Map.of("roles", u.getRoles()));
+    String access = jwt.generateAccess(u.getEmail(), Map.of("uid", u.getId(), "roles", u.getRoles()));
     Cookie cookie = new Cookie("access_token", access);
     cookie.setPath("/");
     cookie.setHttpOnly(true);
@@ -120,7 +129,7 @@ public class AuthController {
     return users.findByEmail(req.email.toLowerCase()).map(u -> {
       String token = UUID.randomUUID().toString();
       resetRepo.save(new PasswordResetToken(u.getId(), token, Instant.now().plus(1, ChronoUnit.HOURS)));
-      mailService.sendSimple(u.getEmail(), "Password reset", "Reset link: /reset-password?token=" + token);
+      mailService.queue("password-reset", u.getEmail(), u.getId(), "Password reset", "Reset link: /reset-password?token=" + token);
       return ResponseEntity.ok(Map.of("message", "If your email exists, a reset link has been sent."));
     }).orElse(ResponseEntity.ok(Map.of("message", "If your email exists, a reset link has been sent.")));
   }
@@ -131,9 +140,9 @@ public class AuthController {
       if (t.getExpiresAt().isBefore(Instant.now())) {
         return ResponseEntity.badRequest().body(Map.of("error", "Token expired"));
       }
-      var user = users.findById(t.getUserId()).orElseThrow();
-      user.setPasswordHash(encoder.encode(req.newPassword));
-      users.save(user);
+      User user = updater.apply(User.class, t.getUserId(), null,
+          Map.of("passwordHash", encoder.encode(req.newPassword)));
+      userDetailsCache.evict(user.getEmail());
       resetRepo.delete(t);
       return ResponseEntity.ok(Map.of("message", "Password updated"));
     }).orElse(ResponseEntity.badRequest().body(Map.of("error", "Invalid token")));
@@ -0,0 +1,191 @@
+package com.planbana.backend.auth;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the mail outbox. Each run claims a batch of due entries (safe across instances: the claim
+ * is a conditional multi-update), sends the whole batch through one {@code JavaMailSender.send}
+ * call so the SMTP connection is reused, and reschedules failures with exponential backoff.
+ * The {@code mail.outbox.pending} gauge is refreshed on its own slower schedule, not per poll.
+ */
+@Component
+public class MailOutboxDispatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(MailOutboxDispatcher.class);
+
+  private final MongoTemplate mongo;
+  private final JavaMailSender mailSender;
+  private final int batchSize;
+  private final int maxAttempts;
+  private final Duration backoffBase;
+  private final Duration backoffMax;
+  private final Duration lease;
+
+  private final AtomicLong pending = new AtomicLong();
+  private final Timer sendLatency;
+  private final Counter sent;
+  private final Counter failed;
+
+  public MailOutboxDispatcher(MongoTemplate mongo, JavaMailSender mailSender, MeterRegistry registry,
+                              @Value("${app.mail.outbox.batch-size:50}") int batchSize,
+                              @Value("${app.mail.outbox.max-attempts:8}") int maxAttempts,
+                              @Value("${app.mail.outbox.backoff-base-seconds:30}") long backoffBaseSeconds,
+                              @Value("${app.mail.outbox.backoff-max-seconds:3600}") long backoffMaxSeconds,
+                              @Value("${app.mail.outbox.lease-seconds:120}") long leaseSeconds) {
+    this.mongo = mongo;
+    this.mailSender = mailSender;
+    this.batchSize = batchSize;
+    this.maxAttempts = maxAttempts;
+    this.backoffBase = Duration.ofSeconds(backoffBaseSeconds);
+    this.backoffMax = Duration.ofSeconds(backoffMaxSeconds);
+    this.lease = Duration.ofSeconds(leaseSeconds);
+    this.sendLatency = Timer.builder("mail.outbox.send").description("SMTP send time per batch").register(registry);
+    this.sent = Counter.builder("mail.outbox.sent").register(registry);
+    this.failed = Counter.builder("mail.outbox.failed").description("Failed delivery attempts").register(registry);
+    Gauge.builder("mail.outbox.pending", pending, AtomicLong::get).register(registry);
+  }
+
+  @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval-ms:1000}")
+  public void dispatch() {
+    try {
+      List<OutboundMail> batch;
+      do {
+        batch = claimBatch();
+        if (!batch.isEmpty()) {
+          send(batch);
+        }
+      } while (batch.size() == batchSize);
+    } catch (RuntimeException e) {
+      log.warn("Mail outbox dispatch failed: {}", e.getMessage());
+    }
+  }
+
+  /** Counted off {@code status_1_nextAttemptAt_1}, so this is an index-only count. */
+  @Scheduled(fixedDelayString = "${app.mail.outbox.pending-refresh-ms:30000}")
+  public void refreshPending() {
+    try {
+      pending.set(mongo.count(Query.query(Criteria.where("status").is(OutboundMail.Status.PENDING)), OutboundMail.class));
+    } catch (RuntimeException e) {
+      log.warn("Mail outbox pending count failed: {}", e.getMessage());
+    }
+  }
+
+  private List<OutboundMail> claimBatch() {
+    Instant now = Instant.now();
+    Criteria due = new Criteria().orOperator(
+        Criteria.where("status").is(OutboundMail.Status.PENDING).and("nextAttemptAt").lte(now),
+        Criteria.where("status").is(OutboundMail.Status.SENDING).and("lockedUntil").lt(now));
+    Query candidates = Query.query(due).with(Sort.by("nextAttemptAt")).limit(batchSize);
+    candidates.fields().include("_id");
+    List<String> ids = mongo.find(candidates, OutboundMail.class).stream().map(OutboundMail::getId).toList();
+    if (ids.isEmpty()) {
+      return List.of();
+    }
+    String claim = UUID.randomUUID().toString();
+    mongo.updateMulti(Query.query(new Criteria().andOperator(Criteria.where("_id").in(ids), due)),
+        new Update()
+            .set("status", OutboundMail.Status.SENDING)
+            .set("claim", claim)
+            .set("lockedUntil", now.plus(lease)),
+        OutboundMail.class);
+    return mongo.find(Query.query(Criteria.where("claim").is(claim)), OutboundMail.class);
+  }
+
+  private void send(List<OutboundMail> batch) {
+    SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+    for (int i = 0; i < messages.length; i++) {
+      OutboundMail m = batch.get(i);
+      SimpleMailMessage msg = new SimpleMailMessage();
+      msg.setTo(m.getTo());
+      msg.setSubject(m.getSubject());
+      msg.setText(m.getText());
+      messages[i] = msg;
+    }
+
+    Map<Object, Exception> failures = Map.of();
+    MailException batchFailure = null;
+    long start = System.nanoTime();
+    try {
+      mailSender.send(messages);
+    } catch (MailSendException e) {
+      failures = e.getFailedMessages();
+      if (failures.isEmpty()) {
+        batchFailure = e;
+      }
+    } catch (MailException e) {
+      batchFailure = e;
+    } finally {
+      sendLatency.record(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    Instant now = Instant.now();
+    List<String> delivered = new ArrayList<>(batch.size());
+    for (int i = 0; i < messages.length; i++) {
+      OutboundMail m = batch.get(i);
+      Exception error = batchFailure != null ? batchFailure : failures.get(messages[i]);
+      if (error == null) {
+        delivered.add(m.getId());
+      } else {
+        reschedule(m, error, now);
+      }
+    }
+    if (!delivered.isEmpty()) {
+      mongo.updateMulti(Query.query(Criteria.where("_id").in(delivered)),
+          new Update()
+              .set("status", OutboundMail.Status.SENT)
+              .set("sentAt", now)
+              .unset("dedupeKey")
+              .unset("claim")
+              .unset("lockedUntil"),
+          OutboundMail.class);
+      sent.increment(delivered.size());
+    }
+  }
+
+  private void reschedule(OutboundMail m, Exception error, Instant now) {
+    failed.increment();
+    int attempts = m.getAttempts() + 1;
+    Update update = new Update()
+        .set("attempts", attempts)
+        .set("lastError", String.valueOf(error.getMessage()))
+        .unset("claim")
+        .unset("lockedUntil");
+    if (attempts >= maxAttempts) {
+      update.set("status", OutboundMail.Status.FAILED).unset("dedupeKey");
+      log.warn("Giving up on mail {} after {} attempts: {}", m.getDedupeKey(), attempts, error.getMessage());
+    } else {
+      update.set("status", OutboundMail.Status.PENDING).set("nextAttemptAt", now.plus(backoff(attempts)));
+    }
+    mongo.updateFirst(Query.query(Criteria.where("_id").is(m.getId())), update, OutboundMail.class);
+  }
+
+  private Duration backoff(int attempts) {
+    Duration d = backoffBase.multipliedBy(1L << Math.min(attempts - 1, 20));
+    return d.compareTo(backoffMax) > 0 ? backoffMax : d;
+  }
+}
@@ -1,27 +1,31 @@
 package com.planbana.backend.auth;
 
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
+/**
+ * Queues outgoing mail in the {@code mail_outbox} collection. Delivery happens asynchronously in
+ * {@link MailOutboxDispatcher}, so request latency does not depend on the SMTP server.
+ */
 @Service
 public class MailService {
-  private final JavaMailSender mailSender;
+  private final MongoTemplate mongo;
 
-  public MailService(JavaMailSender mailSender) {
-    this.mailSender = mailSender;
+  public MailService(MongoTemplate mongo) {
+    this.mongo = mongo;
   }
 
-  public void sendSimple(String to, String subject, String text) {
+  /**
+   * Adds a plain-text mail to the outbox. While a mail with the same template, recipient and
+   * purpose (e.g. the user it concerns) is still unsent, queueing another one is a no-op, so
+   * double submits do not send twice. Once it has been sent or given up on, the next one queues.
+   */
+  public void queue(String template, String to, String purpose, String subject, String text) {
     try {
-      SimpleMailMessage msg = new SimpleMailMessage();
-      msg.setTo(to);
-      msg.setSubject(subject);
-      msg.setText(text);
-      mailSender.send(msg);
-    } catch (Exception e) {
-      // In dev, mail may not be configured. Log and continue.
-      System.out.println("[MailService] Could not send: " + e.getMessage());
+      mongo.insert(new OutboundMail(template + ":" + to + ":" + purpose, to, subject, text));
+    } catch (DuplicateKeyException e) {
+      // Already queued
     }
   }
 }
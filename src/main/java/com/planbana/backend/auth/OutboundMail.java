@@ -0,0 +1,65 @@
+package com.planbana.backend.auth;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Mail waiting in the outbox. Written by {@link MailService} on the request path and delivered
+ * by {@link MailOutboxDispatcher}; sent entries are removed by the TTL on {@code sentAt}.
+ */
+@Document("mail_outbox")
+public class OutboundMail {
+
+  public enum Status { PENDING, SENDING, SENT, FAILED }
+
+  @Id
+  private String id;
+
+  /**
+   * Unique among unsent mail through the partial index {@code dedupeKey_1_unsent} (see
+   * {@code MailOutboxDedupeChangeLog}); cleared once the mail is sent or has failed for good.
+   */
+  private String dedupeKey;
+
+  private String to;
+  private String subject;
+  private String text;
+
+  private Status status = Status.PENDING;
+  private int attempts;
+  private Instant nextAttemptAt;
+  private String claim;
+  private Instant lockedUntil;
+  private String lastError;
+
+  private Instant createdAt;
+  @Indexed(expireAfter = "7d")
+  private Instant sentAt;
+
+  public OutboundMail() {}
+  public OutboundMail(String dedupeKey, String to, String subject, String text) {
+    this.dedupeKey = dedupeKey;
+    this.to = to;
+    this.subject = subject;
+    this.text = text;
+    this.createdAt = Instant.now();
+    this.nextAttemptAt = this.createdAt;
+  }
+
+  public String getId() { return id; }
+  public String getDedupeKey() { return dedupeKey; }
+  public String getTo() { return to; }
+  public String getSubject() { return subject; }
+  public String getText() { return text; }
+  public Status getStatus() { return status; }
+  public int getAttempts() { return attempts; }
+  public Instant getNextAttemptAt() { return nextAttemptAt; }
+  public String getClaim() { return claim; }
+  public Instant getLockedUntil() { return lockedUntil; }
+  public String getLastError() { return lastError; }
+  public Instant getCreatedAt() { return createdAt; }
+  public Instant getSentAt() { return sentAt; }
+}
@@ -1,41 +1,176 @@
 package com.planbana.backend.buddies;
 
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.security.AuthenticatedUser;
 import com.planbana.backend.user.User;
-import com.planbana.backend.user.UserRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @RestController
 @RequestMapping("/api/buddies")
 public class BuddyController {
+  static final int MAX_PAGE_SIZE = 50;
+
   private final MongoTemplate mongo;
+  private final InterestIndex interestIndex;
 
-  public BuddyController(MongoTemplate mongo) {
+  public BuddyController(MongoTemplate mongo, InterestIndex interestIndex) {
     this.mongo = mongo;
+    this.interestIndex = interestIndex;
   }
 
+  /**
+   * Users ranked by how much their interests overlap with {@code interests} (the caller's own
+   * interests when omitted), best first. Ranking runs on the in-memory {@link InterestIndex}; only
+   * the returned profiles are read from Mongo.
+   */
+  @GetMapping("/matches")
+  public List<BuddyMatch> matches(Authentication auth,
+                                  @RequestParam(required = false) Set<String> interests,
+                                  @RequestParam(defaultValue = "20") int size) {
+    String userId = AuthenticatedUser.idOf(auth);
+    if (interests == null || interests.isEmpty()) {
+      User me = mongo.findById(userId, User.class);
+      interests = me == null ? Set.of() : me.getInterests();
+    }
+    List<InterestIndex.Match> ranked = interestIndex.match(interests, userId, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+    if (ranked.isEmpty()) {
+      return List.of();
+    }
+    List<ObjectId> ids = ranked.stream().map(m -> new ObjectId(m.userId())).toList();
+    Query query = new BasicQuery(new Document("_id", new Document("$in", ids)));
+    query.fields().include("displayName", "avatarUrl", "bio", "city", "interests");
+    Map<String, BuddyProfile> profiles = new HashMap<>();
+    for (Document d : mongo.find(query, Document.class, "users")) {
+      BuddyProfile p = profile(d, null);
+      profiles.put(p.id(), p);
+    }
+    List<BuddyMatch> result = new ArrayList<>(ranked.size());
+    for (InterestIndex.Match m : ranked) {
+      BuddyProfile p = profiles.get(m.userId());
+      if (p != null) {
+        result.add(new BuddyMatch(p, m.shared(), m.score()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds other users sharing any of {@code interests} and/or living in {@code city}. With lat/lng
+   * this is a {@code $geoNear} over the users' 2dsphere index, nearest first within
+   * {@code radiusKm}; otherwise results are in id order. Pages are capped at {@value #MAX_PAGE_SIZE}
+   * and continue with the returned {@code nextCursor}.
+   */
   @GetMapping
-  public List<User> find(
+  public CursorPage<BuddyProfile> find(
+      Authentication auth,
       @RequestParam(required = false) Set<String> interests,
       @RequestParam(required = false) Double lat,
       @RequestParam(required = false) Double lng,
       @RequestParam(required = false, defaultValue = "25") Double radiusKm,
-      @RequestParam(required = false) String city
+      @RequestParam(required = false) String city,
+      @RequestParam(defaultValue = "20") int size,
+      @RequestParam(required = false) String cursor
   ) {
-    Query q = new Query();
+    int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    BuddyCursor after = cursor == null || cursor.isBlank() ? null : BuddyCursor.decode(cursor);
+    List<ObjectId> excluded = new ArrayList<>();
+    excluded.add(new ObjectId(AuthenticatedUser.idOf(auth)));
+
+    Document filter = new Document();
     if (interests != null && !interests.isEmpty()) {
-      q.addCriteria(Criteria.where("interests").in(interests));
+      filter.append("interests", new Document("$in", interests));
     }
     if (city != null && !city.isBlank()) {
-      q.addCriteria(Criteria.where("city").regex("^" + city + "$", "i"));
+      filter.append("cityNormalized", User.normalizeCity(city));
+    }
+    if (lat != null && lng != null) {
+      if (after != null) {
+        after.ids().forEach(id -> excluded.add(objectId(id)));
+      }
+      filter.append("_id", new Document("$nin", excluded));
+      return near(lat, lng, radiusKm, filter, after, limit);
+    }
+    filter.append("_id", after == null
+        ? new Document("$ne", excluded.get(0))
+        : new Document("$ne", excluded.get(0)).append("$gt", objectId(after.ids().get(0))));
+    Query query = new BasicQuery(filter).with(Sort.by("_id")).limit(limit + 1);
+    query.fields().include("displayName", "avatarUrl", "bio", "city", "interests");
+    List<BuddyProfile> items = new ArrayList<>();
+    for (Document d : mongo.find(query, Document.class, "users")) {
+      items.add(profile(d, null));
+    }
+    String next = null;
+    if (items.size() > limit) {
+      items = items.subList(0, limit);
+      next = new BuddyCursor(0, List.of(items.get(limit - 1).id())).encode();
+    }
+    return new CursorPage<>(items, next);
+  }
+
+  private CursorPage<BuddyProfile> near(double lat, double lng, double radiusKm, Document filter,
+                                        BuddyCursor after, int limit) {
+    Document geoNear = new Document("near", new Document("type", "Point").append("coordinates", List.of(lng, lat)))
+        .append("key", "location")
+        .append("distanceField", "distance")
+        .append("maxDistance", radiusKm * 1000)
+        .append("query", filter)
+        .append("spherical", true);
+    if (after != null) {
+      geoNear.append("minDistance", after.distanceMeters());
+    }
+    Aggregation pipeline = Aggregation.newAggregation(
+        Aggregation.stage(new Document("$geoNear", geoNear)),
+        Aggregation.limit(limit + 1),
+        Aggregation.project("displayName", "avatarUrl", "bio", "city", "interests", "distance"));
+    List<Document> docs = mongo.aggregate(pipeline, "users", Document.class).getMappedResults();
+
+    List<BuddyProfile> items = new ArrayList<>(Math.min(docs.size(), limit));
+    for (int i = 0; i < docs.size() && i < limit; i++) {
+      items.add(profile(docs.get(i), docs.get(i).getDouble("distance") / 1000));
+    }
+    String next = null;
+    if (docs.size() > limit) {
+      // Skip everything already returned at the boundary distance, including from earlier pages
+      double boundary = docs.get(limit - 1).getDouble("distance");
+      List<String> ids = new ArrayList<>();
+      if (after != null && after.distanceMeters() == boundary) {
+        ids.addAll(after.ids());
+      }
+      for (int i = limit - 1; i >= 0 && docs.get(i).getDouble("distance") == boundary; i--) {
+        ids.add(docs.get(i).getObjectId("_id").toHexString());
+      }
+      next = new BuddyCursor(boundary, ids).encode();
+    }
+    return new CursorPage<>(items, next);
+  }
+
+  private static BuddyProfile profile(Document d, Double distanceKm) {
+    List<String> interests = d.getList("interests", String.class);
+    return new BuddyProfile(d.getObjectId("_id").toHexString(), d.getString("displayName"),
+        d.getString("avatarUrl"), d.getString("bio"), d.getString("city"),
+        interests == null ? Set.of() : Set.copyOf(interests), distanceKm);
+  }
+
+  private static ObjectId objectId(String id) {
+    if (!ObjectId.isValid(id)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
     }
-    // For simplicity, we rely on stored lat/long in user doc
-    // Advanced: convert to GeoJSON + geo index.
-    return mongo.find(q, User.class);
+    return new ObjectId(id);
   }
 }
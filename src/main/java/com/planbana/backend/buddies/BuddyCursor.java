@@ -0,0 +1,35 @@
+package com.planbana.backend.buddies;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position in a buddy search. Location searches continue from {@code distanceMeters} and skip the
+ * {@code ids} already returned at exactly that distance; other searches continue after the single id.
+ */
+record BuddyCursor(double distanceMeters, List<String> ids) {
+
+  String encode() {
+    String raw = Double.doubleToLongBits(distanceMeters) + ":" + String.join(",", ids);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static BuddyCursor decode(String cursor) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int sep = raw.indexOf(':');
+      List<String> ids = Arrays.asList(raw.substring(sep + 1).split(","));
+      if (ids.size() > 500) {
+        throw new IllegalArgumentException("too many ids");
+      }
+      return new BuddyCursor(Double.longBitsToDouble(Long.parseLong(raw.substring(0, sep))), ids);
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+  }
+}
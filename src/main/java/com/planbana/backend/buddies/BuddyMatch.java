@@ -0,0 +1,9 @@
+package com.planbana.backend.buddies;
+
+/**
+ * A ranked buddy suggestion.
+ *
+ * @param score Jaccard similarity of the two users' interests, in (0, 1]
+ */
+public record BuddyMatch(BuddyProfile profile, int sharedInterests, double score) {
+}
@@ -0,0 +1,12 @@
+package com.planbana.backend.buddies;
+
+import java.util.Set;
+
+/**
+ * The public part of a user returned by buddy search.
+ *
+ * @param distanceKm from the search point; null when the search was not by location
+ */
+public record BuddyProfile(String id, String displayName, String avatarUrl, String bio, String city,
+                           Set<String> interests, Double distanceKm) {
+}
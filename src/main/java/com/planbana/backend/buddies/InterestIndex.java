@@ -0,0 +1,321 @@
+package com.planbana.backend.buddies;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-process inverted index from interest tag to a compressed bitmap of user ordinals, used to
+ * rank buddies by shared interests without scanning users in Mongo. Ranking counts overlaps into
+ * a reusable {@code int[]} per thread and keeps the best candidates in a primitive heap.
+ *
+ * <p>Rebuilt from {@code users} at startup and every {@code rebuild-interval-ms}; interest changes
+ * made through this node are applied immediately, those made through other nodes on the next rebuild.
+ * Changes that arrive while a rebuild is reading {@code users} are replayed onto the new index
+ * before it replaces the current one, since the read may have passed those users already.
+ */
+@Component
+public class InterestIndex {
+
+  /** A ranked candidate: {@code shared} interests in common and their Jaccard similarity. */
+  public record Match(String userId, int shared, double score) {}
+
+  private static final Logger log = LoggerFactory.getLogger(InterestIndex.class);
+
+  private final MongoTemplate mongo;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  // Working arrays are as large as the user base, so they are pooled rather than kept per thread
+  private final ArrayBlockingQueue<Scratch> scratchPool =
+      new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors() * 2);
+  private State state = new State();
+  // Interest changes seen while a rebuild is running, by user; null when none is. Guarded by the write lock
+  private Map<String, Collection<String>> changedDuringRebuild;
+
+  public InterestIndex(MongoTemplate mongo, MeterRegistry registry) {
+    this.mongo = mongo;
+    Gauge.builder("buddies.interest_index.users", this, i -> i.size()).register(registry);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelayString = "${app.buddies.index.rebuild-interval-ms:3600000}",
+      fixedDelayString = "${app.buddies.index.rebuild-interval-ms:3600000}")
+  public synchronized void rebuild() {
+    long started = System.nanoTime();
+    lock.writeLock().lock();
+    try {
+      changedDuringRebuild = new LinkedHashMap<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    State next = new State();
+    Query query = Query.query(Criteria.where("interests.0").exists(true));
+    query.fields().include("interests");
+    try (Stream<Document> users = mongo.stream(query, Document.class, "users")) {
+      Iterator<Document> it = users.iterator();
+      while (it.hasNext()) {
+        Document u = it.next();
+        next.put(u.getObjectId("_id").toHexString(), u.getList("interests", String.class));
+      }
+    } catch (RuntimeException e) {
+      log.warn("Rebuilding the interest index failed, keeping the current one: {}", e.getMessage());
+      lock.writeLock().lock();
+      try {
+        changedDuringRebuild = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+      return;
+    }
+    for (RoaringBitmap postings : next.postings) {
+      if (postings != null) {
+        postings.runOptimize();
+      }
+    }
+    lock.writeLock().lock();
+    try {
+      changedDuringRebuild.forEach(next::put);
+      changedDuringRebuild = null;
+      state = next;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    log.info("Interest index rebuilt: {} users, {} tags in {} ms",
+        next.size, next.tagIds.size(), (System.nanoTime() - started) / 1_000_000);
+  }
+
+  /** Replaces a user's interests in the index. */
+  public void update(String userId, Collection<String> interests) {
+    lock.writeLock().lock();
+    try {
+      state.put(userId, interests);
+      if (changedDuringRebuild != null) {
+        changedDuringRebuild.put(userId, interests);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return state.size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * The {@code limit} users most similar to {@code interests} by Jaccard overlap, best first,
+   * excluding {@code excludeUserId}. Users sharing no interest are never returned.
+   */
+  public List<Match> match(Collection<String> interests, String excludeUserId, int limit) {
+    Scratch scratch = scratchPool.poll();
+    if (scratch == null) {
+      scratch = new Scratch();
+    }
+    lock.readLock().lock();
+    try {
+      return state.match(interests, excludeUserId, limit, scratch);
+    } finally {
+      lock.readLock().unlock();
+      scratchPool.offer(scratch);
+    }
+  }
+
+  /** Working arrays for one query, grown on demand and left zeroed afterwards. */
+  private static final class Scratch {
+    int[] counts = new int[0];
+    int[] touched = new int[0];
+    int[] heapOrds = new int[0];
+    double[] heapScores = new double[0];
+  }
+
+  private static final class State {
+    final Map<String, Integer> ordinals = new HashMap<>();
+    final Map<String, Integer> tagIds = new HashMap<>();
+    RoaringBitmap[] postings = new RoaringBitmap[64];
+    String[] userIds = new String[1024];
+    int[][] tagsOf = new int[1024][];
+    int size;
+
+    void put(String userId, Collection<String> interests) {
+      Integer existing = ordinals.get(userId);
+      int ord;
+      if (existing == null) {
+        ord = size++;
+        if (ord == userIds.length) {
+          userIds = Arrays.copyOf(userIds, ord * 2);
+          tagsOf = Arrays.copyOf(tagsOf, ord * 2);
+        }
+        userIds[ord] = userId;
+        ordinals.put(userId, ord);
+      } else {
+        ord = existing;
+        for (int tag : tagsOf[ord]) {
+          postings[tag].remove(ord);
+        }
+      }
+      int[] tags = new int[interests == null ? 0 : interests.size()];
+      int n = 0;
+      if (interests != null) {
+        for (String interest : interests) {
+          int tag = tagId(interest);
+          postings[tag].add(ord);
+          tags[n++] = tag;
+        }
+      }
+      tagsOf[ord] = n == tags.length ? tags : Arrays.copyOf(tags, n);
+    }
+
+    private int tagId(String interest) {
+      Integer id = tagIds.get(interest);
+      if (id == null) {
+        id = tagIds.size();
+        tagIds.put(interest, id);
+        if (id == postings.length) {
+          postings = Arrays.copyOf(postings, id * 2);
+        }
+        postings[id] = new RoaringBitmap();
+      }
+      return id;
+    }
+
+    List<Match> match(Collection<String> interests, String excludeUserId, int limit, Scratch s) {
+      if (interests == null || interests.isEmpty() || limit <= 0 || size == 0) {
+        return List.of();
+      }
+      if (s.counts.length < size) {
+        s.counts = new int[Math.max(size, s.counts.length * 2)];
+        s.touched = new int[s.counts.length];
+      }
+      int[] counts = s.counts;
+      int[] touched = s.touched;
+      int touchedCount = 0;
+      int queryTags = 0;
+      for (String interest : interests) {
+        Integer tag = tagIds.get(interest);
+        queryTags++;
+        if (tag == null) {
+          continue;
+        }
+        IntIterator it = postings[tag].getIntIterator();
+        while (it.hasNext()) {
+          int ord = it.next();
+          if (counts[ord]++ == 0) {
+            touched[touchedCount++] = ord;
+          }
+        }
+      }
+
+      Integer excluded = excludeUserId == null ? null : ordinals.get(excludeUserId);
+      int excludedOrd = excluded == null ? -1 : excluded;
+      if (s.heapOrds.length < limit) {
+        s.heapOrds = new int[limit];
+        s.heapScores = new double[limit];
+      }
+      int[] heapOrds = s.heapOrds;
+      double[] heapScores = s.heapScores;
+      int heapSize = 0;
+      for (int i = 0; i < touchedCount; i++) {
+        int ord = touched[i];
+        int shared = counts[ord];
+        counts[ord] = 0;
+        if (ord == excludedOrd) {
+          continue;
+        }
+        double score = (double) shared / (queryTags + tagsOf[ord].length - shared);
+        if (heapSize < limit) {
+          heapOrds[heapSize] = ord;
+          heapScores[heapSize] = score;
+          siftUp(heapOrds, heapScores, heapSize++);
+        } else if (better(score, ord, heapScores[0], heapOrds[0])) {
+          heapOrds[0] = ord;
+          heapScores[0] = score;
+          siftDown(heapOrds, heapScores, heapSize);
+        }
+      }
+
+      // Drain the min-heap from the back so the best match comes first
+      Match[] result = new Match[heapSize];
+      for (int i = heapSize - 1; i >= 0; i--) {
+        int ord = heapOrds[0];
+        double score = heapScores[0];
+        // Jaccard j = s / (q + t - s), so the shared count s = j (q + t) / (1 + j)
+        int shared = (int) Math.round(score * (queryTags + tagsOf[ord].length) / (1 + score));
+        result[i] = new Match(userIds[ord], shared, score);
+        heapOrds[0] = heapOrds[i];
+        heapScores[0] = heapScores[i];
+        siftDown(heapOrds, heapScores, i);
+      }
+      return Arrays.asList(result);
+    }
+
+    /** Higher score wins; ties go to the older (lower) ordinal so results are stable. */
+    private static boolean better(double score, int ord, double otherScore, int otherOrd) {
+      return score > otherScore || (score == otherScore && ord < otherOrd);
+    }
+
+    private static void siftUp(int[] ords, double[] scores, int i) {
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!better(scores[parent], ords[parent], scores[i], ords[i])) {
+          return;
+        }
+        swap(ords, scores, i, parent);
+        i = parent;
+      }
+    }
+
+    private static void siftDown(int[] ords, double[] scores, int size) {
+      int i = 0;
+      while (true) {
+        int worst = i;
+        int left = 2 * i + 1;
+        int right = left + 1;
+        if (left < size && better(scores[worst], ords[worst], scores[left], ords[left])) {
+          worst = left;
+        }
+        if (right < size && better(scores[worst], ords[worst], scores[right], ords[right])) {
+          worst = right;
+        }
+        if (worst == i) {
+          return;
+        }
+        swap(ords, scores, i, worst);
+        i = worst;
+      }
+    }
+
+    private static void swap(int[] ords, double[] scores, int a, int b) {
+      int o = ords[a];
+      ords[a] = ords[b];
+      ords[b] = o;
+      double s = scores[a];
+      scores[a] = scores[b];
+      scores[b] = s;
+    }
+  }
+}
@@ -0,0 +1,429 @@
+package com.planbana.backend.chat;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.planbana.backend.common.KeysetCursor;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Messages packed into {@code message_buckets}: one document per conversation holding up to
+ * {@code bucket-size} messages from one {@code bucket-window-ms} window. A history page reads a
+ * few buckets through the (conversationId, window, last) index instead of one document per
+ * message, and the index grows per bucket rather than per message.
+ *
+ * <p>A bucket's id is {@code conversationId:windowMillis:firstMessageId}, so rewriting the same
+ * messages yields the same buckets. Until {@link MessageBucketMigrator} finds {@code messages}
+ * empty, history and scans merge both; that is one more indexed read per page during migration.
+ */
+@Component
+@ConditionalOnProperty(name = "app.chat.storage.mode", havingValue = "bucket")
+public class BucketMessageStore implements MessageStore {
+
+  static final String COLLECTION = "message_buckets";
+
+  private static final Comparator<Message> ORDER =
+      Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId);
+
+  private record BucketKey(String conversationId, Instant window) {}
+
+  private final MongoTemplate mongo;
+  private final MessageRepository legacy;
+  private final int bucketSize;
+  private final long windowMs;
+  // Set by the migrator while messages is empty; documents written there later turn it off again
+  private volatile boolean legacyDrained;
+
+  public BucketMessageStore(MongoTemplate mongo, MessageRepository legacy,
+                            @Value("${app.chat.storage.bucket-size:200}") int bucketSize,
+                            @Value("${app.chat.storage.bucket-window-ms:86400000}") long windowMs) {
+    this.mongo = mongo;
+    this.legacy = legacy;
+    this.bucketSize = bucketSize;
+    this.windowMs = windowMs;
+  }
+
+  @Override
+  public Set<Integer> insert(List<Message> batch, boolean mayBeStored) {
+    Map<BucketKey, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < batch.size(); i++) {
+      Message m = batch.get(i);
+      groups.computeIfAbsent(new BucketKey(m.getConversationId(), windowOf(m.getCreatedAt())), k -> new ArrayList<>())
+          .add(i);
+    }
+    Set<String> stored = mayBeStored ? storedIds(groups.keySet()) : Set.of();
+    Set<Integer> duplicates = new HashSet<>();
+
+    BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+    groups.forEach((key, indexes) -> {
+      List<Message> fresh = new ArrayList<>(indexes.size());
+      for (int i : indexes) {
+        if (stored.contains(batch.get(i).getId())) {
+          duplicates.add(i);
+        } else {
+          fresh.add(batch.get(i));
+        }
+      }
+      for (int from = 0; from < fresh.size(); from += bucketSize) {
+        List<Message> chunk = fresh.subList(from, Math.min(from + bucketSize, fresh.size()));
+        // Appends to a bucket of the window with room left, or opens a new one
+        ops.upsert(Query.query(Criteria.where("conversationId").is(key.conversationId())
+                .and("window").is(key.window()).and("count").lte(bucketSize - chunk.size())),
+            new Update()
+                .setOnInsert("_id", bucketId(key.conversationId(), key.window(), chunk.get(0).getId()))
+                .push("messages").each(embed(chunk).toArray())
+                .inc("count", chunk.size())
+                .min("first", chunk.get(0).getCreatedAt())
+                .max("last", chunk.get(chunk.size() - 1).getCreatedAt()));
+      }
+    });
+    if (duplicates.size() < batch.size()) {
+      ops.execute();
+    }
+    return duplicates;
+  }
+
+  @Override
+  public Slice<Message> history(String conversationId, KeysetCursor before, KeysetCursor after, int size) {
+    boolean forward = before == null && after != null;
+    if (legacyDrained) {
+      return slice(fromBuckets(conversationId, before, after, size), size, forward, false);
+    }
+    // Old documents first: the migrator writes buckets before deleting them, so nothing is missed
+    Slice<Message> old = legacy.history(conversationId, before, after, size);
+    Map<String, Message> merged = new LinkedHashMap<>();
+    for (Message m : old.getContent()) {
+      merged.put(m.getId(), m);
+    }
+    for (Message m : fromBuckets(conversationId, before, after, size)) {
+      merged.putIfAbsent(m.getId(), m);
+    }
+    return slice(merged.values(), size, forward, old.hasNext());
+  }
+
+  @Override
+  public void scan(String conversationId, Consumer<Message> consumer) {
+    Set<String> seen = null;
+    if (!legacyDrained) {
+      // Old documents first, as in history; buckets written meanwhile may repeat them
+      Set<String> old = new HashSet<>();
+      Query documents = Query.query(Criteria.where("conversationId").is(conversationId))
+          .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id")).cursorBatchSize(1000);
+      try (Stream<Message> stream = mongo.stream(documents, Message.class)) {
+        stream.forEach(m -> {
+          old.add(m.getId());
+          consumer.accept(m);
+        });
+      }
+      seen = old;
+    }
+    Query query = Query.query(Criteria.where("conversationId").is(conversationId))
+        .with(Sort.by(Sort.Direction.ASC, "window")).cursorBatchSize(8);
+    query.fields().include("messages");
+    try (Stream<Document> stream = mongo.stream(query, Document.class, COLLECTION)) {
+      Iterator<Document> buckets = stream.iterator();
+      while (buckets.hasNext()) {
+        for (Document doc : buckets.next().getList("messages", Document.class, List.of())) {
+          Message m = unembed(doc, conversationId);
+          if (seen == null || !seen.contains(m.getId())) {
+            consumer.accept(m);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Unwinds the buckets and sorts their messages by id on the server, which may spill to disk for a
+   * large export, and merges in the documents not migrated yet.
+   */
+  @Override
+  public Stream<Message> export(String afterId, int batchSize) {
+    Document bucketsAfter = afterId == null ? new Document()
+        : new Document("messages._id", new Document("$gt", new ObjectId(afterId)));
+    Document messagesAfter = afterId == null ? new Document()
+        : new Document("_id", new Document("$gt", new ObjectId(afterId)));
+    Aggregation unwound = Aggregation.newAggregation(
+        Aggregation.stage(new Document("$match", bucketsAfter)),
+        Aggregation.stage(new Document("$unwind", "$messages")),
+        Aggregation.stage(new Document("$replaceRoot", new Document("newRoot", new Document("$mergeObjects",
+            List.of("$messages", new Document("conversationId", "$conversationId")))))),
+        Aggregation.stage(new Document("$match", messagesAfter)),
+        Aggregation.stage(new Document("$sort", new Document("_id", 1))))
+        .withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(batchSize).build());
+    Stream<Message> buckets = mongo.aggregateStream(unwound, COLLECTION, Document.class)
+        .map(doc -> mongo.getConverter().read(Message.class, doc));
+
+    Query documents = new Query().with(Sort.by("_id")).cursorBatchSize(batchSize);
+    if (afterId != null) {
+      documents.addCriteria(Criteria.where("_id").gt(afterId));
+    }
+    return mergeById(mongo.stream(documents, Message.class), buckets);
+  }
+
+  @Override
+  public String collection() {
+    return COLLECTION;
+  }
+
+  @Override
+  public Bson changeFilter(Collection<String> conversationIds) {
+    List<Pattern> prefixes = new ArrayList<>(conversationIds.size());
+    for (String id : conversationIds) {
+      prefixes.add(Pattern.compile("^" + Pattern.quote(id + ":")));
+    }
+    // Updates carry no conversationId, but the bucket id starts with it. Migrated buckets hold old messages.
+    return Filters.and(
+        Filters.in("operationType", "insert", "update"),
+        Filters.in("documentKey._id", prefixes),
+        Filters.ne("fullDocument.migrated", true));
+  }
+
+  @Override
+  public List<Message> added(ChangeStreamDocument<Document> change) {
+    List<Message> added = new ArrayList<>();
+    Document bucket = change.getFullDocument();
+    if (bucket != null) {
+      for (Document m : bucket.getList("messages", Document.class, List.of())) {
+        added.add(unembed(m, bucket.getString("conversationId")));
+      }
+    } else if (change.getUpdateDescription() != null && change.getDocumentKey() != null) {
+      String bucketId = change.getDocumentKey().getString("_id").getValue();
+      String conversationId = bucketId.substring(0, bucketId.indexOf(':'));
+      BsonDocument updated = change.getUpdateDescription().getUpdatedFields();
+      if (updated != null) {
+        // $push shows up as "messages.<index>" entries, or the whole array when it was rewritten
+        for (Map.Entry<String, BsonValue> e : updated.entrySet()) {
+          if (e.getKey().startsWith("messages.") && e.getValue().isDocument()) {
+            added.add(unembed(e.getValue().asDocument(), conversationId));
+          } else if (e.getKey().equals("messages") && e.getValue().isArray()) {
+            BsonArray all = e.getValue().asArray();
+            for (BsonValue v : all) {
+              added.add(unembed(v.asDocument(), conversationId));
+            }
+          }
+        }
+      }
+    }
+    added.sort(ORDER);
+    return added;
+  }
+
+  boolean isLegacyDrained() {
+    return legacyDrained;
+  }
+
+  void setLegacyDrained(boolean drained) {
+    legacyDrained = drained;
+  }
+
+  int bucketSize() {
+    return bucketSize;
+  }
+
+  Instant windowOf(Instant at) {
+    long ms = at.toEpochMilli();
+    return Instant.ofEpochMilli(ms - Math.floorMod(ms, windowMs));
+  }
+
+  static String bucketId(String conversationId, Instant window, String firstMessageId) {
+    return conversationId + ":" + window.toEpochMilli() + ":" + firstMessageId;
+  }
+
+  /** Messages as stored inside a bucket, without the conversation id the bucket already has. */
+  List<Document> embed(List<Message> messages) {
+    List<Document> docs = new ArrayList<>(messages.size());
+    for (Message m : messages) {
+      Document doc = new Document();
+      mongo.getConverter().write(m, doc);
+      doc.remove("conversationId");
+      doc.remove("_class");
+      docs.add(doc);
+    }
+    return docs;
+  }
+
+  private Message unembed(Bson doc, String conversationId) {
+    Message m = mongo.getConverter().read(Message.class, doc);
+    m.setConversationId(conversationId);
+    return m;
+  }
+
+  /** Ids already stored in the buckets the batch would go to. */
+  private Set<String> storedIds(Collection<BucketKey> keys) {
+    Map<String, List<Instant>> windows = new LinkedHashMap<>();
+    for (BucketKey k : keys) {
+      windows.computeIfAbsent(k.conversationId(), c -> new ArrayList<>()).add(k.window());
+    }
+    List<Criteria> perConversation = new ArrayList<>();
+    windows.forEach((c, w) -> perConversation.add(Criteria.where("conversationId").is(c).and("window").in(w)));
+    Query query = Query.query(new Criteria().orOperator(perConversation));
+    query.fields().include("messages._id");
+    Set<String> ids = new HashSet<>();
+    for (Document bucket : mongo.find(query, Document.class, COLLECTION)) {
+      for (Document m : bucket.getList("messages", Document.class, List.of())) {
+        ids.add(m.getObjectId("_id").toHexString());
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Candidates for a page, read bucket by bucket in (window, last) order past the cursor. Going back,
+   * only the {@code size + 1} newest are kept and reading stops at the first bucket whose
+   * {@code last} is older than all of them. Going forward a bucket's {@code last} does not bound
+   * where it starts, so the window in hand is finished before stopping.
+   */
+  private List<Message> fromBuckets(String conversationId, KeysetCursor before, KeysetCursor after, int size) {
+    Criteria criteria = Criteria.where("conversationId").is(conversationId);
+    boolean forward = before == null && after != null;
+    if (before != null) {
+      criteria.and("window").lte(windowOf(before.at())).and("first").lte(before.at());
+    } else if (after != null) {
+      criteria.and("window").gte(windowOf(after.at())).and("last").gte(after.at());
+    }
+    Query query = Query.query(criteria)
+        .with(Sort.by(forward ? Sort.Direction.ASC : Sort.Direction.DESC, "window", "last"))
+        .cursorBatchSize(8);
+    query.fields().include("window", "last", "messages");
+
+    Message bound = before != null ? probe(before) : after != null ? probe(after) : null;
+    List<Message> found = new ArrayList<>();
+    // Oldest of the newest candidates on top
+    PriorityQueue<Message> newest = new PriorityQueue<>(ORDER);
+    Object window = null;
+    try (Stream<Document> stream = mongo.stream(query, Document.class, COLLECTION)) {
+      Iterator<Document> buckets = stream.iterator();
+      while (buckets.hasNext()) {
+        Document bucket = buckets.next();
+        if (forward) {
+          if (!bucket.get("window").equals(window) && found.size() > size) {
+            break;
+          }
+          window = bucket.get("window");
+        } else if (newest.size() > size
+            && bucket.getDate("last").toInstant().isBefore(newest.peek().getCreatedAt())) {
+          break;
+        }
+        for (Document doc : bucket.getList("messages", Document.class, List.of())) {
+          Message m = unembed(doc, conversationId);
+          if (bound != null && (before != null ? ORDER.compare(m, bound) >= 0 : ORDER.compare(m, bound) <= 0)) {
+            continue;
+          }
+          if (forward) {
+            found.add(m);
+          } else {
+            newest.add(m);
+            if (newest.size() > size + 1) {
+              newest.poll();
+            }
+          }
+        }
+      }
+    }
+    return forward ? found : new ArrayList<>(newest);
+  }
+
+  /** Merges two id-ordered streams; a message in both, caught mid-migration, comes out once. */
+  static Stream<Message> mergeById(Stream<Message> a, Stream<Message> b) {
+    Iterator<Message> left = a.iterator();
+    Iterator<Message> right = b.iterator();
+    Iterator<Message> merged = new Iterator<>() {
+      private Message l;
+      private Message r;
+
+      @Override
+      public boolean hasNext() {
+        fill();
+        return l != null || r != null;
+      }
+
+      @Override
+      public Message next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int order = l == null ? 1 : r == null ? -1 : l.getId().compareTo(r.getId());
+        Message out = order <= 0 ? l : r;
+        if (order <= 0) {
+          l = null;
+        }
+        if (order >= 0) {
+          r = null;
+        }
+        return out;
+      }
+
+      private void fill() {
+        if (l == null && left.hasNext()) {
+          l = left.next();
+        }
+        if (r == null && right.hasNext()) {
+          r = right.next();
+        }
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+        .onClose(a::close)
+        .onClose(b::close);
+  }
+
+  private static Message probe(KeysetCursor cursor) {
+    Message m = new Message();
+    m.setCreatedAt(cursor.at());
+    m.setId(cursor.id());
+    return m;
+  }
+
+  /** Newest-first page of the {@code size} candidates closest to the cursor. */
+  private static Slice<Message> slice(Collection<Message> candidates, int size, boolean forward, boolean moreElsewhere) {
+    List<Message> items = new ArrayList<>(candidates);
+    items.sort(forward ? ORDER : ORDER.reversed());
+    boolean hasNext = items.size() > size || moreElsewhere;
+    if (items.size() > size) {
+      items = new ArrayList<>(items.subList(0, size));
+    }
+    if (forward) {
+      Collections.reverse(items);
+    }
+    return new SliceImpl<>(items, PageRequest.of(0, size), hasNext);
+  }
+}
@@ -0,0 +1,202 @@
+package com.planbana.backend.chat;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster fan-out: each node tails the {@link MessageStore}'s collection through a change stream, filtered server-side
+ * to the conversations its own clients subscribe to, and re-publishes new messages to its local
+ * broker. The stream is reopened with the new filter (at most every {@code refilter-interval-ms})
+ * when the subscribed set changes, resuming from the last token so nothing in between is lost.
+ * The token is saved per node, so a restart resumes where the previous run stopped.
+ *
+ * <p>Messages are stamped with the node that accepted them, which broadcast them itself; their
+ * change events are skipped on that node. The stamp is stored with the message, so the skip also
+ * holds for events replayed after a restart. {@code node-id} must therefore be unique per node and
+ * stable across its restarts, as it already must be for the saved token.
+ *
+ * <p>Change streams need a replica set; a single-node one ({@code mongod --replSet rs0} plus
+ * {@code rs.initiate()}) is enough locally.
+ */
+@Component
+@ConditionalOnProperty(name = "app.chat.fanout.mode", havingValue = "change-stream")
+public class ChangeStreamChatFanout implements ChatFanout, SmartLifecycle {
+
+  static final String TOKENS = "chat_fanout_resume_tokens";
+
+  private static final Logger log = LoggerFactory.getLogger(ChangeStreamChatFanout.class);
+  // Server errors after which the token cannot be resumed: history lost, fatal stream error
+  private static final Set<Integer> UNRESUMABLE = Set.of(280, 286);
+
+  private final MongoTemplate mongo;
+  private final MessageStore store;
+  private final SimpMessagingTemplate broker;
+  private final LocalSubscriptions subscriptions;
+  private final String nodeId;
+  private final long refilterIntervalMs;
+  private final long tokenSaveIntervalMs;
+  private final Counter delivered;
+  private final Counter skipped;
+  private volatile boolean running;
+  private Thread tail;
+
+  public ChangeStreamChatFanout(MongoTemplate mongo, MessageStore store, SimpMessagingTemplate broker, LocalSubscriptions subscriptions,
+                                MeterRegistry registry,
+                                @Value("${app.chat.fanout.node-id:${HOSTNAME:local}}") String nodeId,
+                                @Value("${app.chat.fanout.refilter-interval-ms:1000}") long refilterIntervalMs,
+                                @Value("${app.chat.fanout.token-save-interval-ms:1000}") long tokenSaveIntervalMs) {
+    this.mongo = mongo;
+    this.store = store;
+    this.broker = broker;
+    this.subscriptions = subscriptions;
+    this.nodeId = nodeId;
+    this.refilterIntervalMs = refilterIntervalMs;
+    this.tokenSaveIntervalMs = tokenSaveIntervalMs;
+    this.delivered = Counter.builder("chat.fanout.delivered").register(registry);
+    this.skipped = Counter.builder("chat.fanout.skipped").tag("reason", "local").register(registry);
+  }
+
+  @Override
+  public void sentLocally(Message message) {
+    message.setOriginNode(nodeId);
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    tail = new Thread(this::run, "chat-change-stream");
+    tail.setDaemon(true);
+    tail.start();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    if (tail != null) {
+      try {
+        tail.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void run() {
+    BsonDocument token = loadToken();
+    BsonDocument saved = token;
+    long backoffMs = 500;
+    while (running) {
+      long generation = subscriptions.generation();
+      ChangeStreamIterable<Document> stream = mongo.getCollection(store.collection())
+          .watch(List.of(Aggregates.match(store.changeFilter(subscriptions.conversations()))))
+          .maxAwaitTime(500, TimeUnit.MILLISECONDS);
+      if (token != null) {
+        stream = stream.resumeAfter(token);
+      }
+      try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+        long refilterAt = System.currentTimeMillis() + refilterIntervalMs;
+        long saveAt = System.currentTimeMillis() + tokenSaveIntervalMs;
+        while (running) {
+          ChangeStreamDocument<Document> change = cursor.tryNext();
+          if (change != null) {
+            store.added(change).forEach(this::deliver);
+          }
+          // Advances even without matching events, so an idle node does not fall behind
+          if (cursor.getResumeToken() != null) {
+            token = cursor.getResumeToken();
+          }
+          long now = System.currentTimeMillis();
+          if (now >= saveAt && token != null && !token.equals(saved)) {
+            saveToken(token);
+            saved = token;
+            saveAt = now + tokenSaveIntervalMs;
+          }
+          if (now >= refilterAt && subscriptions.generation() != generation) {
+            break;
+          }
+        }
+        backoffMs = 500;
+      } catch (MongoCommandException e) {
+        if (UNRESUMABLE.contains(e.getErrorCode())) {
+          log.warn("Chat change stream cannot resume from its token, continuing from now: {}", e.getErrorMessage());
+          token = null;
+        } else {
+          backoffMs = pause(e, backoffMs);
+        }
+      } catch (RuntimeException e) {
+        backoffMs = pause(e, backoffMs);
+      }
+    }
+    if (token != null && !token.equals(saved)) {
+      saveToken(token);
+    }
+  }
+
+  private void deliver(Message message) {
+    if (nodeId.equals(message.getOriginNode())) {
+      skipped.increment();
+      return;
+    }
+    broker.convertAndSend(LocalSubscriptions.TOPIC_PREFIX + message.getConversationId(), message);
+    delivered.increment();
+  }
+
+  private long pause(RuntimeException e, long backoffMs) {
+    log.warn("Chat change stream failed, reopening in {} ms: {}", backoffMs, e.getMessage());
+    try {
+      Thread.sleep(backoffMs);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+    return Math.min(backoffMs * 2, 10_000);
+  }
+
+  private BsonDocument loadToken() {
+    try {
+      Document saved = mongo.findById(nodeId, Document.class, TOKENS);
+      return saved == null || saved.get("token") == null
+          ? null : saved.get("token", Document.class).toBsonDocument();
+    } catch (RuntimeException e) {
+      log.warn("Could not load the chat change stream token, starting from now: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  private void saveToken(BsonDocument token) {
+    try {
+      mongo.upsert(Query.query(Criteria.where("_id").is(nodeId)),
+          Update.update("token", token).set("updatedAt", Instant.now()), TOKENS);
+    } catch (RuntimeException e) {
+      log.warn("Could not save the chat change stream token: {}", e.getMessage());
+    }
+  }
+}
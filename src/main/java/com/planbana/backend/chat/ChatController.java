@@ -1,55 +1,159 @@
 package com.planbana.backend.chat;
 
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.common.KeysetCursor;
+import com.planbana.backend.security.AuthenticatedUser;
 import com.planbana.backend.user.UserRepository;
-import org.springframework.data.domain.PageRequest;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/chat")
 public class ChatController {
 
-  private final ConversationRepository conversations;
-  private final MessageRepository messages;
+  private final ConversationService conversationService;
+  private final MessageStore messages;
   private final UserRepository users;
   private final SimpMessagingTemplate broker;
+  private final MessageWriter writer;
+  private final ChatFanout fanout;
+  private final PresenceRegistry presence;
+  private final MessageSearchIndex search;
 
-  public ChatController(ConversationRepository conversations, MessageRepository messages, UserRepository users, SimpMessagingTemplate broker) {
-    this.conversations = conversations;
+  public ChatController(ConversationService conversationService, MessageStore messages, UserRepository users,
+                        SimpMessagingTemplate broker, MessageWriter writer, ChatFanout fanout,
+                        PresenceRegistry presence, MessageSearchIndex search) {
+    this.conversationService = conversationService;
     this.messages = messages;
     this.users = users;
     this.broker = broker;
+    this.writer = writer;
+    this.fanout = fanout;
+    this.presence = presence;
+    this.search = search;
   }
 
+  /** Returns the conversation with {@code otherUserId}, creating it on first use. */
   @PostMapping("/conversations")
   public Conversation createConversation(@RequestBody Map<String, String> body, Authentication auth) {
-    var otherUserId = body.get("otherUserId");
-    var c = new Conversation();
-    var me = users.findByEmail(auth.getName()).orElseThrow();
-    c.getParticipantUserIds().add(me.getId());
-    c.getParticipantUserIds().add(otherUserId);
-    return conversations.save(c);
+    String me = AuthenticatedUser.idOf(auth);
+    String otherUserId = body.get("otherUserId");
+    if (otherUserId == null || otherUserId.isBlank() || otherUserId.equals(me)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "otherUserId must be another user");
+    }
+    if (!users.existsById(otherUserId)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+    }
+    return conversationService.findOrCreate(me, otherUserId, auth.getName());
   }
 
+  /** The caller's conversations, most recent first, with last message previews and unread counts. */
+  @GetMapping("/conversations")
+  public CursorPage<InboxItem> inbox(Authentication auth,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "20") int size) {
+    return conversationService.inbox(AuthenticatedUser.idOf(auth), cursor, size);
+  }
+
+  @PostMapping("/conversations/{id}/read")
+  public Map<String, String> markRead(@PathVariable String id, Authentication auth) {
+    if (!conversationService.markRead(id, AuthenticatedUser.idOf(auth))) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+    return Map.of("message", "read");
+  }
+
+  /**
+   * Chat history, newest first. Without cursors returns the latest messages; {@code before} pages
+   * back in time and {@code after} fetches what arrived since. Cost does not depend on history length.
+   * Non-participants get a 404, as for search and read receipts.
+   */
   @GetMapping("/conversations/{id}/messages")
-  public Object listMessages(@PathVariable String id, @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "50") int size) {
-    return messages.findByConversationIdOrderByCreatedAtAsc(id, PageRequest.of(page, size));
+  public MessageHistory listMessages(@PathVariable String id,
+                                     @RequestParam(required = false) String before,
+                                     @RequestParam(required = false) String after,
+                                     @RequestParam(defaultValue = "50") int size,
+                                     Authentication auth) {
+    if (!conversationService.isParticipant(id, AuthenticatedUser.idOf(auth))) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+    int limit = Math.max(1, Math.min(size, 200));
+    KeysetCursor beforeCursor = before == null || before.isBlank() ? null : KeysetCursor.decode(before);
+    KeysetCursor afterCursor = after == null || after.isBlank() ? null : KeysetCursor.decode(after);
+    Slice<Message> slice = messages.history(id, beforeCursor, afterCursor, limit);
+    List<Message> items = slice.getContent();
+    if (items.isEmpty()) {
+      // Nothing newer yet: keep polling from the same place
+      return new MessageHistory(items, null, after);
+    }
+    Message newest = items.get(0);
+    Message oldest = items.get(items.size() - 1);
+    // A page read forward from "after" always has older messages behind it
+    boolean olderExist = (afterCursor != null && beforeCursor == null) || slice.hasNext();
+    return new MessageHistory(items,
+        olderExist ? new KeysetCursor(oldest.getCreatedAt(), oldest.getId()).encode() : null,
+        new KeysetCursor(newest.getCreatedAt(), newest.getId()).encode());
+  }
+
+  /** Messages containing every word of {@code q} (the last word also as a prefix), newest first. */
+  @GetMapping("/conversations/{id}/search")
+  public CursorPage<MessageSearchHit> search(@PathVariable String id, @RequestParam String q,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "20") int size,
+                                             Authentication auth) {
+    return search.search(id, AuthenticatedUser.idOf(auth), q, cursor, size);
   }
 
   // STOMP endpoint: client sends to /app/conversations/{id}/send
+  // The message is journaled and queued for a batched write, then broadcast without waiting on Mongo
+  // Only participants may send; the check is cached, so it rarely reaches Mongo either
   @MessageMapping("/conversations/{id}/send")
   public void send(@DestinationVariable String id, String content, Authentication auth) {
-    var me = users.findByEmail(auth.getName()).orElseThrow();
+    String senderId = AuthenticatedUser.idOf(auth);
+    if (senderId == null) {
+      throw new AccessDeniedException("Not authenticated");
+    }
+    if (!conversationService.isParticipant(id, senderId)) {
+      throw new AccessDeniedException("Not a participant of this conversation");
+    }
     var msg = new Message();
     msg.setConversationId(id);
-    msg.setSenderUserId(me.getId());
+    msg.setSenderUserId(senderId);
     msg.setContent(content);
-    messages.save(msg);
+    // Known to the fan-out before it can reach Mongo, so this node does not deliver it twice
+    msg.setId(new ObjectId().toHexString());
+    fanout.sentLocally(msg);
+    writer.submit(msg, auth.getName());
     broker.convertAndSend("/topic/conversations." + id, msg);
   }
+
+  // A send refused by the write-behind queue or the membership check goes back to the sender only,
+  // on /user/queue/errors
+  @MessageExceptionHandler({MessageWriter.OverloadedException.class, AccessDeniedException.class})
+  @SendToUser(destinations = "/queue/errors", broadcast = false)
+  public Map<String, String> refused(RuntimeException e) {
+    return Map.of("error", e.getMessage());
+  }
+
+  // STOMP endpoint: client sends to /app/conversations/{id}/typing while typing, "stop" when done
+  // Only changes who is typing in memory; peers learn of it in the next coalesced presence frame
+  @MessageMapping("/conversations/{id}/typing")
+  public void typing(@DestinationVariable String id, String state,
+                     @Header(name = "simpSessionId", required = false) String sessionId) {
+    presence.typing(sessionId, id, !"stop".equalsIgnoreCase(state == null ? "" : state.trim()));
+  }
 }
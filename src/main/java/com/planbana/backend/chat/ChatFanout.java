@@ -0,0 +1,14 @@
+package com.planbana.backend.chat;
+
+/**
+ * Delivers chat messages to subscribers on other nodes. The sending node always broadcasts to its
+ * own broker directly; implementations only cover everyone else.
+ */
+public interface ChatFanout {
+
+  /**
+   * Called for every message this node broadcasts, before it is written, so that the message is
+   * not delivered here a second time.
+   */
+  void sentLocally(Message message);
+}
@@ -1,14 +1,66 @@
 package com.planbana.backend.chat;
 
 import com.planbana.backend.common.BaseEntity;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 @Document("conversations")
 public class Conversation extends BaseEntity {
   private Set<String> participantUserIds = new HashSet<>();
+  /** Sorted non-null participant ids joined by ':'; unique, so one conversation exists per set of participants. */
+  @Indexed(unique = true)
+  private String participantKey;
+  private List<Member> members = new ArrayList<>();
+  private LastMessage lastMessage;
+  /** Time of the last message, or of creation while there is none; orders the inbox. */
+  private Instant lastMessageAt;
+
+  public static class Member {
+    private String userId;
+    private long unread;
+    private Instant lastReadAt;
+
+    public Member() {}
+    public Member(String userId) { this.userId = userId; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+    public long getUnread() { return unread; }
+    public void setUnread(long unread) { this.unread = unread; }
+    public Instant getLastReadAt() { return lastReadAt; }
+    public void setLastReadAt(Instant lastReadAt) { this.lastReadAt = lastReadAt; }
+  }
+
+  /** Preview of the latest message for inbox rendering. */
+  public record LastMessage(String id, String senderUserId, String preview, Instant createdAt) {}
+
+  public static String participantKey(Set<String> participantUserIds) {
+    Set<String> sorted = new TreeSet<>();
+    if (participantUserIds != null) {
+      for (String userId : participantUserIds) {
+        if (userId != null) {
+          sorted.add(userId);
+        }
+      }
+    }
+    return String.join(":", sorted);
+  }
+
   public Set<String> getParticipantUserIds() { return participantUserIds; }
   public void setParticipantUserIds(Set<String> participantUserIds) { this.participantUserIds = participantUserIds; }
+  public String getParticipantKey() { return participantKey; }
+  public void setParticipantKey(String participantKey) { this.participantKey = participantKey; }
+  public List<Member> getMembers() { return members; }
+  public void setMembers(List<Member> members) { this.members = members; }
+  public LastMessage getLastMessage() { return lastMessage; }
+  public void setLastMessage(LastMessage lastMessage) { this.lastMessage = lastMessage; }
+  public Instant getLastMessageAt() { return lastMessageAt; }
+  public void setLastMessageAt(Instant lastMessageAt) { this.lastMessageAt = lastMessageAt; }
 }
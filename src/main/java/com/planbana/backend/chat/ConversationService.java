@@ -0,0 +1,177 @@
+package com.planbana.backend.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.common.KeysetCursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Conversations and the inbox. Each conversation carries its last message and a per-member unread
+ * counter, so the inbox is a single query over (participantUserIds, lastMessageAt, _id). Both are
+ * updated with atomic operators once the {@link MessageWriter} has stored a batch.
+ *
+ * <p>Membership checks are cached for {@code app.chat.membership-cache.ttl-ms}, so the send path
+ * rarely reads Mongo. Participants never change once a conversation exists; the TTL only bounds
+ * how long a "not a member" answer for a conversation created meanwhile on another node is kept.
+ */
+@Service
+public class ConversationService implements MessageFlushListener {
+
+  static final int PREVIEW_LENGTH = 140;
+
+  private final MongoTemplate mongo;
+  // "conversationId userId" to whether the user is a participant
+  private final Cache<String, Boolean> membership;
+
+  public ConversationService(MongoTemplate mongo, MeterRegistry registry,
+                             @Value("${app.chat.membership-cache.max-size:100000}") long maxSize,
+                             @Value("${app.chat.membership-cache.ttl-ms:60000}") long ttlMs) {
+    this.mongo = mongo;
+    this.membership = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(Duration.ofMillis(ttlMs))
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(registry, membership, "chatMembership");
+  }
+
+  /** The conversation between the two users, created on first use; concurrent calls get the same one. */
+  public Conversation findOrCreate(String userId, String otherUserId, String createdBy) {
+    Set<String> participants = Set.of(userId, otherUserId);
+    Query byKey = Query.query(Criteria.where("participantKey").is(Conversation.participantKey(participants)));
+    Instant now = Instant.now();
+    Update insert = new Update()
+        .setOnInsert("participantUserIds", participants)
+        .setOnInsert("members", List.of(new Conversation.Member(userId), new Conversation.Member(otherUserId)))
+        .setOnInsert("lastMessageAt", now)
+        .setOnInsert("createdAt", now)
+        .setOnInsert("updatedAt", now)
+        .setOnInsert("createdBy", createdBy)
+        .setOnInsert("updatedBy", createdBy)
+        .setOnInsert("version", 0L);
+    Conversation conversation;
+    try {
+      conversation = mongo.findAndModify(byKey, insert, FindAndModifyOptions.options().upsert(true).returnNew(true),
+          Conversation.class);
+    } catch (DuplicateKeyException e) {
+      // Lost an upsert race on the unique participantKey; the winner's document is there now
+      conversation = mongo.findOne(byKey, Conversation.class);
+    }
+    if (conversation != null) {
+      // The first send usually follows right away
+      for (String participant : participants) {
+        membership.put(membershipKey(conversation.getId(), participant), Boolean.TRUE);
+      }
+    }
+    return conversation;
+  }
+
+  /** The user's conversations, most recently active first. */
+  public CursorPage<InboxItem> inbox(String userId, String cursor, int size) {
+    int limit = Math.max(1, Math.min(size, 100));
+    Query query = Query.query(Criteria.where("participantUserIds").is(userId));
+    if (cursor != null && !cursor.isBlank()) {
+      KeysetCursor after = KeysetCursor.decode(cursor);
+      query.addCriteria(new Criteria().orOperator(
+          Criteria.where("lastMessageAt").lt(after.at()),
+          Criteria.where("lastMessageAt").is(after.at()).and("_id").lt(after.id())));
+    }
+    query.with(Sort.by(Sort.Direction.DESC, "lastMessageAt", "_id")).limit(limit + 1);
+    query.fields().include("participantUserIds", "lastMessage", "lastMessageAt")
+        .elemMatch("members", Criteria.where("userId").is(userId));
+
+    List<Conversation> found = mongo.find(query, Conversation.class);
+    List<InboxItem> items = new ArrayList<>(Math.min(found.size(), limit));
+    for (int i = 0; i < found.size() && i < limit; i++) {
+      Conversation c = found.get(i);
+      long unread = c.getMembers().isEmpty() ? 0 : c.getMembers().get(0).getUnread();
+      items.add(new InboxItem(c.getId(), c.getParticipantUserIds(), c.getLastMessage(), c.getLastMessageAt(), unread));
+    }
+    String next = null;
+    if (found.size() > limit) {
+      InboxItem last = items.get(limit - 1);
+      next = new KeysetCursor(last.lastMessageAt(), last.id()).encode();
+    }
+    return new CursorPage<>(items, next);
+  }
+
+  /** Whether the user is a participant of the conversation; cached, otherwise an indexed lookup by id. */
+  public boolean isParticipant(String conversationId, String userId) {
+    if (conversationId == null || userId == null) {
+      return false;
+    }
+    return membership.get(membershipKey(conversationId, userId), k -> mongo.exists(
+        Query.query(Criteria.where("_id").is(conversationId).and("participantUserIds").is(userId)),
+        Conversation.class));
+  }
+
+  private static String membershipKey(String conversationId, String userId) {
+    return conversationId + " " + userId;
+  }
+
+  /** Clears the user's unread count; false when they are not a member of the conversation. */
+  public boolean markRead(String conversationId, String userId) {
+    return mongo.updateFirst(
+        Query.query(Criteria.where("_id").is(conversationId).and("members.userId").is(userId)),
+        new Update().set("members.$.unread", 0L).set("members.$.lastReadAt", Instant.now()),
+        Conversation.class).getMatchedCount() > 0;
+  }
+
+  @Override
+  public void flushed(List<Message> messages) {
+    Map<String, List<Message>> byConversation = new LinkedHashMap<>();
+    for (Message m : messages) {
+      byConversation.computeIfAbsent(m.getConversationId(), c -> new ArrayList<>()).add(m);
+    }
+    BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, Conversation.class);
+    byConversation.forEach((conversationId, batch) -> {
+      Message last = batch.get(batch.size() - 1);
+      // Never move the preview back, e.g. when an older batch is retried late
+      ops.updateOne(Query.query(Criteria.where("_id").is(conversationId).and("lastMessageAt").lt(last.getCreatedAt())),
+          new Update()
+              .set("lastMessage", new Conversation.LastMessage(last.getId(), last.getSenderUserId(),
+                  preview(last.getContent()), last.getCreatedAt()))
+              .set("lastMessageAt", last.getCreatedAt()));
+
+      Map<String, Long> sentBy = new LinkedHashMap<>();
+      for (Message m : batch) {
+        sentBy.merge(m.getSenderUserId(), 1L, Long::sum);
+      }
+      // Everyone but the sender has that sender's messages to read
+      sentBy.forEach((sender, count) -> ops.updateOne(Query.query(Criteria.where("_id").is(conversationId)),
+          new Update().inc("members.$[other].unread", count)
+              .filterArray(Criteria.where("other.userId").ne(sender))));
+    });
+    if (!byConversation.isEmpty()) {
+      ops.execute();
+    }
+  }
+
+  /** Inbox preview of a message body. */
+  public static String preview(String content) {
+    if (content == null || content.length() <= PREVIEW_LENGTH) {
+      return content;
+    }
+    return content.substring(0, PREVIEW_LENGTH - 1) + "…";
+  }
+}
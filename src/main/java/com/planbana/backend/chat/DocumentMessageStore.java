@@ -0,0 +1,106 @@
+package com.planbana.backend.chat;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.planbana.backend.common.KeysetCursor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/** One document per message in {@code messages}, the original layout. */
+@Component
+@ConditionalOnProperty(name = "app.chat.storage.mode", havingValue = "document", matchIfMissing = true)
+public class DocumentMessageStore implements MessageStore {
+
+  private static final int DUPLICATE_KEY = 11000;
+
+  private final MongoTemplate mongo;
+  private final MessageRepository messages;
+
+  public DocumentMessageStore(MongoTemplate mongo, MessageRepository messages) {
+    this.mongo = mongo;
+    this.messages = messages;
+  }
+
+  @Override
+  public Set<Integer> insert(List<Message> batch, boolean mayBeStored) {
+    List<Document> docs = new ArrayList<>(batch.size());
+    for (Message m : batch) {
+      Document doc = new Document();
+      mongo.getConverter().write(m, doc);
+      docs.add(doc);
+    }
+    try {
+      mongo.getCollection(collection()).insertMany(docs, new InsertManyOptions().ordered(false));
+      return Set.of();
+    } catch (MongoBulkWriteException e) {
+      // Duplicates are messages replayed from the journal that had already been written
+      Set<Integer> duplicates = new HashSet<>();
+      for (BulkWriteError error : e.getWriteErrors()) {
+        if (error.getCode() != DUPLICATE_KEY) {
+          throw e;
+        }
+        duplicates.add(error.getIndex());
+      }
+      return duplicates;
+    }
+  }
+
+  @Override
+  public Slice<Message> history(String conversationId, KeysetCursor before, KeysetCursor after, int size) {
+    return messages.history(conversationId, before, after, size);
+  }
+
+  @Override
+  public void scan(String conversationId, Consumer<Message> consumer) {
+    Query query = Query.query(Criteria.where("conversationId").is(conversationId))
+        .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id")).cursorBatchSize(1000);
+    try (Stream<Message> stream = mongo.stream(query, Message.class)) {
+      stream.forEach(consumer);
+    }
+  }
+
+  @Override
+  public Stream<Message> export(String afterId, int batchSize) {
+    Query query = new Query().with(Sort.by("_id")).cursorBatchSize(batchSize);
+    if (afterId != null) {
+      query.addCriteria(Criteria.where("_id").gt(afterId));
+    }
+    return mongo.stream(query, Message.class);
+  }
+
+  @Override
+  public String collection() {
+    return mongo.getCollectionName(Message.class);
+  }
+
+  @Override
+  public Bson changeFilter(Collection<String> conversationIds) {
+    return Filters.and(
+        Filters.eq("operationType", "insert"),
+        Filters.in("fullDocument.conversationId", conversationIds));
+  }
+
+  @Override
+  public List<Message> added(ChangeStreamDocument<Document> change) {
+    Document doc = change.getFullDocument();
+    return doc == null ? List.of() : List.of(mongo.getConverter().read(Message.class, doc));
+  }
+}
@@ -0,0 +1,9 @@
+package com.planbana.backend.chat;
+
+import java.time.Instant;
+import java.util.Set;
+
+/** One conversation in the caller's inbox, with their unread count. */
+public record InboxItem(String id, Set<String> participantUserIds, Conversation.LastMessage lastMessage,
+                        Instant lastMessageAt, long unread) {
+}
@@ -0,0 +1,14 @@
+package com.planbana.backend.chat;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** Single-node deployments: the local broadcast already reaches every subscriber. */
+@Component
+@ConditionalOnProperty(name = "app.chat.fanout.mode", havingValue = "local", matchIfMissing = true)
+public class LocalChatFanout implements ChatFanout {
+
+  @Override
+  public void sentLocally(Message message) {
+  }
+}
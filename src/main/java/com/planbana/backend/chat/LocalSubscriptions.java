@@ -0,0 +1,85 @@
+package com.planbana.backend.chat;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conversations that have at least one subscriber connected to this node, reference-counted from
+ * STOMP session events. {@link #generation()} changes whenever the set does.
+ */
+@Component
+public class LocalSubscriptions {
+
+  static final String TOPIC_PREFIX = "/topic/conversations.";
+
+  // sessionId -> (subscriptionId -> conversationId)
+  private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+  private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+
+  @EventListener
+  public void onSubscribe(SessionSubscribeEvent event) {
+    StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+    String destination = headers.getDestination();
+    if (destination == null || !destination.startsWith(TOPIC_PREFIX) || headers.getSessionId() == null
+        || headers.getSubscriptionId() == null) {
+      return;
+    }
+    String conversationId = destination.substring(TOPIC_PREFIX.length());
+    String previous = sessions.computeIfAbsent(headers.getSessionId(), s -> new ConcurrentHashMap<>())
+        .put(headers.getSubscriptionId(), conversationId);
+    if (previous != null) {
+      release(previous);
+    }
+    if (counts.merge(conversationId, 1, Integer::sum) == 1) {
+      generation.incrementAndGet();
+    }
+  }
+
+  @EventListener
+  public void onUnsubscribe(SessionUnsubscribeEvent event) {
+    StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+    Map<String, String> subscriptions = headers.getSessionId() == null ? null : sessions.get(headers.getSessionId());
+    if (subscriptions != null && headers.getSubscriptionId() != null) {
+      String conversationId = subscriptions.remove(headers.getSubscriptionId());
+      if (conversationId != null) {
+        release(conversationId);
+      }
+    }
+  }
+
+  @EventListener
+  public void onDisconnect(SessionDisconnectEvent event) {
+    Map<String, String> subscriptions = sessions.remove(event.getSessionId());
+    if (subscriptions != null) {
+      subscriptions.values().forEach(this::release);
+    }
+  }
+
+  public Set<String> conversations() {
+    return Set.copyOf(counts.keySet());
+  }
+
+  public boolean hasSubscribers(String conversationId) {
+    return counts.containsKey(conversationId);
+  }
+
+  public long generation() {
+    return generation.get();
+  }
+
+  private void release(String conversationId) {
+    if (counts.computeIfPresent(conversationId, (id, n) -> n == 1 ? null : n - 1) == null) {
+      generation.incrementAndGet();
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.planbana.backend.chat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.planbana.backend.common.BaseEntity;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -8,6 +9,9 @@ public class Message extends BaseEntity {
   private String conversationId;
   private String senderUserId;
   private String content;
+  // Node that accepted the message and broadcast it itself; the change-stream fan-out skips it there
+  @JsonIgnore
+  private String originNode;
 
   public String getConversationId() { return conversationId; }
   public void setConversationId(String conversationId) { this.conversationId = conversationId; }
@@ -15,4 +19,6 @@ public class Message extends BaseEntity {
   public void setSenderUserId(String senderUserId) { this.senderUserId = senderUserId; }
   public String getContent() { return content; }
   public void setContent(String content) { this.content = content; }
+  public String getOriginNode() { return originNode; }
+  public void setOriginNode(String originNode) { this.originNode = originNode; }
 }
@@ -0,0 +1,153 @@
+package com.planbana.backend.chat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Moves {@code messages} documents into buckets a few conversations at a time while chat stays
+ * online. It walks the conversation ids still present in {@code messages} rather than the
+ * conversations, so documents written after a conversation was moved (a document-mode node during
+ * a rolling deploy, a message to an id without a conversation) are picked up on a later pass. Per
+ * conversation it writes the buckets (insert-only, with the same deterministic ids on every run),
+ * then deletes the documents they hold. A run interrupted anywhere is simply repeated; several
+ * nodes may run it at once.
+ *
+ * <p>While any document is left, {@link BucketMessageStore} keeps merging {@code messages} into
+ * history. The migrator keeps checking after the collection empties, and turns the merge back on
+ * if documents show up again.
+ */
+@Component
+@ConditionalOnProperty(name = "app.chat.storage.mode", havingValue = "bucket")
+public class MessageBucketMigrator {
+
+  private static final Logger log = LoggerFactory.getLogger(MessageBucketMigrator.class);
+  private static final int BULK_SIZE = 100;
+
+  private final MongoTemplate mongo;
+  private final BucketMessageStore store;
+  private final int batch;
+  private String resumeAfter;
+
+  public MessageBucketMigrator(MongoTemplate mongo, BucketMessageStore store,
+                               @Value("${app.chat.storage.migrate-batch:50}") int batch) {
+    this.mongo = mongo;
+    this.store = store;
+    this.batch = batch;
+  }
+
+  @Scheduled(fixedDelayString = "${app.chat.storage.migrate-interval-ms:10000}",
+      initialDelayString = "${app.chat.storage.migrate-interval-ms:10000}")
+  public void migrateSome() {
+    if (!mongo.exists(new Query(), Message.class)) {
+      if (!store.isLegacyDrained()) {
+        log.info("All chat messages are stored in buckets");
+      }
+      store.setLegacyDrained(true);
+      resumeAfter = null;
+      return;
+    }
+    store.setLegacyDrained(false);
+    int moved = 0;
+    int conversations = 0;
+    while (conversations < batch) {
+      String conversationId = nextConversation();
+      if (conversationId == null) {
+        // End of a pass; start over for conversations that had documents written to them since
+        resumeAfter = null;
+        break;
+      }
+      moved += migrate(conversationId);
+      resumeAfter = conversationId;
+      conversations++;
+    }
+    if (conversations > 0) {
+      log.info("Moved {} chat messages of {} conversations into buckets", moved, conversations);
+    }
+  }
+
+  /** The next conversation id after {@code resumeAfter} that still has documents, from the conversationId index. */
+  private String nextConversation() {
+    Query next = Query.query(Criteria.where("conversationId").gt(resumeAfter == null ? "" : resumeAfter))
+        .with(Sort.by("conversationId")).limit(1);
+    next.fields().include("conversationId");
+    Message m = mongo.findOne(next, Message.class);
+    return m == null ? null : m.getConversationId();
+  }
+
+  private int migrate(String conversationId) {
+    Query old = Query.query(Criteria.where("conversationId").is(conversationId))
+        .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id")).cursorBatchSize(1000);
+    BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, BucketMessageStore.COLLECTION);
+    int pending = 0;
+    int moved = 0;
+    List<String> bucketed = new ArrayList<>();
+    List<Message> chunk = new ArrayList<>();
+    Instant window = null;
+    try (Stream<Message> stream = mongo.stream(old, Message.class)) {
+      Iterator<Message> messages = stream.iterator();
+      while (messages.hasNext()) {
+        Message m = messages.next();
+        Instant w = store.windowOf(m.getCreatedAt());
+        if (!chunk.isEmpty() && (!w.equals(window) || chunk.size() == store.bucketSize())) {
+          addBucket(ops, conversationId, window, chunk);
+          chunk.forEach(c -> bucketed.add(c.getId()));
+          chunk = new ArrayList<>();
+          if (++pending == BULK_SIZE) {
+            moved += write(ops, bucketed);
+            ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, BucketMessageStore.COLLECTION);
+            pending = 0;
+          }
+        }
+        window = w;
+        chunk.add(m);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      addBucket(ops, conversationId, window, chunk);
+      chunk.forEach(c -> bucketed.add(c.getId()));
+      pending++;
+    }
+    if (pending > 0) {
+      moved += write(ops, bucketed);
+    }
+    return moved;
+  }
+
+  /** Writes the buckets, then deletes exactly the documents they hold; later arrivals stay for the next pass. */
+  private int write(BulkOperations ops, List<String> bucketed) {
+    ops.execute();
+    mongo.remove(Query.query(Criteria.where("_id").in(bucketed)), Message.class);
+    int moved = bucketed.size();
+    bucketed.clear();
+    return moved;
+  }
+
+  private void addBucket(BulkOperations ops, String conversationId, Instant window, List<Message> chunk) {
+    String id = BucketMessageStore.bucketId(conversationId, window, chunk.get(0).getId());
+    // Insert-only: a bucket from an earlier run may have received live messages since
+    ops.upsert(Query.query(Criteria.where("_id").is(id)), new Update()
+        .setOnInsert("conversationId", conversationId)
+        .setOnInsert("window", window)
+        .setOnInsert("count", chunk.size())
+        .setOnInsert("first", chunk.get(0).getCreatedAt())
+        .setOnInsert("last", chunk.get(chunk.size() - 1).getCreatedAt())
+        .setOnInsert("messages", store.embed(chunk))
+        .setOnInsert("migrated", true));
+  }
+}
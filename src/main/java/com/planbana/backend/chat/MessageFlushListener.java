@@ -0,0 +1,14 @@
+package com.planbana.backend.chat;
+
+import java.util.List;
+
+/**
+ * Notified on the {@link MessageWriter} thread after a batch of messages has been written to Mongo,
+ * before the batch is acknowledged in the journal. A listener that throws is called again with the
+ * same messages until it succeeds. Messages that were already stored are not passed again, except
+ * journal replays after a crash: those may repeat what a listener saw just before the crash.
+ */
+public interface MessageFlushListener {
+
+  void flushed(List<Message> messages);
+}
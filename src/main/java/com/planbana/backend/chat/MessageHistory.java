@@ -0,0 +1,12 @@
+package com.planbana.backend.chat;
+
+import java.util.List;
+
+/**
+ * One page of chat history, newest first.
+ *
+ * @param before pass back as {@code before} to load older messages; null when there are none
+ * @param after  pass back as {@code after} to load messages newer than this page
+ */
+public record MessageHistory(List<Message> items, String before, String after) {
+}
@@ -0,0 +1,262 @@
+package com.planbana.backend.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Recovery log for messages accepted but not yet written to Mongo. Messages are appended as NDJSON
+ * to numbered segment files with one unbuffered write each, so they survive a crash of the process
+ * (and of the machine when {@code fsync} is on). The ids of persisted messages go to a companion
+ * {@code .acked} file so a restart replays only the rest. A segment is rotated at
+ * {@code segmentBytes} and deleted once it is closed and every message in it has been persisted.
+ */
+class MessageJournal implements AutoCloseable {
+
+  record Entry(String id, String conversationId, String senderUserId, String content, Instant createdAt,
+               String createdBy, String originNode) {
+
+    static Entry of(Message m) {
+      return new Entry(m.getId(), m.getConversationId(), m.getSenderUserId(), m.getContent(), m.getCreatedAt(),
+          m.getCreatedBy(), m.getOriginNode());
+    }
+
+    Message toMessage() {
+      Message m = new Message();
+      m.setId(id);
+      m.setConversationId(conversationId);
+      m.setSenderUserId(senderUserId);
+      m.setContent(content);
+      m.setCreatedAt(createdAt);
+      m.setCreatedBy(createdBy);
+      m.setOriginNode(originNode);
+      m.setVersion(0L);
+      return m;
+    }
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(MessageJournal.class);
+  private static final String PREFIX = "segment-";
+  private static final String SUFFIX = ".log";
+  private static final String ACKED_SUFFIX = ".acked";
+  private static final String DEAD_LETTERS = "dead-letters.ndjson";
+
+  record DeadLetter(Entry message, String error, Instant at) {}
+
+  private final Path dir;
+  private final long segmentBytes;
+  private final boolean fsync;
+  private final ObjectMapper json;
+  // Messages per segment not yet persisted; a segment is deletable once closed and at zero
+  private final Map<Long, AtomicInteger> pending = new ConcurrentHashMap<>();
+  private long segment;
+  private FileChannel channel;
+
+  MessageJournal(Path dir, long segmentBytes, boolean fsync, ObjectMapper json) {
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.fsync = fsync;
+    this.json = json;
+  }
+
+  /**
+   * Reads the entries left by a previous run, less those acknowledged, and opens a fresh segment
+   * after them. The returned entries keep their segment, which is deleted once they have been
+   * {@link #persisted}.
+   */
+  synchronized Map<Long, List<Entry>> recover() throws IOException {
+    Files.createDirectories(dir);
+    Map<Long, List<Entry>> recovered = new TreeMap<>();
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : files.filter(MessageJournal::isSegment).toList()) {
+        long seq = sequenceOf(file);
+        segment = Math.max(segment, seq);
+        Set<String> acked = readAcked(seq);
+        List<Entry> entries = read(file);
+        entries.removeIf(e -> acked.contains(e.id()));
+        if (entries.isEmpty()) {
+          delete(seq);
+        } else {
+          recovered.put(seq, entries);
+          pending.put(seq, new AtomicInteger(entries.size()));
+        }
+      }
+    }
+    open(segment + 1);
+    return recovered;
+  }
+
+  /** The segment the next {@link #append} goes to; call under the same lock as append. */
+  synchronized long reserve() {
+    pending.computeIfAbsent(segment, s -> new AtomicInteger()).incrementAndGet();
+    return segment;
+  }
+
+  synchronized void append(Entry entry) {
+    try {
+      byte[] line = (json.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+      ByteBuffer buf = ByteBuffer.wrap(line);
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      }
+      if (fsync) {
+        channel.force(false);
+      }
+      if (channel.position() >= segmentBytes) {
+        open(segment + 1);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Records that these messages of {@code seq} are done with, so a restart does not replay them,
+   * deleting the segment when it is done.
+   */
+  void persisted(long seq, List<String> ids) {
+    if (!ids.isEmpty()) {
+      try (FileChannel acks = FileChannel.open(ackedPath(seq), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND)) {
+        ByteBuffer buf = ByteBuffer.wrap((String.join("\n", ids) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) {
+          acks.write(buf);
+        }
+        if (fsync) {
+          acks.force(false);
+        }
+      } catch (IOException e) {
+        // They are replayed after a crash, which the store and listeners tolerate
+        log.warn("Could not acknowledge {} journal entries of segment {}: {}", ids.size(), seq, e.getMessage());
+      }
+    }
+    persisted(seq, ids.size());
+  }
+
+  /** Records that {@code count} messages reserved in {@code seq} need no replay, deleting it when it is done. */
+  void persisted(long seq, int count) {
+    AtomicInteger left = pending.get(seq);
+    if (left != null && left.addAndGet(-count) <= 0) {
+      synchronized (this) {
+        if (seq != segment && left.get() <= 0) {
+          pending.remove(seq);
+          delete(seq);
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps a message Mongo refused for good in {@code dead-letters.ndjson}, next to the segments but
+   * never replayed. Call {@link #persisted} for it afterwards as for a written message.
+   */
+  synchronized void deadLetter(Entry entry, String error) {
+    try {
+      String line = json.writeValueAsString(new DeadLetter(entry, error, Instant.now())) + "\n";
+      Files.writeString(dir.resolve(DEAD_LETTERS), line, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      AtomicInteger left = pending.get(segment);
+      if (left == null || left.get() <= 0) {
+        delete(segment);
+      }
+    }
+  }
+
+  private void open(long seq) throws IOException {
+    long previous = segment;
+    if (channel != null) {
+      channel.close();
+    }
+    segment = seq;
+    channel = FileChannel.open(path(seq), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    AtomicInteger left = pending.get(previous);
+    if (previous != seq && left != null && left.get() <= 0) {
+      pending.remove(previous);
+      delete(previous);
+    }
+  }
+
+  private List<Entry> read(Path file) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.isBlank()) {
+          continue;
+        }
+        try {
+          entries.add(json.readValue(line, Entry.class));
+        } catch (IOException e) {
+          // A crash mid-write leaves at most a torn last line
+          log.warn("Skipping unreadable journal line in {}: {}", file.getFileName(), e.getMessage());
+        }
+      }
+    }
+    return entries;
+  }
+
+  private Set<String> readAcked(long seq) throws IOException {
+    Path file = ackedPath(seq);
+    if (!Files.exists(file)) {
+      return Set.of();
+    }
+    // A torn last line matches no id
+    return new HashSet<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+  }
+
+  private void delete(long seq) {
+    try {
+      Files.deleteIfExists(path(seq));
+      Files.deleteIfExists(ackedPath(seq));
+    } catch (IOException e) {
+      log.warn("Could not delete journal segment {}: {}", seq, e.getMessage());
+    }
+  }
+
+  private Path path(long seq) {
+    return dir.resolve(PREFIX + String.format("%012d", seq) + SUFFIX);
+  }
+
+  private Path ackedPath(long seq) {
+    return dir.resolve(PREFIX + String.format("%012d", seq) + ACKED_SUFFIX);
+  }
+
+  private static boolean isSegment(Path file) {
+    String name = file.getFileName().toString();
+    return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+  }
+
+  private static long sequenceOf(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+  }
+}
@@ -0,0 +1,15 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.common.KeysetCursor;
+import org.springframework.data.domain.Slice;
+
+public interface MessageRepositoryCustom {
+
+  /**
+   * Up to {@code size} messages of a conversation, newest first, ordered by (createdAt, _id).
+   * With {@code before} they are the messages just older than it; with {@code after} the ones just
+   * newer; with neither the latest. {@code hasNext} tells whether more exist in that direction.
+   * No count is run.
+   */
+  Slice<Message> history(String conversationId, KeysetCursor before, KeysetCursor after, int size);
+}
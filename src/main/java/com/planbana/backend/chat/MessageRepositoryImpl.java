@@ -0,0 +1,52 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.common.KeysetCursor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Keyset history reads served by the (conversationId, createdAt, _id) index. */
+class MessageRepositoryImpl implements MessageRepositoryCustom {
+
+  private final MongoTemplate mongo;
+
+  MessageRepositoryImpl(MongoTemplate mongo) {
+    this.mongo = mongo;
+  }
+
+  @Override
+  public Slice<Message> history(String conversationId, KeysetCursor before, KeysetCursor after, int size) {
+    Query query = Query.query(Criteria.where("conversationId").is(conversationId));
+    boolean forward = before == null && after != null;
+    if (before != null) {
+      query.addCriteria(new Criteria().orOperator(
+          Criteria.where("createdAt").lt(before.at()),
+          Criteria.where("createdAt").is(before.at()).and("_id").lt(before.id())));
+    } else if (after != null) {
+      query.addCriteria(new Criteria().orOperator(
+          Criteria.where("createdAt").gt(after.at()),
+          Criteria.where("createdAt").is(after.at()).and("_id").gt(after.id())));
+    }
+    Sort.Direction direction = forward ? Sort.Direction.ASC : Sort.Direction.DESC;
+    query.with(Sort.by(direction, "createdAt", "_id")).limit(size + 1);
+
+    List<Message> items = new ArrayList<>(mongo.find(query, Message.class));
+    boolean hasNext = items.size() > size;
+    if (hasNext) {
+      items.remove(size);
+    }
+    if (forward) {
+      // Read oldest-first to stay adjacent to the cursor, returned newest-first like every page
+      Collections.reverse(items);
+    }
+    return new SliceImpl<>(items, PageRequest.of(0, size), hasNext);
+  }
+}
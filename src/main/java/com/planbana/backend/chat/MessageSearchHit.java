@@ -0,0 +1,13 @@
+package com.planbana.backend.chat;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A message matching a search.
+ *
+ * @param highlights {@code [start, end)} character ranges of {@code content} that matched the query
+ */
+public record MessageSearchHit(String id, String senderUserId, String content, Instant createdAt,
+                               List<int[]> highlights) {
+}
@@ -0,0 +1,508 @@
+package com.planbana.backend.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.common.KeysetCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-process full-text search over chat messages, one inverted index per conversation: folded
+ * word to a compressed bitmap of message ordinals. A segment is built from the {@link MessageStore}
+ * on {@code build-threads} background threads, started by the first search of its conversation, and
+ * kept in a Caffeine cache bounded by estimated bytes.
+ *
+ * <p>A search waits at most {@code build-wait-ms} for a segment that is still being built. Past
+ * that it is answered by reading the conversation's history newest first and matching in memory,
+ * up to {@code fallback-scan-limit} messages per page, so a long conversation does not hold the
+ * request for its whole build.
+ *
+ * <p>Messages stored through this node are appended as the writer flushes them. Before searching,
+ * the conversation's last message is checked against the segment; if it is missing, messages
+ * newer than the segment's watermark (less {@code catch-up-grace-ms}, for writes that landed out
+ * of order) are read back from the store, which picks up what other nodes wrote.
+ *
+ * <p>All query words must match; the last one also matches as a prefix. Hits are newest first,
+ * keyset-paginated on (createdAt, id), with the matched character ranges.
+ */
+@Component
+public class MessageSearchIndex implements MessageFlushListener {
+
+  static final int MAX_QUERY_TERMS = 8;
+  private static final String MIN_ID = "000000000000000000000000";
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+  private final MessageStore store;
+  private final MongoTemplate mongo;
+  private final long graceMs;
+  private final Cache<String, Segment> segments;
+  private final Map<String, CompletableFuture<Segment>> building = new ConcurrentHashMap<>();
+  private final ThreadPoolExecutor builders;
+  private final long buildWaitMs;
+  private final int fallbackScanLimit;
+  private final Timer queries;
+  private final Counter fallbacks;
+
+  public MessageSearchIndex(MessageStore store, MongoTemplate mongo, MeterRegistry registry,
+                            @Value("${app.chat.search.max-bytes:268435456}") long maxBytes,
+                            @Value("${app.chat.search.expire-after-access-ms:1800000}") long expireAfterAccessMs,
+                            @Value("${app.chat.search.catch-up-grace-ms:30000}") long graceMs,
+                            @Value("${app.chat.search.build-threads:2}") int buildThreads,
+                            @Value("${app.chat.search.build-queue-capacity:256}") int buildQueueCapacity,
+                            @Value("${app.chat.search.build-wait-ms:100}") long buildWaitMs,
+                            @Value("${app.chat.search.fallback-scan-limit:5000}") int fallbackScanLimit) {
+    this.store = store;
+    this.mongo = mongo;
+    this.graceMs = graceMs;
+    this.buildWaitMs = buildWaitMs;
+    this.fallbackScanLimit = Math.max(1, fallbackScanLimit);
+    AtomicInteger seq = new AtomicInteger();
+    this.builders = new ThreadPoolExecutor(buildThreads, buildThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(buildQueueCapacity),
+        r -> {
+          Thread t = new Thread(r, "chat-search-build-" + seq.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+    this.segments = Caffeine.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((String id, Segment s) -> (int) Math.min(Integer.MAX_VALUE, s.bytes))
+        .expireAfterAccess(Duration.ofMillis(expireAfterAccessMs))
+        .build();
+    this.queries = Timer.builder("chat.search.query").register(registry);
+    this.fallbacks = Counter.builder("chat.search.fallback")
+        .description("Searches answered from the store while the conversation's index was being built")
+        .register(registry);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    builders.shutdownNow();
+  }
+
+  /**
+   * Messages of a conversation the user belongs to that contain every word of {@code q}.
+   *
+   * @throws ResponseStatusException 404 when the user is not a participant, 400 for a query without
+   *     words or with more than {@value #MAX_QUERY_TERMS}
+   */
+  public CursorPage<MessageSearchHit> search(String conversationId, String userId, String q, String cursor, int size) {
+    List<String> terms = queryTerms(q);
+    if (terms.isEmpty()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must contain a word");
+    }
+    if (terms.size() > MAX_QUERY_TERMS) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "q may contain at most " + MAX_QUERY_TERMS + " words");
+    }
+    Query member = Query.query(Criteria.where("_id").is(conversationId).and("participantUserIds").is(userId));
+    member.fields().include("lastMessage");
+    Conversation conversation = mongo.findOne(member, Conversation.class);
+    if (conversation == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+    KeysetCursor after = cursor == null || cursor.isBlank() ? null : KeysetCursor.decode(cursor);
+    int limit = Math.max(1, Math.min(size, 50));
+
+    Segment segment = segment(conversationId);
+    if (segment == null) {
+      fallbacks.increment();
+      return queries.record(() -> scan(conversationId, terms, after, limit));
+    }
+    Conversation.LastMessage last = conversation.getLastMessage();
+    if (last != null && !segment.covers(last.id(), last.createdAt())) {
+      catchUp(conversationId, segment);
+    }
+    return queries.record(() -> segment.search(terms, after, limit));
+  }
+
+  @Override
+  public void flushed(List<Message> messages) {
+    Map<String, List<Message>> byConversation = new HashMap<>();
+    for (Message m : messages) {
+      if (segments.getIfPresent(m.getConversationId()) != null) {
+        byConversation.computeIfAbsent(m.getConversationId(), c -> new ArrayList<>()).add(m);
+      }
+    }
+    byConversation.forEach((conversationId, batch) -> {
+      Segment segment = segments.getIfPresent(conversationId);
+      if (segment != null) {
+        segment.addAll(batch);
+        // Re-weighs the segment
+        segments.asMap().replace(conversationId, segment, segment);
+      }
+    });
+  }
+
+  /** The built segment, waiting up to {@code build-wait-ms} for one being built; null if still not ready. */
+  private Segment segment(String conversationId) {
+    Segment segment = segments.getIfPresent(conversationId);
+    if (segment != null) {
+      return segment;
+    }
+    CompletableFuture<Segment> build = building.get(conversationId);
+    if (build == null) {
+      CompletableFuture<Segment> started = new CompletableFuture<>();
+      build = building.putIfAbsent(conversationId, started);
+      if (build == null) {
+        build = started;
+        try {
+          builders.execute(() -> build(conversationId, started));
+        } catch (RejectedExecutionException e) {
+          // Every builder is busy and the queue is full; a later search starts it again
+          building.remove(conversationId, started);
+          return null;
+        }
+      }
+    }
+    try {
+      return build.get(buildWaitMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException | ExecutionException e) {
+      // A failed build was removed from building, so the next search retries it
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  private void build(String conversationId, CompletableFuture<Segment> result) {
+    try {
+      Segment segment = load(conversationId);
+      // Cached before leaving building, so a search always finds one or the other
+      segments.put(conversationId, segment);
+      result.complete(segment);
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+    } finally {
+      building.remove(conversationId, result);
+    }
+  }
+
+  /**
+   * Reads history older than {@code after} newest first and keeps the messages containing every
+   * term. Stops after {@code limit} hits or {@code fallback-scan-limit} messages; in the second case
+   * the cursor points at the last message read, so the next page carries on from there.
+   */
+  private CursorPage<MessageSearchHit> scan(String conversationId, List<String> terms, KeysetCursor after, int limit) {
+    List<MessageSearchHit> hits = new ArrayList<>(limit);
+    KeysetCursor position = after;
+    int budget = fallbackScanLimit;
+    while (budget > 0) {
+      Slice<Message> page = store.history(conversationId, position, null, Math.min(500, budget));
+      for (Message m : page.getContent()) {
+        String content = m.getContent() == null ? "" : m.getContent();
+        if (matches(content, terms)) {
+          if (hits.size() == limit) {
+            MessageSearchHit lastHit = hits.get(limit - 1);
+            return new CursorPage<>(hits, new KeysetCursor(lastHit.createdAt(), lastHit.id()).encode());
+          }
+          hits.add(new MessageSearchHit(m.getId(), m.getSenderUserId(), content, m.getCreatedAt(),
+              highlights(content, terms)));
+        }
+        position = new KeysetCursor(m.getCreatedAt(), m.getId());
+      }
+      budget -= page.getNumberOfElements();
+      if (!page.hasNext()) {
+        return new CursorPage<>(hits, null);
+      }
+    }
+    return new CursorPage<>(hits, position.encode());
+  }
+
+  private Segment load(String conversationId) {
+    Segment segment = new Segment(graceMs);
+    List<Message> batch = new ArrayList<>(1000);
+    store.scan(conversationId, m -> {
+      batch.add(m);
+      if (batch.size() == 1000) {
+        segment.addAll(batch);
+        batch.clear();
+      }
+    });
+    segment.addAll(batch);
+    return segment;
+  }
+
+  private void catchUp(String conversationId, Segment segment) {
+    KeysetCursor from = segment.catchUpFrom();
+    while (true) {
+      var page = store.history(conversationId, null, from, 500);
+      List<Message> items = page.getContent();
+      if (items.isEmpty()) {
+        break;
+      }
+      segment.addAll(items);
+      Message newest = items.get(0);
+      from = new KeysetCursor(newest.getCreatedAt(), newest.getId());
+      if (items.size() < 500) {
+        break;
+      }
+    }
+    segments.asMap().replace(conversationId, segment, segment);
+  }
+
+  /** Lower-cased words with diacritics removed, as indexed. */
+  static String fold(String word) {
+    boolean ascii = true;
+    for (int i = 0; i < word.length() && ascii; i++) {
+      ascii = word.charAt(i) < 0x80;
+    }
+    if (ascii) {
+      return word.toLowerCase(Locale.ROOT);
+    }
+    return MARKS.matcher(Normalizer.normalize(word, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+  }
+
+  static List<String> queryTerms(String q) {
+    Set<String> terms = new LinkedHashSet<>();
+    if (q != null) {
+      forEachWord(q, (start, end) -> terms.add(fold(q.substring(start, end))));
+    }
+    return List.copyOf(terms);
+  }
+
+  /** Whether {@code content} has every term as a word, the last one also as a prefix, as the index matches. */
+  static boolean matches(String content, List<String> terms) {
+    Set<String> missing = new HashSet<>(terms.subList(0, terms.size() - 1));
+    String last = terms.get(terms.size() - 1);
+    boolean[] lastSeen = {false};
+    forEachWord(content, (start, end) -> {
+      String word = fold(content.substring(start, end));
+      missing.remove(word);
+      lastSeen[0] |= word.startsWith(last);
+    });
+    return lastSeen[0] && missing.isEmpty();
+  }
+
+  private static List<int[]> highlights(String content, List<String> terms) {
+    List<int[]> ranges = new ArrayList<>();
+    String last = terms.get(terms.size() - 1);
+    forEachWord(content, (start, end) -> {
+      String word = fold(content.substring(start, end));
+      if (word.startsWith(last) || terms.contains(word)) {
+        ranges.add(new int[] {start, end});
+      }
+    });
+    return ranges;
+  }
+
+  private interface WordSink {
+    void word(int start, int end);
+  }
+
+  private static void forEachWord(String text, WordSink sink) {
+    int start = -1;
+    for (int i = 0; i < text.length(); ) {
+      int cp = text.codePointAt(i);
+      boolean wordChar = Character.isLetterOrDigit(cp) || Character.getType(cp) == Character.NON_SPACING_MARK;
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        sink.word(start, i);
+        start = -1;
+      }
+      i += Character.charCount(cp);
+    }
+    if (start >= 0) {
+      sink.word(start, text.length());
+    }
+  }
+
+  /** One conversation's messages and postings; ordinals are positions in the parallel arrays. */
+  static final class Segment {
+    private final long graceMs;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, RoaringBitmap> postings = new TreeMap<>();
+    // Ids near the watermark, so re-reading them during catch-up does not index them twice
+    private final Map<String, Long> recent = new HashMap<>();
+    private String[] ids = new String[64];
+    private String[] senders = new String[64];
+    private String[] contents = new String[64];
+    private long[] times = new long[64];
+    private int size;
+    private long watermark = Long.MIN_VALUE;
+    private String watermarkId = "";
+    volatile long bytes = 256;
+
+    Segment(long graceMs) {
+      this.graceMs = graceMs;
+    }
+
+    void addAll(List<Message> messages) {
+      lock.writeLock().lock();
+      try {
+        for (Message m : messages) {
+          add(m);
+        }
+        long floor = watermark - graceMs;
+        recent.values().removeIf(t -> t < floor);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private void add(Message m) {
+      long at = m.getCreatedAt() == null ? 0 : m.getCreatedAt().toEpochMilli();
+      if (recent.containsKey(m.getId())) {
+        return;
+      }
+      if (size == ids.length) {
+        int grown = size * 2;
+        ids = Arrays.copyOf(ids, grown);
+        senders = Arrays.copyOf(senders, grown);
+        contents = Arrays.copyOf(contents, grown);
+        times = Arrays.copyOf(times, grown);
+        bytes += 28L * (grown - size);
+      }
+      int doc = size++;
+      String content = m.getContent() == null ? "" : m.getContent();
+      ids[doc] = m.getId();
+      senders[doc] = m.getSenderUserId();
+      contents[doc] = content;
+      times[doc] = at;
+      bytes += 64 + 2L * content.length();
+      forEachWord(content, (start, end) -> {
+        String term = fold(content.substring(start, end));
+        RoaringBitmap docs = postings.get(term);
+        if (docs == null) {
+          docs = new RoaringBitmap();
+          postings.put(term, docs);
+          bytes += 64 + 2L * term.length();
+        }
+        docs.add(doc);
+        bytes += 2;
+      });
+      recent.put(m.getId(), at);
+      if (at > watermark || at == watermark && m.getId().compareTo(watermarkId) > 0) {
+        watermark = at;
+        watermarkId = m.getId();
+      }
+    }
+
+    boolean covers(String id, Instant createdAt) {
+      lock.readLock().lock();
+      try {
+        if (recent.containsKey(id)) {
+          return true;
+        }
+        return createdAt != null && createdAt.toEpochMilli() < watermark - graceMs;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    KeysetCursor catchUpFrom() {
+      lock.readLock().lock();
+      try {
+        return watermark == Long.MIN_VALUE ? null
+            : new KeysetCursor(Instant.ofEpochMilli(watermark - graceMs), MIN_ID);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    CursorPage<MessageSearchHit> search(List<String> terms, KeysetCursor after, int limit) {
+      lock.readLock().lock();
+      try {
+        RoaringBitmap matches = null;
+        for (int i = 0; i < terms.size(); i++) {
+          RoaringBitmap docs = i == terms.size() - 1 ? prefixed(terms.get(i)) : postings.get(terms.get(i));
+          if (docs == null || docs.isEmpty()) {
+            return new CursorPage<>(List.of(), null);
+          }
+          matches = matches == null ? docs.clone() : RoaringBitmap.and(matches, docs);
+        }
+
+        // Newest first: keep the limit + 1 newest before the cursor in a min-heap
+        long cursorAt = after == null ? Long.MAX_VALUE : after.at().toEpochMilli();
+        String cursorId = after == null ? "" : after.id();
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 2, (a, b) -> compare(a, b));
+        IntIterator it = matches.getIntIterator();
+        while (it.hasNext()) {
+          int doc = it.next();
+          if (after != null && (times[doc] > cursorAt || times[doc] == cursorAt && ids[doc].compareTo(cursorId) >= 0)) {
+            continue;
+          }
+          if (heap.size() <= limit) {
+            heap.add(doc);
+          } else if (compare(doc, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(doc);
+          }
+        }
+        int[] newest = new int[heap.size()];
+        for (int i = newest.length - 1; i >= 0; i--) {
+          newest[i] = heap.poll();
+        }
+        int count = Math.min(limit, newest.length);
+        List<MessageSearchHit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          int doc = newest[i];
+          hits.add(new MessageSearchHit(ids[doc], senders[doc], contents[doc], Instant.ofEpochMilli(times[doc]),
+              highlights(contents[doc], terms)));
+        }
+        String next = null;
+        if (newest.length > limit) {
+          int lastDoc = newest[limit - 1];
+          next = new KeysetCursor(Instant.ofEpochMilli(times[lastDoc]), ids[lastDoc]).encode();
+        }
+        return new CursorPage<>(hits, next);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private RoaringBitmap prefixed(String prefix) {
+      Iterator<RoaringBitmap> docs = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false)
+          .values().iterator();
+      return docs.hasNext() ? RoaringBitmap.or(docs) : null;
+    }
+
+    private int compare(int a, int b) {
+      int byTime = Long.compare(times[a], times[b]);
+      return byTime != 0 ? byTime : ids[a].compareTo(ids[b]);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.planbana.backend.chat;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.planbana.backend.common.KeysetCursor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Where chat messages are kept: one document per message, or packed into per-conversation buckets
+ * ({@code app.chat.storage.mode}). The writer, history reads and the change-stream fan-out all go
+ * through this, so they agree on the layout.
+ */
+public interface MessageStore {
+
+  /**
+   * Stores a batch and returns the indexes of messages that were already stored.
+   *
+   * @param mayBeStored the batch may repeat earlier writes (journal replay, retry); stores that
+   *                    cannot detect duplicates for free only look for them when this is set
+   */
+  Set<Integer> insert(List<Message> batch, boolean mayBeStored);
+
+  /** Same contract as {@link MessageRepositoryCustom#history}. */
+  Slice<Message> history(String conversationId, KeysetCursor before, KeysetCursor after, int size);
+
+  /** Every stored message of the conversation, roughly oldest first. */
+  void scan(String conversationId, Consumer<Message> consumer);
+
+  /**
+   * Every stored message with an id after {@code afterId} (all when null) in id order, for exports.
+   * The caller closes the stream.
+   */
+  Stream<Message> export(String afterId, int batchSize);
+
+  /** Collection that receives new messages. */
+  String collection();
+
+  /** Change stream filter matching new messages of the given conversations. */
+  Bson changeFilter(Collection<String> conversationIds);
+
+  /** The new messages carried by a change event that passed {@link #changeFilter}. */
+  List<Message> added(ChangeStreamDocument<Document> change);
+}
@@ -0,0 +1,360 @@
+package com.planbana.backend.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind for chat messages. {@link #submit} stamps the message, journals it and queues it
+ * without touching Mongo; a single writer thread drains the bounded queue into batches of up to
+ * {@code flush-size} for the {@link MessageStore}, waiting at most {@code flush-interval-ms} to
+ * fill one. Batches that fail because Mongo is unreachable are retried until they succeed, so
+ * delivery to Mongo is at-least-once: ids are assigned up front and duplicates from a replay are
+ * ignored. A batch Mongo rejects {@code max-attempts} times is split in half and each half retried,
+ * down to single messages, which are then dead-lettered next to the journal.
+ *
+ * <p>The {@link MessageFlushListener}s run before a batch is acknowledged in the journal, and one
+ * that fails is retried the same way until it succeeds: a listener that cannot keep up holds the
+ * writer back, and so fills the queue, rather than losing its update. Messages replayed from the
+ * journal were never acknowledged, so they go to the listeners even when Mongo already had them.
+ */
+@Component
+public class MessageWriter implements SmartLifecycle {
+
+  /** Thrown by {@link #submit} when the queue is full because Mongo is not keeping up. */
+  public static class OverloadedException extends RuntimeException {
+    OverloadedException() {
+      super("Chat is overloaded, retry shortly");
+    }
+  }
+
+  private record Pending(Message message, long segment, boolean replayed) {}
+
+  private static final Logger log = LoggerFactory.getLogger(MessageWriter.class);
+
+  private final MessageStore store;
+  private final MessageJournal journal;
+  private final BlockingQueue<Pending> queue;
+  private final int flushSize;
+  private final long flushIntervalNanos;
+  private final int maxAttempts;
+  private final Counter written;
+  private final Counter rejected;
+  private final Counter deadLettered;
+  private final Timer flushTimer;
+  private final ObjectProvider<MessageFlushListener> listeners;
+  private volatile boolean running;
+  private Thread writer;
+
+  public MessageWriter(MessageStore store, ObjectMapper objectMapper, MeterRegistry registry,
+                       ObjectProvider<MessageFlushListener> listeners,
+                       @Value("${app.chat.write-behind.queue-capacity:10000}") int capacity,
+                       @Value("${app.chat.write-behind.flush-size:500}") int flushSize,
+                       @Value("${app.chat.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                       @Value("${app.chat.write-behind.max-attempts:5}") int maxAttempts,
+                       @Value("${app.chat.write-behind.journal-dir:data/chat-journal}") String journalDir,
+                       @Value("${app.chat.write-behind.segment-bytes:16777216}") long segmentBytes,
+                       @Value("${app.chat.write-behind.fsync:false}") boolean fsync) {
+    this.store = store;
+    this.listeners = listeners;
+    this.journal = new MessageJournal(Path.of(journalDir), segmentBytes, fsync, objectMapper);
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.flushSize = flushSize;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.written = Counter.builder("chat.write_behind.written").register(registry);
+    this.rejected = Counter.builder("chat.write_behind.rejected").register(registry);
+    this.deadLettered = Counter.builder("chat.write_behind.dead_lettered").register(registry);
+    this.flushTimer = Timer.builder("chat.write_behind.flush").register(registry);
+    Gauge.builder("chat.write_behind.queued", queue, BlockingQueue::size).register(registry);
+  }
+
+  /**
+   * Assigns the message its id (unless already set), creation time and version, journals it and
+   * queues it for writing.
+   *
+   * @throws OverloadedException when the queue is full
+   */
+  public Message submit(Message message, String createdBy) {
+    if (!running) {
+      throw new IllegalStateException("Message writer is not running");
+    }
+    if (message.getId() == null) {
+      message.setId(new ObjectId().toHexString());
+    }
+    message.setCreatedAt(Instant.now());
+    message.setCreatedBy(createdBy);
+    message.setVersion(0L);
+    // Reserve, queue and append under the journal's lock so segments see their messages in order
+    synchronized (journal) {
+      long segment = journal.reserve();
+      if (!queue.offer(new Pending(message, segment, false))) {
+        journal.persisted(segment, 1);
+        rejected.increment();
+        throw new OverloadedException();
+      }
+      try {
+        journal.append(MessageJournal.Entry.of(message));
+      } catch (UncheckedIOException e) {
+        // Still queued, only not recoverable after a crash
+        log.error("Could not journal message {}: {}", message.getId(), e.getMessage());
+      }
+    }
+    return message;
+  }
+
+  @Override
+  public void start() {
+    Map<Long, List<MessageJournal.Entry>> recovered;
+    try {
+      recovered = journal.recover();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open the chat journal", e);
+    }
+    running = true;
+    writer = new Thread(this::drain, "chat-message-writer");
+    writer.setDaemon(true);
+    writer.start();
+
+    int replayed = 0;
+    for (Map.Entry<Long, List<MessageJournal.Entry>> segment : recovered.entrySet()) {
+      for (MessageJournal.Entry e : segment.getValue()) {
+        try {
+          queue.put(new Pending(e.toMessage(), segment.getKey(), true));
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        replayed++;
+      }
+    }
+    if (replayed > 0) {
+      log.info("Replaying {} chat messages from the journal", replayed);
+    }
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    if (writer != null) {
+      writer.interrupt();
+      try {
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      journal.close();
+    } catch (IOException e) {
+      log.warn("Closing the chat journal failed: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /** Starts before and stops after the web server, so no accepted message misses the writer. */
+  @Override
+  public int getPhase() {
+    return SmartLifecycle.DEFAULT_PHASE - 4096;
+  }
+
+  private void drain() {
+    List<Pending> batch = new ArrayList<>(flushSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        Pending first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < flushSize && running) {
+          long wait = deadline - System.nanoTime();
+          if (queue.drainTo(batch, flushSize - batch.size()) == 0) {
+            if (wait <= 0) {
+              break;
+            }
+            Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next != null) {
+              batch.add(next);
+            }
+          }
+        }
+        queue.drainTo(batch, flushSize - batch.size());
+      } catch (InterruptedException e) {
+        // stop() interrupts to cut the wait short; keep draining what is queued
+        queue.drainTo(batch, flushSize - batch.size());
+      }
+      if (!batch.isEmpty()) {
+        flush(batch, false);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes the batch, retrying with backoff while Mongo is unreachable. After {@code max-attempts}
+   * rejections the halves are written separately, so one bad message cannot hold up the others.
+   *
+   * @param retried an earlier attempt may have stored part of the batch
+   */
+  private void flush(List<Pending> batch, boolean retried) {
+    List<Message> messages = new ArrayList<>(batch.size());
+    boolean replayed = false;
+    for (Pending p : batch) {
+      messages.add(p.message());
+      replayed |= p.replayed();
+    }
+    long backoffMs = 100;
+    int rejections = 0;
+    Set<Integer> alreadyStored;
+    while (true) {
+      try {
+        boolean mayBeStored = replayed || retried;
+        alreadyStored = flushTimer.record(() -> store.insert(messages, mayBeStored));
+        if (retried) {
+          // Duplicates may now be our own partial earlier attempt, so they count as new
+          alreadyStored = Set.of();
+        }
+        break;
+      } catch (RuntimeException e) {
+        if (!running) {
+          // Shutting down: what is not written stays in the journal for the next start
+          log.warn("Leaving {} chat messages to journal replay: {}", messages.size(), e.getMessage());
+          return;
+        }
+        if (!unreachable(e) && ++rejections >= maxAttempts) {
+          if (batch.size() > 1) {
+            int half = batch.size() / 2;
+            flush(batch.subList(0, half), true);
+            flush(batch.subList(half, batch.size()), true);
+          } else {
+            deadLetter(batch.get(0), e);
+          }
+          return;
+        }
+        log.warn("Writing {} chat messages failed, retrying in {} ms: {}", messages.size(), backoffMs, e.getMessage());
+        try {
+          Thread.sleep(backoffMs);
+        } catch (InterruptedException ie) {
+          // stop() was called; the next failure gives up
+        }
+        backoffMs = Math.min(backoffMs * 2, 5_000);
+        retried = true;
+      }
+    }
+    written.increment(batch.size());
+
+    List<Message> stored = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      if (!alreadyStored.contains(i) || batch.get(i).replayed()) {
+        stored.add(batch.get(i).message());
+      }
+    }
+    if (!stored.isEmpty() && !notifyListeners(stored)) {
+      return;
+    }
+    Map<Long, List<String>> perSegment = new HashMap<>();
+    for (Pending p : batch) {
+      perSegment.computeIfAbsent(p.segment(), s -> new ArrayList<>()).add(p.message().getId());
+    }
+    perSegment.forEach(journal::persisted);
+  }
+
+  /**
+   * Runs every listener on the stored messages, retrying those that fail with backoff.
+   *
+   * @return false when the writer stopped before all of them succeeded
+   */
+  private boolean notifyListeners(List<Message> stored) {
+    List<MessageFlushListener> left = new ArrayList<>(listeners.orderedStream().toList());
+    long backoffMs = 100;
+    while (true) {
+      for (Iterator<MessageFlushListener> it = left.iterator(); it.hasNext(); ) {
+        MessageFlushListener listener = it.next();
+        try {
+          listener.flushed(stored);
+          it.remove();
+        } catch (RuntimeException e) {
+          log.warn("{} failed on {} chat messages, retrying in {} ms: {}", listener.getClass().getSimpleName(),
+              stored.size(), backoffMs, e.getMessage());
+        }
+      }
+      if (left.isEmpty()) {
+        return true;
+      }
+      if (!running) {
+        // Not acknowledged, so the next start replays the batch to the listeners
+        log.warn("Leaving {} chat messages to journal replay for {} listeners", stored.size(), left.size());
+        return false;
+      }
+      try {
+        Thread.sleep(backoffMs);
+      } catch (InterruptedException ie) {
+        // stop() was called; the next failure gives up
+      }
+      backoffMs = Math.min(backoffMs * 2, 5_000);
+    }
+  }
+
+  private void deadLetter(Pending pending, RuntimeException error) {
+    Message m = pending.message();
+    log.error("Chat message {} was rejected {} times, dead-lettering it: {}", m.getId(), maxAttempts, error.getMessage());
+    try {
+      journal.deadLetter(MessageJournal.Entry.of(m), String.valueOf(error.getMessage()));
+    } catch (UncheckedIOException e) {
+      // Left in its journal segment, so the next start tries it again
+      log.error("Could not dead-letter chat message {}: {}", m.getId(), e.getMessage());
+      return;
+    }
+    deadLettered.increment();
+    journal.persisted(pending.segment(), List.of(m.getId()));
+  }
+
+  /** Whether the write failed because Mongo could not be reached rather than because it refused the batch. */
+  static boolean unreachable(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof DataAccessResourceFailureException || t instanceof TransientDataAccessException
+          || t instanceof MongoSocketException || t instanceof MongoTimeoutException
+          || t instanceof MongoNotPrimaryException || t instanceof MongoNodeIsRecoveringException
+          || (t instanceof MongoException m && m.hasErrorLabel("RetryableWriteError"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
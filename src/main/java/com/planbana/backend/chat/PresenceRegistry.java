@@ -0,0 +1,346 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.security.AuthenticatedUser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is online, away or typing in each conversation, from STOMP session events on this node.
+ * Nothing is persisted. A user is online in a conversation while subscribed to its topic, away
+ * while still connected but no longer subscribed, and offline once their last session is gone.
+ *
+ * <p>Changes only mark the conversation dirty; {@link #flush} sends one {@code type: "presence"}
+ * frame per dirty conversation with the users whose state changed, at most once per
+ * {@code min-interval-ms}. Rooms are spread over lock stripes so unrelated conversations do not
+ * contend.
+ */
+@Component
+public class PresenceRegistry {
+
+  public enum Status { ONLINE, AWAY, OFFLINE }
+
+  /** One user's change in a presence frame. */
+  public record UserPresence(String userId, Status status, boolean typing) {}
+
+  /** Frame sent to {@code /topic/conversations.{id}}; {@code full} lists everyone, e.g. after a join. */
+  public record PresenceFrame(String type, String conversationId, boolean full, List<UserPresence> users) {}
+
+  private static final class Member {
+    int subscriptions;
+    long typingUntil;
+    UserPresence lastSent;
+  }
+
+  private static final class Room {
+    final Map<String, Member> members = new HashMap<>();
+    final Set<String> changed = new HashSet<>();
+    boolean full;
+    long lastSentAt;
+  }
+
+  private static final class Stripe {
+    final Map<String, Room> rooms = new HashMap<>();
+    final Set<String> dirty = new HashSet<>();
+    // Rooms where someone is typing, so expiry does not walk every room
+    final Set<String> typing = new HashSet<>();
+  }
+
+  /** Subscription changes and the disconnect lock the session, so none lands after it closed. */
+  private static final class Session {
+    final String userId;
+    final Map<String, String> subscriptions = new ConcurrentHashMap<>();
+    boolean closed;
+
+    Session(String userId) {
+      this.userId = userId;
+    }
+  }
+
+  private final SimpMessagingTemplate broker;
+  private final Stripe[] stripes;
+  private final long minIntervalMs;
+  private final long typingTtlMs;
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+  // Sessions per user; only changed through atomic map operations, so an entry never leaves at a count above zero
+  private final Map<String, Integer> connected = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> roomsOfUser = new ConcurrentHashMap<>();
+  private final Counter frames;
+
+  public PresenceRegistry(SimpMessagingTemplate broker, MeterRegistry registry,
+                          @Value("${app.chat.presence.stripes:64}") int stripes,
+                          @Value("${app.chat.presence.min-interval-ms:1000}") long minIntervalMs,
+                          @Value("${app.chat.presence.typing-ttl-ms:6000}") long typingTtlMs) {
+    this.broker = broker;
+    this.stripes = new Stripe[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new Stripe();
+    }
+    this.minIntervalMs = minIntervalMs;
+    this.typingTtlMs = typingTtlMs;
+    this.frames = Counter.builder("chat.presence.frames").register(registry);
+    Gauge.builder("chat.presence.sessions", sessions, Map::size).register(registry);
+  }
+
+  /** Registers the session; the only event that does, so a late subscribe cannot bring back a closed one. */
+  @EventListener
+  public void onConnected(SessionConnectedEvent event) {
+    String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+    String userId = userIdOf(event.getUser());
+    if (sessionId == null || userId == null) {
+      return;
+    }
+    if (sessions.putIfAbsent(sessionId, new Session(userId)) == null) {
+      connected.merge(userId, 1, Integer::sum);
+    }
+  }
+
+  @EventListener
+  public void onSubscribe(SessionSubscribeEvent event) {
+    StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+    String destination = headers.getDestination();
+    Session session = headers.getSessionId() == null ? null : sessions.get(headers.getSessionId());
+    if (session == null || destination == null || !destination.startsWith(LocalSubscriptions.TOPIC_PREFIX)
+        || headers.getSubscriptionId() == null) {
+      return;
+    }
+    String conversationId = destination.substring(LocalSubscriptions.TOPIC_PREFIX.length());
+    synchronized (session) {
+      if (session.closed) {
+        return;
+      }
+      String previous = session.subscriptions.put(headers.getSubscriptionId(), conversationId);
+      if (previous != null) {
+        unsubscribed(session.userId, previous);
+      }
+      roomsOfUser.computeIfAbsent(session.userId, u -> ConcurrentHashMap.newKeySet()).add(conversationId);
+      Stripe stripe = stripeOf(conversationId);
+      synchronized (stripe) {
+        Room room = stripe.rooms.computeIfAbsent(conversationId, c -> new Room());
+        room.members.computeIfAbsent(session.userId, u -> new Member()).subscriptions++;
+        // The new subscriber has seen nothing yet, so the next frame carries the whole room
+        room.full = true;
+        stripe.dirty.add(conversationId);
+      }
+    }
+  }
+
+  @EventListener
+  public void onUnsubscribe(SessionUnsubscribeEvent event) {
+    StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+    Session session = headers.getSessionId() == null ? null : sessions.get(headers.getSessionId());
+    if (session == null || headers.getSubscriptionId() == null) {
+      return;
+    }
+    synchronized (session) {
+      String conversationId = session.closed ? null : session.subscriptions.remove(headers.getSubscriptionId());
+      if (conversationId != null) {
+        unsubscribed(session.userId, conversationId);
+      }
+    }
+  }
+
+  @EventListener
+  public void onDisconnect(SessionDisconnectEvent event) {
+    Session session = sessions.remove(event.getSessionId());
+    if (session == null) {
+      return;
+    }
+    synchronized (session) {
+      session.closed = true;
+      session.subscriptions.values().forEach(c -> unsubscribed(session.userId, c));
+      session.subscriptions.clear();
+    }
+    // Decrement and remove in one step: a connect in between either lands before (no removal) or after (new entry)
+    boolean last = connected.computeIfPresent(session.userId, (u, n) -> n > 1 ? n - 1 : null) == null;
+    if (last) {
+      // Away in conversations they had left: now offline there too
+      Set<String> rooms = roomsOfUser.getOrDefault(session.userId, Set.of());
+      for (String conversationId : rooms) {
+        touch(conversationId, session.userId);
+      }
+    }
+  }
+
+  /**
+   * Marks the user as typing in the conversation for {@code typing-ttl-ms}, or stops it. Ignored
+   * unless the session is subscribed to the conversation. Repeats while already typing change
+   * nothing visible, so they produce no frames.
+   */
+  public void typing(String sessionId, String conversationId, boolean typing) {
+    Session session = sessionId == null ? null : sessions.get(sessionId);
+    if (session == null || !session.subscriptions.containsValue(conversationId)) {
+      return;
+    }
+    Stripe stripe = stripeOf(conversationId);
+    synchronized (stripe) {
+      Room room = stripe.rooms.get(conversationId);
+      Member member = room == null ? null : room.members.get(session.userId);
+      if (member == null) {
+        return;
+      }
+      boolean wasTyping = member.typingUntil > System.currentTimeMillis();
+      member.typingUntil = typing ? System.currentTimeMillis() + typingTtlMs : 0;
+      if (typing) {
+        stripe.typing.add(conversationId);
+      }
+      if (wasTyping != typing) {
+        room.changed.add(session.userId);
+        stripe.dirty.add(conversationId);
+      }
+    }
+  }
+
+  /** Sends the pending changes of every conversation that is not rate limited. */
+  @Scheduled(fixedDelayString = "${app.chat.presence.flush-interval-ms:250}")
+  public void flush() {
+    long now = System.currentTimeMillis();
+    List<PresenceFrame> out = new ArrayList<>();
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        expireTyping(stripe, now);
+        for (Iterator<String> it = stripe.dirty.iterator(); it.hasNext(); ) {
+          String conversationId = it.next();
+          Room room = stripe.rooms.get(conversationId);
+          if (room == null) {
+            it.remove();
+            continue;
+          }
+          if (now - room.lastSentAt < minIntervalMs) {
+            continue;
+          }
+          it.remove();
+          PresenceFrame frame = drain(conversationId, room, now);
+          if (frame != null) {
+            room.lastSentAt = now;
+            out.add(frame);
+          }
+          if (room.members.isEmpty()) {
+            stripe.rooms.remove(conversationId);
+          }
+        }
+      }
+    }
+    // Outside the locks: the broker may block on slow sessions
+    for (PresenceFrame frame : out) {
+      broker.convertAndSend(LocalSubscriptions.TOPIC_PREFIX + frame.conversationId(), frame);
+    }
+    frames.increment(out.size());
+  }
+
+  private PresenceFrame drain(String conversationId, Room room, long now) {
+    List<UserPresence> users = new ArrayList<>();
+    Set<String> candidates = room.full ? Set.copyOf(room.members.keySet()) : Set.copyOf(room.changed);
+    for (String userId : candidates) {
+      Member member = room.members.get(userId);
+      if (member == null) {
+        continue;
+      }
+      UserPresence current = new UserPresence(userId, statusOf(userId, member), member.typingUntil > now);
+      if (room.full || !current.equals(member.lastSent)) {
+        users.add(current);
+      }
+      member.lastSent = current;
+      if (current.status() == Status.OFFLINE) {
+        room.members.remove(userId);
+        Set<String> rooms = roomsOfUser.get(userId);
+        if (rooms != null) {
+          rooms.remove(conversationId);
+          if (rooms.isEmpty()) {
+            roomsOfUser.remove(userId, rooms);
+          }
+        }
+      }
+    }
+    boolean full = room.full;
+    room.full = false;
+    room.changed.clear();
+    return users.isEmpty() ? null : new PresenceFrame("presence", conversationId, full, users);
+  }
+
+  private void expireTyping(Stripe stripe, long now) {
+    for (Iterator<String> it = stripe.typing.iterator(); it.hasNext(); ) {
+      String conversationId = it.next();
+      Room room = stripe.rooms.get(conversationId);
+      boolean stillTyping = false;
+      if (room != null) {
+        for (Map.Entry<String, Member> e : room.members.entrySet()) {
+          Member member = e.getValue();
+          if (member.typingUntil > now) {
+            stillTyping = true;
+          } else if (member.typingUntil != 0) {
+            member.typingUntil = 0;
+            room.changed.add(e.getKey());
+            stripe.dirty.add(conversationId);
+          }
+        }
+      }
+      if (!stillTyping) {
+        it.remove();
+      }
+    }
+  }
+
+  private Status statusOf(String userId, Member member) {
+    if (member.subscriptions > 0) {
+      return Status.ONLINE;
+    }
+    return connected.containsKey(userId) ? Status.AWAY : Status.OFFLINE;
+  }
+
+  private void unsubscribed(String userId, String conversationId) {
+    Stripe stripe = stripeOf(conversationId);
+    synchronized (stripe) {
+      Room room = stripe.rooms.get(conversationId);
+      Member member = room == null ? null : room.members.get(userId);
+      if (member != null) {
+        member.subscriptions = Math.max(0, member.subscriptions - 1);
+        if (member.subscriptions == 0) {
+          member.typingUntil = 0;
+        }
+        room.changed.add(userId);
+        stripe.dirty.add(conversationId);
+      }
+    }
+  }
+
+  private void touch(String conversationId, String userId) {
+    Stripe stripe = stripeOf(conversationId);
+    synchronized (stripe) {
+      Room room = stripe.rooms.get(conversationId);
+      if (room != null && room.members.containsKey(userId)) {
+        room.changed.add(userId);
+        stripe.dirty.add(conversationId);
+      }
+    }
+  }
+
+  private Stripe stripeOf(String conversationId) {
+    return stripes[Math.floorMod(conversationId.hashCode(), stripes.length)];
+  }
+
+  private static String userIdOf(Principal principal) {
+    return principal instanceof Authentication auth ? AuthenticatedUser.idOf(auth) : null;
+  }
+}
@@ -0,0 +1,53 @@
+package com.planbana.backend.chat;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * STOMP broker setup, in place of {@code @EnableWebSocketMessageBroker}, so that the handler
+ * decorating each session can be chosen. {@link WebSocketConfig} still supplies the settings.
+ */
+@Configuration(proxyBeanMethods = false)
+public class WebSocketBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+  private final WebSocketProperties props;
+
+  public WebSocketBrokerConfig(WebSocketProperties props) {
+    this.props = props;
+  }
+
+  @Bean
+  @Override
+  public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                      AbstractSubscribableChannel clientOutboundChannel) {
+    if ("drop".equalsIgnoreCase(props.getOverflow())) {
+      return new DroppingSubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel);
+    }
+    return super.subProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel);
+  }
+
+  /**
+   * Sessions whose buffer fills lose their oldest pending messages instead of being closed. The
+   * dropping decorator is the only one around the session, so nothing outside it can still
+   * terminate on buffer size; the send time limit still closes a session that is stuck.
+   */
+  static final class DroppingSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    DroppingSubProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                        AbstractSubscribableChannel clientOutboundChannel) {
+      super(clientInboundChannel, clientOutboundChannel);
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+      return new ConcurrentWebSocketSessionDecorator(session, getSendTimeLimit(), getSendBufferSizeLimit(),
+          ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+    }
+  }
+}
@@ -1,14 +1,29 @@
 package com.planbana.backend.chat;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+  private final WebSocketProperties props;
+  private final TaskScheduler heartbeatScheduler;
+
+  // The broker scheduler is defined by the configuration that consumes this configurer, hence @Lazy
+  public WebSocketConfig(WebSocketProperties props,
+                         @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler heartbeatScheduler) {
+    this.props = props;
+    this.heartbeatScheduler = heartbeatScheduler;
+  }
+
   @Override
   public void registerStompEndpoints(StompEndpointRegistry registry) {
     registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
@@ -17,6 +32,41 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
   @Override
   public void configureMessageBroker(MessageBrokerRegistry registry) {
     registry.setApplicationDestinationPrefixes("/app");
-    registry.enableSimpleBroker("/topic");
+    registry.enableSimpleBroker("/topic", "/queue")
+        .setHeartbeatValue(new long[] {props.getHeartbeatOutgoing().toMillis(), props.getHeartbeatIncoming().toMillis()})
+        .setTaskScheduler(heartbeatScheduler);
+  }
+
+  @Override
+  public void configureClientInboundChannel(ChannelRegistration registration) {
+    configure(registration, props.getInbound(), "ws-inbound-");
+  }
+
+  @Override
+  public void configureClientOutboundChannel(ChannelRegistration registration) {
+    configure(registration, props.getOutbound(), "ws-outbound-");
+  }
+
+  /**
+   * With {@code overflow: disconnect} a session over its send time or buffer limit is closed. With
+   * {@code drop} its oldest buffered messages are discarded instead (see {@link WebSocketBrokerConfig});
+   * the send time limit still disconnects.
+   */
+  @Override
+  public void configureWebSocketTransport(WebSocketTransportRegistration registry) {
+    registry.setMessageSizeLimit(props.getMessageSizeLimit())
+        .setSendTimeLimit((int) props.getSendTimeLimit().toMillis())
+        .setSendBufferSizeLimit(props.getSendBufferSizeLimit());
+  }
+
+  private static void configure(ChannelRegistration registration, WebSocketProperties.Executor executor, String prefix) {
+    if ("virtual".equalsIgnoreCase(executor.getMode())) {
+      registration.executor(new VirtualThreadTaskExecutor(prefix));
+    } else {
+      registration.taskExecutor()
+          .corePoolSize(executor.getCorePoolSize())
+          .maxPoolSize(executor.getMaxPoolSize())
+          .queueCapacity(executor.getQueueCapacity());
+    }
   }
 }
@@ -0,0 +1,61 @@
+package com.planbana.backend.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * STOMP session count, channel executor queue depths and slow-consumer disconnects. Queue gauges
+ * only exist for pooled executors; virtual-thread executors do not queue.
+ */
+@Component
+public class WebSocketMetrics {
+
+  private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+  private final Counter slowDisconnects;
+
+  public WebSocketMetrics(MeterRegistry registry,
+                          @Qualifier("clientInboundChannelExecutor") TaskExecutor inbound,
+                          @Qualifier("clientOutboundChannelExecutor") TaskExecutor outbound) {
+    Gauge.builder("websocket.sessions", sessions, Set::size).register(registry);
+    this.slowDisconnects = Counter.builder("websocket.sessions.slow_disconnects").register(registry);
+    registerQueue(registry, "inbound", inbound);
+    registerQueue(registry, "outbound", outbound);
+  }
+
+  @EventListener
+  public void onConnected(SessionConnectedEvent event) {
+    String sessionId = (String) event.getMessage().getHeaders().get("simpSessionId");
+    if (sessionId != null) {
+      sessions.add(sessionId);
+    }
+  }
+
+  @EventListener
+  public void onDisconnect(SessionDisconnectEvent event) {
+    // May be published more than once per session; only the first removal counts
+    if (sessions.remove(event.getSessionId()) && CloseStatus.SESSION_NOT_RELIABLE.equals(event.getCloseStatus())) {
+      slowDisconnects.increment();
+    }
+  }
+
+  private static void registerQueue(MeterRegistry registry, String channel, TaskExecutor executor) {
+    if (executor instanceof ThreadPoolTaskExecutor pool) {
+      Gauge.builder("websocket.channel.queued", pool, p -> p.getThreadPoolExecutor().getQueue().size())
+          .tag("channel", channel).register(registry);
+      Gauge.builder("websocket.channel.active", pool, ThreadPoolTaskExecutor::getActiveCount)
+          .tag("channel", channel).register(registry);
+    }
+  }
+}
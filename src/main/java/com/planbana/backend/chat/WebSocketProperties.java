@@ -0,0 +1,59 @@
+package com.planbana.backend.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/** Channel executors, per-session send limits and heartbeats for {@link WebSocketConfig}. */
+@Component
+@ConfigurationProperties(prefix = "app.websocket")
+public class WebSocketProperties {
+
+  private Executor inbound = new Executor();
+  private Executor outbound = new Executor();
+  /** A session whose send has been blocked this long is closed. */
+  private Duration sendTimeLimit = Duration.ofSeconds(10);
+  /** Bytes buffered for a session that cannot keep up before {@link #overflow} applies. */
+  private int sendBufferSizeLimit = 512 * 1024;
+  private int messageSizeLimit = 64 * 1024;
+  /** {@code disconnect} closes a session over its buffer limit; {@code drop} discards its oldest buffered messages. */
+  private String overflow = "disconnect";
+  /** Server-to-client and expected client-to-server heartbeat intervals; zero disables. */
+  private Duration heartbeatOutgoing = Duration.ofSeconds(10);
+  private Duration heartbeatIncoming = Duration.ofSeconds(10);
+
+  public static class Executor {
+    /** {@code pool} for a bounded thread pool, {@code virtual} for a virtual thread per task. */
+    private String mode = "pool";
+    private int corePoolSize = Runtime.getRuntime().availableProcessors() * 2;
+    private int maxPoolSize = Runtime.getRuntime().availableProcessors() * 8;
+    private int queueCapacity = 10_000;
+
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+    public int getCorePoolSize() { return corePoolSize; }
+    public void setCorePoolSize(int corePoolSize) { this.corePoolSize = corePoolSize; }
+    public int getMaxPoolSize() { return maxPoolSize; }
+    public void setMaxPoolSize(int maxPoolSize) { this.maxPoolSize = maxPoolSize; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+  }
+
+  public Executor getInbound() { return inbound; }
+  public void setInbound(Executor inbound) { this.inbound = inbound; }
+  public Executor getOutbound() { return outbound; }
+  public void setOutbound(Executor outbound) { this.outbound = outbound; }
+  public Duration getSendTimeLimit() { return sendTimeLimit; }
+  public void setSendTimeLimit(Duration sendTimeLimit) { this.sendTimeLimit = sendTimeLimit; }
+  public int getSendBufferSizeLimit() { return sendBufferSizeLimit; }
+  public void setSendBufferSizeLimit(int sendBufferSizeLimit) { this.sendBufferSizeLimit = sendBufferSizeLimit; }
+  public int getMessageSizeLimit() { return messageSizeLimit; }
+  public void setMessageSizeLimit(int messageSizeLimit) { this.messageSizeLimit = messageSizeLimit; }
+  public String getOverflow() { return overflow; }
+  public void setOverflow(String overflow) { this.overflow = overflow; }
+  public Duration getHeartbeatOutgoing() { return heartbeatOutgoing; }
+  public void setHeartbeatOutgoing(Duration heartbeatOutgoing) { this.heartbeatOutgoing = heartbeatOutgoing; }
+  public Duration getHeartbeatIncoming() { return heartbeatIncoming; }
+  public void setHeartbeatIncoming(Duration heartbeatIncoming) { this.heartbeatIncoming = heartbeatIncoming; }
+}
@@ -5,6 +5,7 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedBy;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
 
 import java.time.Instant;
 
@@ -22,10 +23,18 @@ public abstract class BaseEntity {
   @LastModifiedBy
   private String updatedBy;
 
+  @Version
+  private Long version;
+
   public String getId() { return id; }
   public void setId(String id) { this.id = id; }
   public Instant getCreatedAt() { return createdAt; }
+  /** For writes that bypass the template's auditing (bulk inserts); normally set by auditing. */
+  public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
   public Instant getUpdatedAt() { return updatedAt; }
   public String getCreatedBy() { return createdBy; }
+  public void setCreatedBy(String createdBy) { this.createdBy = createdBy; }
   public String getUpdatedBy() { return updatedBy; }
+  public Long getVersion() { return version; }
+  public void setVersion(Long version) { this.version = version; }
 }
@@ -0,0 +1,11 @@
+package com.planbana.backend.common;
+
+import java.util.List;
+
+/**
+ * One page of a cursor-paginated listing.
+ *
+ * @param nextCursor pass back as {@code cursor} to continue; null on the last page
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {
+}
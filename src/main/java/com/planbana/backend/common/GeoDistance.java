@@ -0,0 +1,18 @@
+package com.planbana.backend.common;
+
+/** Great-circle distances on the sphere MongoDB uses for {@code $centerSphere} queries. */
+public final class GeoDistance {
+
+  public static final double EARTH_RADIUS_KM = 6378.1;
+
+  private GeoDistance() {}
+
+  /** Haversine distance in kilometres between two points given in degrees. */
+  public static double km(double lat1, double lng1, double lat2, double lng2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLng = Math.toRadians(lng2 - lng1);
+    double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+}
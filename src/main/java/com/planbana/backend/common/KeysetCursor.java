@@ -0,0 +1,31 @@
+package com.planbana.backend.common;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in a listing ordered by (timestamp, _id). Clients receive it as an opaque URL-safe
+ * string and send it back unchanged to fetch the next page.
+ */
+public record KeysetCursor(Instant at, String id) {
+
+  public String encode() {
+    String raw = at.toEpochMilli() + ":" + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Parses a cursor produced by {@link #encode()}; responds with 400 when it is malformed. */
+  public static KeysetCursor decode(String cursor) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int sep = raw.indexOf(':');
+      return new KeysetCursor(Instant.ofEpochMilli(Long.parseLong(raw.substring(0, sep))), raw.substring(sep + 1));
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+  }
+}
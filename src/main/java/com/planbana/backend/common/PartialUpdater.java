@@ -0,0 +1,72 @@
+package com.planbana.backend.common;
+
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies PATCH-style changes to a {@link BaseEntity} as a single {@code findAndModify} with
+ * {@code $set}, instead of loading and saving the whole document. Only the given fields are
+ * written, so concurrent PATCHes of different fields do not overwrite each other; callers that
+ * pass the version they read get optimistic locking on top.
+ */
+@Component
+public class PartialUpdater {
+
+  private final MongoTemplate mongo;
+  private final AuditorAware<String> auditor;
+
+  public PartialUpdater(MongoTemplate mongo, AuditorAware<String> auditor) {
+    this.mongo = mongo;
+    this.auditor = auditor;
+  }
+
+  /**
+   * Sets every non-null entry of {@code changes} (property name to value), bumps the version and
+   * the {@code updatedAt}/{@code updatedBy} audit fields, and returns the updated entity.
+   *
+   * @param expectedVersion when not null, the update only applies to that version
+   * @throws ResponseStatusException 404 when the entity does not exist, 409 when its version moved on
+   */
+  public <T extends BaseEntity> T apply(Class<T> type, String id, Long expectedVersion, Map<String, ?> changes) {
+    return apply(type, id, expectedVersion, changes, Set.of());
+  }
+
+  /** Like {@link #apply(Class, String, Long, Map)}, and also removes the fields in {@code cleared}. */
+  public <T extends BaseEntity> T apply(Class<T> type, String id, Long expectedVersion, Map<String, ?> changes,
+                                        Set<String> cleared) {
+    Query query = Query.query(Criteria.where("_id").is(id));
+    if (expectedVersion != null) {
+      query.addCriteria(Criteria.where("version").is(expectedVersion));
+    }
+    Update update = new Update();
+    changes.forEach((field, value) -> {
+      if (value != null) {
+        update.set(field, value);
+      }
+    });
+    cleared.forEach(update::unset);
+    update.inc("version", 1)
+        .set("updatedAt", Instant.now())
+        .set("updatedBy", auditor.getCurrentAuditor().orElse("system"));
+
+    T updated = mongo.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), type);
+    if (updated == null) {
+      if (expectedVersion != null && mongo.exists(Query.query(Criteria.where("_id").is(id)), type)) {
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "Modified concurrently, reload and retry");
+      }
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+    return updated;
+  }
+}
@@ -0,0 +1,29 @@
+package com.planbana.backend.config;
+
+import com.planbana.backend.security.PasswordHashingUnavailableException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+  @ExceptionHandler(PasswordHashingUnavailableException.class)
+  public ResponseEntity<?> hashingUnavailable(PasswordHashingUnavailableException e) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+        .body(Map.of("error", "Server busy, please retry"));
+  }
+
+  // A whole-document save of a versioned entity lost a race; same answer as PartialUpdater gives
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  public ResponseEntity<?> modifiedConcurrently(OptimisticLockingFailureException e) {
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+        .body(Map.of("error", "Modified concurrently, reload and retry"));
+  }
+}
@@ -0,0 +1,23 @@
+package com.planbana.backend.config;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.local.LocalBucketBuilder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** In-process buckets; limits apply per instance. The default for single-node deployments. */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.mode", havingValue = "local", matchIfMissing = true)
+public class LocalRateLimitBucketFactory implements RateLimitBucketFactory {
+
+  @Override
+  public Bucket create(String key, BucketConfiguration configuration) {
+    LocalBucketBuilder builder = Bucket.builder();
+    for (Bandwidth b : configuration.getBandwidths()) {
+      builder.addLimit(b);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,109 @@
+package com.planbana.backend.config;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Updates;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bucket4j proxy manager keeping serialized bucket state in {@code rate_limit_buckets}. Updates
+ * are optimistic: the new state is written only if the stored bytes still equal the ones read,
+ * otherwise Bucket4j re-reads and retries. Documents carry an {@code expiresAt} (time until the
+ * bucket would be full again) for the TTL index.
+ */
+class MongoBucketProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+  static final String COLLECTION = "rate_limit_buckets";
+
+  private final MongoCollection<Document> buckets;
+
+  MongoBucketProxyManager(MongoCollection<Document> buckets) {
+    super(ClientSideConfig.getDefault());
+    this.buckets = buckets;
+  }
+
+  @Override
+  protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+    return new CompareAndSwapOperation() {
+      @Override
+      public Optional<byte[]> getStateData() {
+        return read(key);
+      }
+
+      @Override
+      public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+        return swap(key, originalData, newData, newState);
+      }
+    };
+  }
+
+  @Override
+  protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+    return new AsyncCompareAndSwapOperation() {
+      @Override
+      public CompletableFuture<Optional<byte[]>> getStateData() {
+        return CompletableFuture.completedFuture(read(key));
+      }
+
+      @Override
+      public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+        return CompletableFuture.completedFuture(swap(key, originalData, newData, newState));
+      }
+    };
+  }
+
+  @Override
+  protected CompletableFuture<Void> removeAsync(String key) {
+    buckets.deleteOne(Filters.eq("_id", key));
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public void removeProxy(String key) {
+    buckets.deleteOne(Filters.eq("_id", key));
+  }
+
+  @Override
+  public boolean isAsyncModeSupported() {
+    return false;
+  }
+
+  private Optional<byte[]> read(String key) {
+    Document doc = buckets.find(Filters.eq("_id", key)).projection(Projections.include("state")).first();
+    return doc == null ? Optional.empty() : Optional.of(doc.get("state", Binary.class).getData());
+  }
+
+  private boolean swap(String key, byte[] originalData, byte[] newData, RemoteBucketState newState) {
+    long nowMillis = System.currentTimeMillis();
+    long refillMillis = newState.calculateFullRefillingTime(nowMillis * 1_000_000L) / 1_000_000L;
+    Date expiresAt = new Date(nowMillis + refillMillis);
+    if (originalData == null) {
+      try {
+        buckets.insertOne(new Document("_id", key).append("state", new Binary(newData)).append("expiresAt", expiresAt));
+        return true;
+      } catch (MongoWriteException e) {
+        if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+          return false;
+        }
+        throw e;
+      }
+    }
+    return buckets.updateOne(
+        Filters.and(Filters.eq("_id", key), Filters.eq("state", new Binary(originalData))),
+        Updates.combine(Updates.set("state", new Binary(newData)), Updates.set("expiresAt", expiresAt))
+    ).getMatchedCount() == 1;
+  }
+}
@@ -0,0 +1,35 @@
+package com.planbana.backend.config;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cluster-wide buckets stored in MongoDB. Each node consumes up to {@code sync-tokens} tokens
+ * (or for up to {@code sync-interval}) from its local view of a bucket before reconciling with
+ * the shared state, so the limit may be overshot by at most that many tokens per node in exchange
+ * for far fewer Mongo round trips.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.mode", havingValue = "mongo")
+public class MongoRateLimitBucketFactory implements RateLimitBucketFactory {
+
+  private final MongoBucketProxyManager proxyManager;
+  private final Optimization optimization;
+
+  public MongoRateLimitBucketFactory(MongoTemplate mongo, RateLimitProperties props) {
+    this.proxyManager = new MongoBucketProxyManager(mongo.getCollection(MongoBucketProxyManager.COLLECTION));
+    this.optimization = Optimizations.delaying(
+        new DelayParameters(props.getMongo().getSyncTokens(), props.getMongo().getSyncInterval()));
+  }
+
+  @Override
+  public Bucket create(String key, BucketConfiguration configuration) {
+    return proxyManager.builder().withOptimization(optimization).build(key, () -> configuration);
+  }
+}
@@ -0,0 +1,13 @@
+package com.planbana.backend.config;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+
+/**
+ * Creates the bucket backing one client of one rate-limit policy. {@link RateLimitFilter} caches
+ * the returned buckets, so implementations may keep per-bucket local state.
+ */
+public interface RateLimitBucketFactory {
+
+  Bucket create(String key, BucketConfiguration configuration);
+}
@@ -1,35 +1,59 @@
 package com.planbana.backend.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Function;
 
+/**
+ * Token-bucket rate limiting per route group and client. Registered with the default (lowest)
+ * filter order, so it runs after the Spring Security chain and can key authenticated requests by
+ * subject; anonymous requests are keyed by client address.
+ *
+ * <p>Buckets come from the configured {@link RateLimitBucketFactory} (in-process or shared
+ * through MongoDB). The per-request path only does array scans, cache lookups and pre-registered counter
+ * increments, so it does not allocate once a client's bucket exists (parsing a trusted
+ * X-Forwarded-For aside).
+ */
 @Component
 public class RateLimitFilter implements Filter {
 
-  private final Map<String, Bucket> cache = new ConcurrentHashMap<>();
+  private final Limit[] limits;
+  private final Limit defaultLimit;
+  private final boolean trustForwardedFor;
+  private final int trustedProxies;
 
-  @Value("${app.rateLimit.requestsPerMinute:100}")
-  private int requestsPerMinute;
-
-  private Bucket resolveBucket(String key) {
-    return cache.computeIfAbsent(key, k -> {
-      Refill refill = Refill.greedy(requestsPerMinute, Duration.ofMinutes(1));
-      Bandwidth limit = Bandwidth.classic(requestsPerMinute, refill);
-      return Bucket4j.builder().addLimit(limit).build();
-    });
+  public RateLimitFilter(RateLimitProperties props, RateLimitBucketFactory bucketFactory, MeterRegistry registry) {
+    List<Limit> configured = new ArrayList<>();
+    for (RateLimitProperties.Policy p : props.getPolicies()) {
+      configured.add(new Limit(p.getName(), p.getMethod(), p.getPathPrefix(), p.getCapacity(), p.getPeriod(),
+          props, bucketFactory, registry));
+    }
+    this.limits = configured.toArray(new Limit[0]);
+    this.defaultLimit = new Limit("default", null, "/", props.getRequestsPerMinute(), Duration.ofMinutes(1),
+        props, bucketFactory, registry);
+    this.trustForwardedFor = props.isTrustForwardedFor();
+    this.trustedProxies = Math.max(1, props.getTrustedProxies());
   }
 
   @Override
@@ -37,14 +61,89 @@ public class RateLimitFilter implements Filter {
     HttpServletRequest req = (HttpServletRequest) request;
     HttpServletResponse res = (HttpServletResponse) response;
 
-    String key = req.getRemoteAddr();
-    Bucket bucket = resolveBucket(key);
+    Limit limit = match(req.getMethod(), req.getRequestURI());
+    Bucket bucket = limit.buckets.get(clientKey(req), limit.factory);
 
     if (bucket.tryConsume(1)) {
+      limit.allowed.increment();
       chain.doFilter(request, response);
     } else {
+      limit.rejected.increment();
       res.setStatus(429);
       res.getWriter().write("Too Many Requests");
     }
   }
+
+  private Limit match(String method, String uri) {
+    for (Limit l : limits) {
+      if ((l.method == null || l.method.equalsIgnoreCase(method)) && uri.startsWith(l.pathPrefix)) {
+        return l;
+      }
+    }
+    return defaultLimit;
+  }
+
+  private String clientKey(HttpServletRequest req) {
+    Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+    if (auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken)) {
+      // Subjects are emails and can never collide with an address
+      return auth.getName();
+    }
+    if (trustForwardedFor) {
+      String forwarded = forwardedClient(req);
+      if (forwarded != null) {
+        return forwarded;
+      }
+    }
+    return req.getRemoteAddr();
+  }
+
+  /**
+   * The X-Forwarded-For entry appended by the outermost trusted proxy, i.e. {@code trustedProxies}
+   * from the right across all header lines. Anything further left was sent by the client.
+   */
+  private String forwardedClient(HttpServletRequest req) {
+    Enumeration<String> headers = req.getHeaders("X-Forwarded-For");
+    if (headers == null || !headers.hasMoreElements()) {
+      return null;
+    }
+    List<String> entries = new ArrayList<>();
+    while (headers.hasMoreElements()) {
+      for (String entry : headers.nextElement().split(",")) {
+        entries.add(entry.trim());
+      }
+    }
+    if (entries.size() < trustedProxies) {
+      return null;
+    }
+    String client = entries.get(entries.size() - trustedProxies);
+    return client.isEmpty() ? null : client;
+  }
+
+  private static final class Limit {
+    final String method;
+    final String pathPrefix;
+    final Cache<String, Bucket> buckets;
+    final Function<String, Bucket> factory;
+    final Counter allowed;
+    final Counter rejected;
+
+    Limit(String name, String method, String pathPrefix, long capacity, Duration period,
+          RateLimitProperties props, RateLimitBucketFactory bucketFactory, MeterRegistry registry) {
+      this.method = method;
+      this.pathPrefix = pathPrefix;
+      this.buckets = Caffeine.newBuilder()
+          .maximumSize(props.getMaxKeys())
+          .expireAfterAccess(props.getIdleEviction())
+          .recordStats()
+          .build();
+      BucketConfiguration configuration = BucketConfiguration.builder()
+          .addLimit(Bandwidth.classic(capacity, Refill.greedy(capacity, period)))
+          .build();
+      this.factory = k -> bucketFactory.create(name + ":" + k, configuration);
+      this.allowed = Counter.builder("ratelimit.requests").tag("policy", name).tag("outcome", "allowed").register(registry);
+      this.rejected = Counter.builder("ratelimit.requests").tag("policy", name).tag("outcome", "rejected").register(registry);
+      CaffeineCacheMetrics.monitor(registry, buckets, "rateLimit." + name);
+    }
+  }
 }
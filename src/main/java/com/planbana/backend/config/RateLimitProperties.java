@@ -0,0 +1,87 @@
+package com.planbana.backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for {@link RateLimitFilter}. Requests are matched against {@link #getPolicies()} in
+ * order; anything that matches none is limited by the default policy of
+ * {@code requestsPerMinute}.
+ */
+@Component
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitProperties {
+
+  /** {@code local} keeps buckets per instance; {@code mongo} shares them across the cluster. */
+  private String mode = "local";
+  private int requestsPerMinute = 100;
+  /** Upper bound of tracked clients per policy; least recently used buckets are dropped first. */
+  private long maxKeys = 100_000;
+  /** Buckets not touched for this long are evicted (a fresh bucket is full anyway). */
+  private Duration idleEviction = Duration.ofMinutes(10);
+  /**
+   * Key anonymous clients by X-Forwarded-For instead of the peer address; enable only behind
+   * trusted proxies. Entries left of those the proxies appended are client-supplied and ignored.
+   */
+  private boolean trustForwardedFor = false;
+  /**
+   * Proxies in front of the application that each append to X-Forwarded-For. The client is the
+   * entry this many places from the right; with fewer entries the peer address is used.
+   */
+  private int trustedProxies = 1;
+  private List<Policy> policies = new ArrayList<>();
+  private Mongo mongo = new Mongo();
+
+  public static class Policy {
+    private String name;
+    /** HTTP method to match, or null for any. */
+    private String method;
+    private String pathPrefix;
+    private long capacity;
+    private Duration period = Duration.ofMinutes(1);
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getMethod() { return method; }
+    public void setMethod(String method) { this.method = method; }
+    public String getPathPrefix() { return pathPrefix; }
+    public void setPathPrefix(String pathPrefix) { this.pathPrefix = pathPrefix; }
+    public long getCapacity() { return capacity; }
+    public void setCapacity(long capacity) { this.capacity = capacity; }
+    public Duration getPeriod() { return period; }
+    public void setPeriod(Duration period) { this.period = period; }
+  }
+
+  public static class Mongo {
+    /** Tokens a node may consume from its local view of a bucket before syncing. */
+    private long syncTokens = 20;
+    /** Longest time a node may go without syncing a bucket it is consuming from. */
+    private Duration syncInterval = Duration.ofSeconds(1);
+
+    public long getSyncTokens() { return syncTokens; }
+    public void setSyncTokens(long syncTokens) { this.syncTokens = syncTokens; }
+    public Duration getSyncInterval() { return syncInterval; }
+    public void setSyncInterval(Duration syncInterval) { this.syncInterval = syncInterval; }
+  }
+
+  public String getMode() { return mode; }
+  public void setMode(String mode) { this.mode = mode; }
+  public int getRequestsPerMinute() { return requestsPerMinute; }
+  public void setRequestsPerMinute(int requestsPerMinute) { this.requestsPerMinute = requestsPerMinute; }
+  public long getMaxKeys() { return maxKeys; }
+  public void setMaxKeys(long maxKeys) { this.maxKeys = maxKeys; }
+  public Duration getIdleEviction() { return idleEviction; }
+  public void setIdleEviction(Duration idleEviction) { this.idleEviction = idleEviction; }
+  public boolean isTrustForwardedFor() { return trustForwardedFor; }
+  public void setTrustForwardedFor(boolean trustForwardedFor) { this.trustForwardedFor = trustForwardedFor; }
+  public int getTrustedProxies() { return trustedProxies; }
+  public void setTrustedProxies(int trustedProxies) { this.trustedProxies = trustedProxies; }
+  public List<Policy> getPolicies() { return policies; }
+  public void setPolicies(List<Policy> policies) { this.policies = policies; }
+  public Mongo getMongo() { return mongo; }
+  public void setMongo(Mongo mongo) { this.mongo = mongo; }
+}
@@ -0,0 +1,32 @@
+package com.planbana.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * Runs {@code @Scheduled} jobs on their own pool. Otherwise they would fall back to the STOMP
+ * broker's scheduler, where a slow job delays heartbeats for every WebSocket session.
+ */
+@Configuration
+public class SchedulingConfig implements SchedulingConfigurer {
+
+  @Value("${app.scheduling.pool-size:4}")
+  private int poolSize;
+
+  @Bean
+  public ThreadPoolTaskScheduler schedulingTaskScheduler() {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(poolSize);
+    scheduler.setThreadNamePrefix("scheduling-");
+    return scheduler;
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar registrar) {
+    registrar.setTaskScheduler(schedulingTaskScheduler());
+  }
+}
@@ -1,8 +1,10 @@
 package com.planbana.backend.destinations;
 
+import com.planbana.backend.common.PartialUpdater;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -10,25 +12,34 @@ import java.util.Map;
 @RequestMapping("/api/destinations")
 public class DestinationController {
   private final DestinationRepository repo;
+  private final PartialUpdater updater;
 
-  public DestinationController(DestinationRepository repo) { this.repo = repo; }
+  public DestinationController(DestinationRepository repo, PartialUpdater updater) {
+    this.repo = repo;
+    this.updater = updater;
+  }
 
   @GetMapping
   public List<Destination> list() { return repo.findAll(); }
 
   @PreAuthorize("hasRole('ADMIN')")
   @PostMapping
-  public Destination create(@RequestBody Destination d) { return repo.save(d); }
+  public Destination create(@RequestBody Destination d) {
+    // Always an insert: a client-sent id or version would turn the save into a versioned update
+    d.setId(null);
+    d.setVersion(null);
+    return repo.save(d);
+  }
 
   @PreAuthorize("hasRole('ADMIN')")
   @PatchMapping("/{id}")
   public Map<String, String> update(@PathVariable String id, @RequestBody Destination d) {
-    Destination e = repo.findById(id).orElseThrow();
-    if (d.getName() != null) e.setName(d.getName());
-    if (d.getCountry() != null) e.setCountry(d.getCountry());
-    if (d.getDescription() != null) e.setDescription(d.getDescription());
-    if (d.getImageUrl() != null) e.setImageUrl(d.getImageUrl());
-    repo.save(e);
+    Map<String, Object> changes = new HashMap<>();
+    changes.put("name", d.getName());
+    changes.put("country", d.getCountry());
+    changes.put("description", d.getDescription());
+    changes.put("imageUrl", d.getImageUrl());
+    updater.apply(Destination.class, id, d.getVersion(), changes);
     return Map.of("message", "updated");
   }
 
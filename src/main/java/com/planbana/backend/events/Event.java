@@ -3,6 +3,7 @@ package com.planbana.backend.events;
 import com.planbana.backend.common.BaseEntity;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TextScore;
 import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 
 import java.time.Instant;
@@ -23,6 +24,11 @@ public class Event extends BaseEntity {
   private Set<String> tags = new HashSet<>();
   private String createdByUserId;
 
+  private long attendeeCount; // folded periodically from the RSVP counter shards
+
+  @TextScore
+  private Float score; // relevance, only populated for text searches
+
   public String getTitle() { return title; }
   public void setTitle(String title) { this.title = title; }
   public String getDescription() { return description; }
@@ -37,4 +43,6 @@ public class Event extends BaseEntity {
   public void setTags(Set<String> tags) { this.tags = tags; }
   public String getCreatedByUserId() { return createdByUserId; }
   public void setCreatedByUserId(String createdByUserId) { this.createdByUserId = createdByUserId; }
+  public long getAttendeeCount() { return attendeeCount; }
+  public Float getScore() { return score; }
 }
@@ -1,16 +1,31 @@
 package com.planbana.backend.events;
 
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.common.GeoDistance;
+import com.planbana.backend.common.KeysetCursor;
+import com.planbana.backend.common.PartialUpdater;
+import com.planbana.backend.feed.FeedService;
+import com.planbana.backend.security.AuthenticatedUser;
 import com.planbana.backend.user.User;
 import com.planbana.backend.user.UserRepository;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Point;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -21,11 +36,20 @@ public class EventController {
   private final EventRepository repo;
   private final MongoTemplate mongo;
   private final UserRepository users;
+  private final NearbyEventCache nearbyCache;
+  private final PartialUpdater updater;
+  private final RsvpService rsvps;
+  private final FeedService feed;
 
-  public EventController(EventRepository repo, MongoTemplate mongo, UserRepository users) {
+  public EventController(EventRepository repo, MongoTemplate mongo, UserRepository users, NearbyEventCache nearbyCache,
+                         PartialUpdater updater, RsvpService rsvps, FeedService feed) {
     this.repo = repo;
     this.mongo = mongo;
     this.users = users;
+    this.nearbyCache = nearbyCache;
+    this.updater = updater;
+    this.rsvps = rsvps;
+    this.feed = feed;
   }
 
   public static class CreateEvent {
@@ -36,24 +60,32 @@ public class EventController {
     public Double lat;
     public Double lng;
     public Set<String> tags;
+
+    public Event toEvent(String createdByUserId) {
+      Event e = new Event();
+      e.setTitle(title);
+      e.setDescription(description);
+      e.setStartAt(startAt);
+      e.setEndAt(endAt);
+      if (lng != null && lat != null) {
+        e.setLocation(new GeoJsonPoint(lng, lat));
+      }
+      e.setTags(tags != null ? tags : Set.of());
+      e.setCreatedByUserId(createdByUserId);
+      return e;
+    }
   }
 
   @PostMapping
   public Event create(@RequestBody CreateEvent req, Authentication auth) {
     User u = users.findByEmail(auth.getName()).orElseThrow();
-    Event e = new Event();
-    e.setTitle(req.title);
-    e.setDescription(req.description);
-    e.setStartAt(req.startAt);
-    e.setEndAt(req.endAt);
-    if (req.lng != null && req.lat != null) {
-      e.setLocation(new GeoJsonPoint(req.lng, req.lat));
-    }
-    e.setTags(req.tags != null ? req.tags : Set.of());
-    e.setCreatedByUserId(u.getId());
-    return repo.save(e);
+    Event saved = repo.save(req.toEvent(u.getId()));
+    nearbyCache.invalidate(saved.getLocation());
+    feed.eventChanged(saved);
+    return saved;
   }
 
+  /** Lists events by page/size; location queries are ordered by distance. See {@link #scroll} for deep paging. */
   @GetMapping
   public List<Event> list(
       @RequestParam(required = false) String q,
@@ -65,17 +97,27 @@ public class EventController {
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "20") int size
   ) {
-    Query query = new Query();
-    if (q != null && !q.isBlank()) {
-      query.addCriteria(new Criteria().orOperator(
-          Criteria.where("title").regex(q, "i"),
-          Criteria.where("description").regex(q, "i"),
-          Criteria.where("tags").in(q)
-      ));
+    if ((q == null || q.isBlank()) && lat != null && lng != null) {
+      List<Event> cached = nearbyCache.find(lat, lng, radiusKm, startDate, endDate, page, size);
+      if (cached != null) {
+        return cached;
+      }
     }
-    if (lat != null && lng != null) {
-      query.addCriteria(Criteria.where("location").nearSphere(new org.springframework.data.geo.Point(lng, lat))
-          .maxDistance(radiusKm / 6378.1)); // radians
+    Query query;
+    if (q != null && !q.isBlank()) {
+      // Served by the weighted text index and ordered by relevance. $text cannot be combined with
+      // $nearSphere, so the radius becomes a $geoWithin filter in this mode.
+      query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(q)).sortByScore();
+      if (lat != null && lng != null) {
+        query.addCriteria(Criteria.where("location").withinSphere(
+            new Circle(new Point(lng, lat), radiusKm / GeoDistance.EARTH_RADIUS_KM)));
+      }
+    } else {
+      query = new Query();
+      if (lat != null && lng != null) {
+        query.addCriteria(Criteria.where("location").nearSphere(new Point(lng, lat))
+            .maxDistance(radiusKm / GeoDistance.EARTH_RADIUS_KM)); // radians
+      }
     }
     if (startDate != null) {
       query.addCriteria(Criteria.where("startAt").gte(startDate));
@@ -87,6 +129,52 @@ public class EventController {
     return mongo.find(query, Event.class);
   }
 
+  /**
+   * Lists events ordered by (startAt, _id), continuing after {@code cursor} (omit it for the first
+   * page). Cost does not grow with depth; the radius is a filter rather than an ordering, and
+   * events without a start time are not listed.
+   */
+  @GetMapping("/scroll")
+  public CursorPage<Event> scroll(
+      @RequestParam(required = false) String q,
+      @RequestParam(required = false) Double lat,
+      @RequestParam(required = false) Double lng,
+      @RequestParam(required = false, defaultValue = "25") Double radiusKm,
+      @RequestParam(required = false) Instant startDate,
+      @RequestParam(required = false) Instant endDate,
+      @RequestParam(defaultValue = "20") int size,
+      @RequestParam(required = false) String cursor
+  ) {
+    int limit = Math.max(1, Math.min(size, 100));
+    Query query = q != null && !q.isBlank()
+        ? TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(q))
+        : new Query();
+    if (lat != null && lng != null) {
+      query.addCriteria(Criteria.where("location").withinSphere(
+          new Circle(new Point(lng, lat), radiusKm / GeoDistance.EARTH_RADIUS_KM)));
+    }
+    query.addCriteria(startDate != null ? Criteria.where("startAt").gte(startDate) : Criteria.where("startAt").ne(null));
+    if (endDate != null) {
+      query.addCriteria(Criteria.where("endAt").lte(endDate));
+    }
+    if (cursor != null && !cursor.isEmpty()) {
+      KeysetCursor after = KeysetCursor.decode(cursor);
+      query.addCriteria(new Criteria().orOperator(
+          Criteria.where("startAt").gt(after.at()),
+          Criteria.where("startAt").is(after.at()).and("_id").gt(after.id())));
+    }
+    query.with(Sort.by("startAt", "_id")).limit(limit + 1);
+
+    List<Event> items = mongo.find(query, Event.class);
+    String next = null;
+    if (items.size() > limit) {
+      items = items.subList(0, limit);
+      Event last = items.get(limit - 1);
+      next = new KeysetCursor(last.getStartAt(), last.getId()).encode();
+    }
+    return new CursorPage<>(items, next);
+  }
+
   @GetMapping("/{id}")
   public Event get(@PathVariable String id) {
     return repo.findById(id).orElseThrow();
@@ -94,17 +182,63 @@ public class EventController {
 
   @PatchMapping("/{id}")
   public Map<String, String> update(@PathVariable String id, @RequestBody Map<String, Object> body, Authentication auth) {
-    Event e = repo.findById(id).orElseThrow();
     // Simple update (in production you would check ownership/roles)
-    if (body.containsKey("title")) e.setTitle((String) body.get("title"));
-    if (body.containsKey("description")) e.setDescription((String) body.get("description"));
-    repo.save(e);
+    Map<String, Object> changes = new HashMap<>();
+    Set<String> cleared = new HashSet<>();
+    for (String field : List.of("title", "description")) {
+      if (!body.containsKey(field)) {
+        continue;
+      }
+      Object value = body.get(field);
+      if (value == null) {
+        cleared.add(field);
+      } else if (value instanceof String text) {
+        changes.put(field, text);
+      } else {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, field + " must be a string or null");
+      }
+    }
+    Object rawVersion = body.get("version");
+    if (rawVersion != null && !(rawVersion instanceof Integer || rawVersion instanceof Long)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "version must be an integer");
+    }
+    Long version = rawVersion == null ? null : ((Number) rawVersion).longValue();
+    Event e = updater.apply(Event.class, id, version, changes, cleared);
+    nearbyCache.invalidate(e.getLocation());
+    feed.eventChanged(e);
     return Map.of("message", "updated");
   }
 
   @DeleteMapping("/{id}")
   public Map<String, String> delete(@PathVariable String id) {
-    repo.deleteById(id);
+    Event removed = mongo.findAndRemove(Query.query(Criteria.where("_id").is(id)), Event.class);
+    if (removed != null) {
+      nearbyCache.invalidate(removed.getLocation());
+      rsvps.eventDeleted(id);
+      feed.eventDeleted(id);
+    }
     return Map.of("message", "deleted");
   }
+
+  @PostMapping("/{id}/rsvp")
+  public Map<String, String> rsvp(@PathVariable String id, Authentication auth) {
+    if (!repo.existsById(id)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+    boolean joined = rsvps.join(id, AuthenticatedUser.idOf(auth));
+    return Map.of("message", joined ? "joined" : "already joined");
+  }
+
+  @DeleteMapping("/{id}/rsvp")
+  public Map<String, String> cancelRsvp(@PathVariable String id, Authentication auth) {
+    boolean left = rsvps.leave(id, AuthenticatedUser.idOf(auth));
+    return Map.of("message", left ? "left" : "not joined");
+  }
+
+  @GetMapping("/{id}/attendees")
+  public CursorPage<EventRsvp> attendees(@PathVariable String id,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "50") int size) {
+    return rsvps.attendees(id, cursor, size);
+  }
 }
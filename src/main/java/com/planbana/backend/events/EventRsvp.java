@@ -0,0 +1,28 @@
+package com.planbana.backend.events;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/** A user's RSVP to an event. Kept outside the event document so joins do not contend on it. */
+@Document("event_rsvps")
+public class EventRsvp {
+  @Id
+  private String id;
+  private String eventId;
+  private String userId;
+  private Instant createdAt;
+
+  public EventRsvp() {}
+  public EventRsvp(String eventId, String userId, Instant createdAt) {
+    this.eventId = eventId;
+    this.userId = userId;
+    this.createdAt = createdAt;
+  }
+
+  public String getId() { return id; }
+  public String getEventId() { return eventId; }
+  public String getUserId() { return userId; }
+  public Instant getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,41 @@
+package com.planbana.backend.events;
+
+import com.planbana.backend.common.GeoDistance;
+
+/**
+ * Geohash cell containing a point, with its bounds. Used as the tile key of
+ * {@link NearbyEventCache}.
+ */
+record GeohashCell(String hash, double minLat, double maxLat, double minLng, double maxLng) {
+
+  private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+  static GeohashCell of(double lat, double lng, int precision) {
+    double minLat = -90, maxLat = 90, minLng = -180, maxLng = 180;
+    char[] hash = new char[precision];
+    boolean lngBit = true;
+    for (int i = 0; i < precision; i++) {
+      int ch = 0;
+      for (int b = 0; b < 5; b++) {
+        if (lngBit) {
+          double mid = (minLng + maxLng) / 2;
+          if (lng >= mid) { ch = (ch << 1) | 1; minLng = mid; } else { ch <<= 1; maxLng = mid; }
+        } else {
+          double mid = (minLat + maxLat) / 2;
+          if (lat >= mid) { ch = (ch << 1) | 1; minLat = mid; } else { ch <<= 1; maxLat = mid; }
+        }
+        lngBit = !lngBit;
+      }
+      hash[i] = BASE32[ch];
+    }
+    return new GeohashCell(new String(hash), minLat, maxLat, minLng, maxLng);
+  }
+
+  double centerLat() { return (minLat + maxLat) / 2; }
+  double centerLng() { return (minLng + maxLng) / 2; }
+
+  /** Distance from the center to the farthest corner, in km. */
+  double halfDiagonalKm() {
+    return GeoDistance.km(centerLat(), centerLng(), maxLat, maxLng);
+  }
+}
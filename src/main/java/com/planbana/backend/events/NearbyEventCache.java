@@ -0,0 +1,283 @@
+package com.planbana.backend.events;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.planbana.backend.common.GeoDistance;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache for "events near me" queries. Requests are mapped to a tile (geohash cell of the query
+ * point), a radius bucket and an hour-aligned date window; one Mongo query loads every event that
+ * any point of the tile could see within the bucket radius, and individual requests are answered
+ * by filtering that list to their exact point, radius and dates.
+ *
+ * <p>Entries are invalidated locally when an event inside their coverage is created, changed or
+ * deleted; the TTL bounds staleness for writes made on other instances. Tiles are indexed by the
+ * precision-4 cell of their center, so a write only visits the tiles around it. A load can race a
+ * write (query before it, install after its invalidation), so each write is also recorded with a
+ * sequence number and a tile is checked against the writes made since its load started before it
+ * is served.
+ */
+@Component
+public class NearbyEventCache {
+
+  private static final int[] RADIUS_BUCKETS_KM = {1, 2, 5, 10, 25, 50, 100};
+  private static final int INDEX_PRECISION = 4;
+  // Largest tile coverage: biggest radius bucket plus the half diagonal of a precision-4 cell
+  private static final double MAX_COVER_KM = 100 + 25;
+  private static final int RECENT_WRITES = 1024;
+
+  private record TileKey(String geohash, int radiusKm, Instant windowStart, Instant windowEnd) {
+    String indexCell() { return geohash.substring(0, INDEX_PRECISION); }
+  }
+
+  /** Events within {@code coverKm} of the center, or {@code overflow} when there were too many to cache. */
+  private static final class Tile {
+    final double centerLat;
+    final double centerLng;
+    final double coverKm;
+    final List<Event> events;
+    final boolean overflow;
+    /** Write sequence number read before the load queried Mongo. */
+    final long loadedAfter;
+    /** Set once the tile is indexed and no write since {@code loadedAfter} touched it. */
+    volatile boolean checked;
+
+    Tile(double centerLat, double centerLng, double coverKm, List<Event> events, boolean overflow, long loadedAfter) {
+      this.centerLat = centerLat;
+      this.centerLng = centerLng;
+      this.coverKm = coverKm;
+      this.events = events;
+      this.overflow = overflow;
+      this.loadedAfter = loadedAfter;
+    }
+
+    boolean covers(Write w) {
+      return Double.isNaN(w.lat()) || GeoDistance.km(centerLat, centerLng, w.lat(), w.lng()) <= coverKm;
+    }
+  }
+
+  /** A write at a location, or everywhere when {@code lat} is NaN. */
+  private record Write(long seq, double lat, double lng) {}
+
+  private final MongoTemplate mongo;
+  private final boolean enabled;
+  private final int maxEventsPerTile;
+  private final Cache<TileKey, Tile> tiles;
+  private final ConcurrentMap<String, ConcurrentMap<TileKey, Tile>> byCell = new ConcurrentHashMap<>();
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicReferenceArray<Write> recentWrites = new AtomicReferenceArray<>(RECENT_WRITES);
+
+  public NearbyEventCache(MongoTemplate mongo, MeterRegistry registry,
+                          @Value("${app.events.near-cache.enabled:true}") boolean enabled,
+                          @Value("${app.events.near-cache.max-cached-events:200000}") long maxCachedEvents,
+                          @Value("${app.events.near-cache.max-events-per-tile:500}") int maxEventsPerTile,
+                          @Value("${app.events.near-cache.ttl-seconds:60}") long ttlSeconds) {
+    this.mongo = mongo;
+    this.enabled = enabled;
+    this.maxEventsPerTile = maxEventsPerTile;
+    this.tiles = Caffeine.newBuilder()
+        .maximumWeight(maxCachedEvents)
+        .<TileKey, Tile>weigher((k, t) -> t.events.size() + 1)
+        .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+        .executor(Runnable::run)
+        .removalListener((TileKey k, Tile t, RemovalCause cause) -> unindex(k, t))
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(registry, tiles, "nearbyEvents");
+  }
+
+  /**
+   * Answers a near-me query from the tile cache, in the same distance order as {@code $nearSphere}.
+   * Returns null when the query cannot be served from the cache.
+   */
+  public List<Event> find(double lat, double lng, double radiusKm, Instant startDate, Instant endDate, int page, int size) {
+    if (!enabled) {
+      return null;
+    }
+    int bucket = radiusBucket(radiusKm);
+    if (bucket < 0) {
+      return null;
+    }
+    GeohashCell cell = GeohashCell.of(lat, lng, precisionFor(bucket));
+    TileKey key = new TileKey(cell.hash(),
+        bucket,
+        startDate != null ? startDate.truncatedTo(ChronoUnit.HOURS) : null,
+        endDate != null ? endDate.truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS) : null);
+    Tile tile = tiles.get(key, k -> load(k, cell));
+    if (!tile.checked && !check(key, tile)) {
+      // A write landed in the tile while it loaded; one retry, then let the caller query Mongo
+      tile = tiles.get(key, k -> load(k, cell));
+      if (!tile.checked && !check(key, tile)) {
+        return null;
+      }
+    }
+    if (tile.overflow) {
+      return null;
+    }
+
+    record Hit(Event event, double distanceKm) {}
+    List<Hit> hits = new ArrayList<>();
+    for (Event e : tile.events) {
+      if (startDate != null && (e.getStartAt() == null || e.getStartAt().isBefore(startDate))) continue;
+      if (endDate != null && (e.getEndAt() == null || e.getEndAt().isAfter(endDate))) continue;
+      double d = GeoDistance.km(lat, lng, e.getLocation().getY(), e.getLocation().getX());
+      if (d <= radiusKm) {
+        hits.add(new Hit(e, d));
+      }
+    }
+    hits.sort(Comparator.comparingDouble(Hit::distanceKm));
+    int from = Math.min(page * size, hits.size());
+    int to = Math.min(from + size, hits.size());
+    return hits.subList(from, to).stream().map(Hit::event).toList();
+  }
+
+  /** Drops every tile whose coverage contains the given location. Call after the write is stored. */
+  public void invalidate(GeoJsonPoint location) {
+    if (location == null) {
+      return;
+    }
+    Write write = record(location.getY(), location.getX());
+    for (String c : indexCellsAround(write.lat(), write.lng())) {
+      ConcurrentMap<TileKey, Tile> indexed = byCell.get(c);
+      if (indexed != null) {
+        indexed.forEach((k, t) -> {
+          if (t.covers(write)) {
+            drop(k, t);
+          }
+        });
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    record(Double.NaN, Double.NaN);
+    tiles.invalidateAll();
+  }
+
+  private Write record(double lat, double lng) {
+    long seq = writes.incrementAndGet();
+    Write write = new Write(seq, lat, lng);
+    recentWrites.set((int) (seq % RECENT_WRITES), write);
+    return write;
+  }
+
+  /**
+   * Indexes a freshly loaded tile, then looks for writes since its load started that it covers.
+   * Writes after the indexing find the tile through the index, so this only runs once per tile.
+   */
+  private boolean check(TileKey key, Tile tile) {
+    byCell.compute(key.indexCell(), (c, indexed) -> {
+      ConcurrentMap<TileKey, Tile> m = indexed != null ? indexed : new ConcurrentHashMap<>();
+      m.put(key, tile);
+      return m;
+    });
+    long latest = writes.get();
+    boolean missed = latest - tile.loadedAfter >= RECENT_WRITES;
+    for (long seq = tile.loadedAfter + 1; !missed && seq <= latest; seq++) {
+      Write w = recentWrites.get((int) (seq % RECENT_WRITES));
+      // Not yet published or already overwritten: assume it hit
+      missed = w == null || w.seq() != seq || tile.covers(w);
+    }
+    if (missed) {
+      drop(key, tile);
+      return false;
+    }
+    tile.checked = true;
+    return true;
+  }
+
+  private void drop(TileKey key, Tile tile) {
+    tiles.asMap().remove(key, tile);
+    unindex(key, tile);
+  }
+
+  private void unindex(TileKey key, Tile tile) {
+    if (key == null || tile == null) {
+      return;
+    }
+    byCell.computeIfPresent(key.indexCell(), (c, indexed) -> {
+      indexed.remove(key, tile);
+      return indexed.isEmpty() ? null : indexed;
+    });
+  }
+
+  /** Precision-4 cells that may hold the center of a tile covering the point. */
+  static List<String> indexCellsAround(double lat, double lng) {
+    double cellLat = 180.0 / (1 << 10);
+    double cellLng = 360.0 / (1 << 10);
+    double dLat = Math.toDegrees(MAX_COVER_KM / GeoDistance.EARTH_RADIUS_KM);
+    double cos = Math.cos(Math.toRadians(Math.min(89.0, Math.abs(lat) + dLat)));
+    double dLng = Math.min(180.0, dLat / cos);
+    int fromRow = Math.max(0, (int) Math.floor((lat - dLat + 90) / cellLat));
+    int toRow = Math.min((1 << 10) - 1, (int) Math.floor((lat + dLat + 90) / cellLat));
+    int fromCol = (int) Math.floor((lng - dLng + 180) / cellLng);
+    int toCol = (int) Math.floor((lng + dLng + 180) / cellLng);
+    if (toCol - fromCol >= (1 << 10)) {
+      fromCol = 0;
+      toCol = (1 << 10) - 1;
+    }
+    List<String> cells = new ArrayList<>();
+    for (int row = fromRow; row <= toRow; row++) {
+      for (int col = fromCol; col <= toCol; col++) {
+        int wrapped = Math.floorMod(col, 1 << 10);
+        cells.add(GeohashCell.of(-90 + (row + 0.5) * cellLat, -180 + (wrapped + 0.5) * cellLng, INDEX_PRECISION).hash());
+      }
+    }
+    return cells;
+  }
+
+  private Tile load(TileKey key, GeohashCell cell) {
+    long loadedAfter = writes.get();
+    double coverKm = key.radiusKm() + cell.halfDiagonalKm();
+    Query query = new Query(Criteria.where("location").withinSphere(
+        new Circle(new Point(cell.centerLng(), cell.centerLat()), coverKm / GeoDistance.EARTH_RADIUS_KM)));
+    if (key.windowStart() != null) {
+      query.addCriteria(Criteria.where("startAt").gte(key.windowStart()));
+    }
+    if (key.windowEnd() != null) {
+      query.addCriteria(Criteria.where("endAt").lte(key.windowEnd()));
+    }
+    query.limit(maxEventsPerTile + 1);
+    List<Event> events = mongo.find(query, Event.class);
+    if (events.size() > maxEventsPerTile) {
+      return new Tile(cell.centerLat(), cell.centerLng(), coverKm, List.of(), true, loadedAfter);
+    }
+    return new Tile(cell.centerLat(), cell.centerLng(), coverKm, events, false, loadedAfter);
+  }
+
+  private static int radiusBucket(double radiusKm) {
+    for (int b : RADIUS_BUCKETS_KM) {
+      if (radiusKm <= b) return b;
+    }
+    return -1;
+  }
+
+  // Cells well below the radius keep the over-fetch (cover radius - radius) small
+  private static int precisionFor(int radiusBucketKm) {
+    if (radiusBucketKm <= 5) return 6;   // ~1.2 x 0.6 km
+    if (radiusBucketKm <= 25) return 5;  // ~4.9 x 4.9 km
+    return 4;                            // ~39 x 19.5 km
+  }
+}
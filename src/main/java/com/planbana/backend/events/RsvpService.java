@@ -0,0 +1,142 @@
+package com.planbana.backend.events;
+
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.common.KeysetCursor;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RSVPs with contention-free counting. Each join/leave increments one of {@code counter-shards}
+ * counter documents chosen at random, so concurrent joins to a popular event spread over several
+ * documents instead of serialising on the event. {@link #fold()} periodically sums the shards of
+ * recently changed events into {@code Event.attendeeCount}, which is what readers see.
+ *
+ * <p>The RSVP and its shard increment are two writes, not a transaction. If the process dies
+ * between them, the RSVP exists (or is gone) but the shards never count it, and no fold corrects
+ * that: folds only sum shards. Such an event stays off by one until its shards are rewritten from
+ * a count of {@code event_rsvps}.
+ */
+@Service
+public class RsvpService {
+
+  static final String COUNTERS = "event_rsvp_counters";
+
+  private static final Logger log = LoggerFactory.getLogger(RsvpService.class);
+
+  private final MongoTemplate mongo;
+  private final NearbyEventCache nearbyCache;
+  private final int shards;
+  // Folds overlap by this much so shard writes racing with a fold are picked up by the next one
+  private final Duration foldOverlap = Duration.ofSeconds(5);
+  private volatile Instant lastFold = Instant.EPOCH;
+
+  public RsvpService(MongoTemplate mongo, NearbyEventCache nearbyCache,
+                     @Value("${app.events.rsvp.counter-shards:16}") int shards) {
+    this.mongo = mongo;
+    this.nearbyCache = nearbyCache;
+    this.shards = shards;
+  }
+
+  /** Returns false when the user had already joined. Not atomic with the count; see the class comment. */
+  public boolean join(String eventId, String userId) {
+    try {
+      mongo.insert(new EventRsvp(eventId, userId, Instant.now()));
+    } catch (DuplicateKeyException e) {
+      return false;
+    }
+    increment(eventId, 1);
+    return true;
+  }
+
+  /** Returns false when the user had not joined. */
+  public boolean leave(String eventId, String userId) {
+    long removed = mongo.remove(Query.query(Criteria.where("eventId").is(eventId).and("userId").is(userId)),
+        EventRsvp.class).getDeletedCount();
+    if (removed == 0) {
+      return false;
+    }
+    increment(eventId, -1);
+    return true;
+  }
+
+  public CursorPage<EventRsvp> attendees(String eventId, String cursor, int size) {
+    int limit = Math.max(1, Math.min(size, 100));
+    Query query = Query.query(Criteria.where("eventId").is(eventId));
+    if (cursor != null && !cursor.isBlank()) {
+      KeysetCursor after = KeysetCursor.decode(cursor);
+      query.addCriteria(new Criteria().orOperator(
+          Criteria.where("createdAt").gt(after.at()),
+          Criteria.where("createdAt").is(after.at()).and("_id").gt(after.id())));
+    }
+    query.with(Sort.by("createdAt", "_id")).limit(limit + 1);
+    List<EventRsvp> items = mongo.find(query, EventRsvp.class);
+    String next = null;
+    if (items.size() > limit) {
+      items = items.subList(0, limit);
+      EventRsvp last = items.get(limit - 1);
+      next = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+    }
+    return new CursorPage<>(items, next);
+  }
+
+  public void eventDeleted(String eventId) {
+    mongo.remove(Query.query(Criteria.where("eventId").is(eventId)), EventRsvp.class);
+    mongo.remove(Query.query(Criteria.where("eventId").is(eventId)), COUNTERS);
+  }
+
+  private void increment(String eventId, int delta) {
+    int shard = ThreadLocalRandom.current().nextInt(shards);
+    mongo.upsert(Query.query(Criteria.where("_id").is(eventId + ":" + shard)),
+        new Update().inc("count", delta).set("eventId", eventId).set("updatedAt", Instant.now()),
+        COUNTERS);
+  }
+
+  @Scheduled(fixedDelayString = "${app.events.rsvp.fold-interval-ms:5000}")
+  public void fold() {
+    Instant started = Instant.now();
+    try {
+      List<String> changed = mongo.findDistinct(
+          Query.query(Criteria.where("updatedAt").gte(lastFold.minus(foldOverlap))), "eventId", COUNTERS, String.class);
+      if (changed.isEmpty()) {
+        lastFold = started;
+        return;
+      }
+      Aggregation sum = Aggregation.newAggregation(
+          Aggregation.match(Criteria.where("eventId").in(changed)),
+          Aggregation.group("eventId").sum("count").as("total"));
+      List<Document> totals = mongo.aggregate(sum, COUNTERS, Document.class).getMappedResults();
+      BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, Event.class);
+      for (Document t : totals) {
+        ops.updateOne(Query.query(Criteria.where("_id").is(t.getString("_id"))),
+            Update.update("attendeeCount", ((Number) t.get("total")).longValue()));
+      }
+      ops.execute();
+      // Cached near-me tiles carry attendeeCount too
+      Query located = Query.query(Criteria.where("_id").in(changed));
+      located.fields().include("location");
+      for (Event e : mongo.find(located, Event.class)) {
+        nearbyCache.invalidate(e.getLocation());
+      }
+      lastFold = started;
+    } catch (RuntimeException e) {
+      log.warn("Folding RSVP counters failed: {}", e.getMessage());
+    }
+  }
+}
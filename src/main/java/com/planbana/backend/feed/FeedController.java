@@ -0,0 +1,31 @@
+package com.planbana.backend.feed;
+
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.security.AuthenticatedUser;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/feed")
+public class FeedController {
+
+  private final FeedService feed;
+
+  public FeedController(FeedService feed) {
+    this.feed = feed;
+  }
+
+  /** The caller's ranked upcoming events nearby; send {@code nextCursor} back as {@code cursor} for more. */
+  @GetMapping
+  public CursorPage<FeedEntry> feed(Authentication auth,
+                                    @RequestParam(required = false) String cursor,
+                                    @RequestParam(defaultValue = "20") int size) {
+    String userId = AuthenticatedUser.idOf(auth);
+    CursorPage<FeedEntry> page = feed.page(userId, cursor, size);
+    if (page.items().isEmpty() && (cursor == null || cursor.isBlank()) && feed.rebuildIfMissing(userId)) {
+      // Users who have not changed their profile since the feed was introduced have none yet
+      page = feed.page(userId, cursor, size);
+    }
+    return page;
+  }
+}
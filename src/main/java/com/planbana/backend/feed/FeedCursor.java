@@ -0,0 +1,26 @@
+package com.planbana.backend.feed;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/** Position in a feed ordered by (score desc, eventId asc), sent to clients as an opaque string. */
+record FeedCursor(double score, String eventId) {
+
+  String encode() {
+    String raw = Double.doubleToLongBits(score) + ":" + eventId;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static FeedCursor decode(String cursor) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int sep = raw.indexOf(':');
+      return new FeedCursor(Double.longBitsToDouble(Long.parseLong(raw.substring(0, sep))), raw.substring(sep + 1));
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+  }
+}
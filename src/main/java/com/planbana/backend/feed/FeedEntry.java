@@ -0,0 +1,57 @@
+package com.planbana.backend.feed;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * One event in one user's feed, with the event summary copied in so a feed page is a single read.
+ * The id is {@code userId:eventId}, which makes rebuilds and fan-out idempotent upserts.
+ */
+@Document("user_feed")
+public class FeedEntry {
+  @Id
+  private String id;
+  private String userId;
+  private String eventId;
+  private double score;
+  private double distanceKm;
+
+  private String title;
+  private Instant startAt;
+  private Instant endAt;
+  private Double latitude;
+  private Double longitude;
+  private Set<String> tags;
+
+  @Indexed(expireAfter = "0s")
+  private Instant expiresAt; // entries disappear once the event is over
+
+  public String getId() { return id; }
+  public void setId(String id) { this.id = id; }
+  public String getUserId() { return userId; }
+  public void setUserId(String userId) { this.userId = userId; }
+  public String getEventId() { return eventId; }
+  public void setEventId(String eventId) { this.eventId = eventId; }
+  public double getScore() { return score; }
+  public void setScore(double score) { this.score = score; }
+  public double getDistanceKm() { return distanceKm; }
+  public void setDistanceKm(double distanceKm) { this.distanceKm = distanceKm; }
+  public String getTitle() { return title; }
+  public void setTitle(String title) { this.title = title; }
+  public Instant getStartAt() { return startAt; }
+  public void setStartAt(Instant startAt) { this.startAt = startAt; }
+  public Instant getEndAt() { return endAt; }
+  public void setEndAt(Instant endAt) { this.endAt = endAt; }
+  public Double getLatitude() { return latitude; }
+  public void setLatitude(Double latitude) { this.latitude = latitude; }
+  public Double getLongitude() { return longitude; }
+  public void setLongitude(Double longitude) { this.longitude = longitude; }
+  public Set<String> getTags() { return tags; }
+  public void setTags(Set<String> tags) { this.tags = tags; }
+  public Instant getExpiresAt() { return expiresAt; }
+  public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -0,0 +1,275 @@
+package com.planbana.backend.feed;
+
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.common.GeoDistance;
+import com.planbana.backend.events.Event;
+import com.planbana.backend.user.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maintains the materialised {@code user_feed}: for every user with a location, the upcoming events
+ * within {@code radius-km}, ranked by shared interests, distance and how soon they start.
+ * Writes are incremental — a changed event is fanned out to the users around it, and a changed
+ * user has only their own feed rebuilt — and run off the request thread.
+ */
+@Service
+public class FeedService {
+
+  private static final Logger log = LoggerFactory.getLogger(FeedService.class);
+
+  private final MongoTemplate mongo;
+  private final double radiusKm;
+  private final Duration horizon;
+  private final int maxEntries;
+  private final int maxFanout;
+  // Users whose feed was rebuilt on read lately, so an empty feed does not trigger one per request
+  private final Cache<String, Boolean> rebuiltOnRead = Caffeine.newBuilder()
+      .maximumSize(100_000).expireAfterWrite(Duration.ofMinutes(10)).build();
+
+  public FeedService(MongoTemplate mongo,
+                     @Value("${app.feed.radius-km:50}") double radiusKm,
+                     @Value("${app.feed.horizon-days:30}") int horizonDays,
+                     @Value("${app.feed.max-entries:500}") int maxEntries,
+                     @Value("${app.feed.max-fanout:20000}") int maxFanout) {
+    this.mongo = mongo;
+    this.radiusKm = radiusKm;
+    this.horizon = Duration.ofDays(horizonDays);
+    this.maxEntries = maxEntries;
+    this.maxFanout = maxFanout;
+  }
+
+  /** One page of the caller's feed, best first. Served by the (userId, score, eventId) index. */
+  public CursorPage<FeedEntry> page(String userId, String cursor, int size) {
+    int limit = Math.max(1, Math.min(size, 100));
+    Query query = Query.query(Criteria.where("userId").is(userId));
+    if (cursor != null && !cursor.isBlank()) {
+      FeedCursor after = FeedCursor.decode(cursor);
+      query.addCriteria(new Criteria().orOperator(
+          Criteria.where("score").lt(after.score()),
+          Criteria.where("score").is(after.score()).and("eventId").gt(after.eventId())));
+    }
+    query.with(Sort.by(Sort.Order.desc("score"), Sort.Order.asc("eventId"))).limit(limit + 1);
+    List<FeedEntry> items = mongo.find(query, FeedEntry.class);
+    String next = null;
+    if (items.size() > limit) {
+      items = items.subList(0, limit);
+      FeedEntry last = items.get(limit - 1);
+      next = new FeedCursor(last.getScore(), last.getEventId()).encode();
+    }
+    return new CursorPage<>(items, next);
+  }
+
+  /** Builds the feed of a user who has none yet; returns false when it was already tried lately. */
+  public boolean rebuildIfMissing(String userId) {
+    if (rebuiltOnRead.asMap().putIfAbsent(userId, Boolean.TRUE) != null) {
+      return false;
+    }
+    rebuild(userId);
+    return true;
+  }
+
+  /** Recomputes one user's feed from scratch, e.g. after they move or change interests. */
+  public void rebuild(String userId) {
+    User user = mongo.findById(userId, User.class);
+    if (user == null || user.getLatitude() == null || user.getLongitude() == null) {
+      mongo.remove(Query.query(Criteria.where("userId").is(userId)), FeedEntry.class);
+      return;
+    }
+    Instant now = Instant.now();
+    Query candidates = Query.query(Criteria.where("location").withinSphere(
+                new Circle(new Point(user.getLongitude(), user.getLatitude()), radiusKm / GeoDistance.EARTH_RADIUS_KM))
+            .and("startAt").gte(now).lte(now.plus(horizon)))
+        .limit(maxEntries * 4);
+    candidates.fields().include("title", "startAt", "endAt", "location", "tags");
+    List<FeedEntry> entries = new ArrayList<>();
+    for (Event e : mongo.find(candidates, Event.class)) {
+      FeedEntry entry = entryFor(user, e, now);
+      if (entry != null) {
+        entries.add(entry);
+      }
+    }
+    entries.sort(Comparator.comparingDouble(FeedEntry::getScore).reversed());
+    if (entries.size() > maxEntries) {
+      entries = entries.subList(0, maxEntries);
+    }
+
+    // Upsert the new entries before removing the rest so readers never see an empty feed
+    upsert(entries);
+    List<String> kept = entries.stream().map(FeedEntry::getEventId).toList();
+    mongo.remove(Query.query(Criteria.where("userId").is(userId).and("eventId").nin(kept)), FeedEntry.class);
+  }
+
+  @Async
+  public void userChanged(String userId) {
+    rebuiltOnRead.invalidate(userId);
+    try {
+      rebuild(userId);
+    } catch (RuntimeException e) {
+      log.warn("Rebuilding feed of user {} failed: {}", userId, e.getMessage());
+    }
+  }
+
+  @Async
+  public void eventChanged(Event event) {
+    eventsChanged(List.of(event));
+  }
+
+  /** Fans each event out to the users around it and withdraws it from feeds it no longer belongs in. */
+  @Async
+  public void eventsChanged(List<Event> events) {
+    Instant now = Instant.now();
+    for (Event event : events) {
+      try {
+        fanOut(event, now);
+      } catch (RuntimeException e) {
+        log.warn("Feed fan-out of event {} failed: {}", event.getId(), e.getMessage());
+      }
+    }
+  }
+
+  @Async
+  public void eventDeleted(String eventId) {
+    mongo.remove(Query.query(Criteria.where("eventId").is(eventId)), FeedEntry.class);
+  }
+
+  private void fanOut(Event event, Instant now) {
+    List<String> reached = new ArrayList<>();
+    boolean capped = false;
+    if (inWindow(event, now)) {
+      List<User> around = usersAround(event);
+      capped = around.size() >= maxFanout;
+      List<FeedEntry> entries = new ArrayList<>();
+      for (User user : around) {
+        FeedEntry entry = entryFor(user, event, now);
+        if (entry != null) {
+          entries.add(entry);
+          reached.add(user.getId());
+        }
+      }
+      upsert(entries);
+    }
+    Query others = Query.query(Criteria.where("eventId").is(event.getId()).and("userId").nin(reached));
+    if (capped) {
+      refreshOrWithdraw(event, others, now);
+    } else {
+      // Every user within the radius was evaluated, so the event belongs in no other feed
+      mongo.remove(others, FeedEntry.class);
+    }
+  }
+
+  /**
+   * Past the fan-out cap the users beyond the nearest {@code max-fanout} were not looked at, so
+   * the event is withdrawn only from the feeds of those it no longer fits and refreshed in the rest.
+   */
+  private void refreshOrWithdraw(Event event, Query holders, Instant now) {
+    holders.fields().include("userId");
+    Set<String> unfit = new HashSet<>();
+    for (FeedEntry held : mongo.find(holders, FeedEntry.class)) {
+      unfit.add(held.getUserId());
+    }
+    if (unfit.isEmpty()) {
+      return;
+    }
+    Query users = Query.query(Criteria.where("_id").in(unfit));
+    users.fields().include("latitude", "longitude", "interests");
+    List<FeedEntry> entries = new ArrayList<>();
+    for (User user : mongo.find(users, User.class)) {
+      FeedEntry entry = entryFor(user, event, now);
+      if (entry != null) {
+        entries.add(entry);
+        unfit.remove(user.getId());
+      }
+    }
+    upsert(entries);
+    if (!unfit.isEmpty()) {
+      mongo.remove(Query.query(Criteria.where("eventId").is(event.getId()).and("userId").in(unfit)), FeedEntry.class);
+    }
+  }
+
+  private void upsert(List<FeedEntry> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, FeedEntry.class);
+    for (FeedEntry entry : entries) {
+      ops.replaceOne(Query.query(Criteria.where("_id").is(entry.getId())), entry, FindAndReplaceOptions.options().upsert());
+    }
+    ops.execute();
+  }
+
+  /** Users within the feed radius of the event, nearest first so that the fan-out cap drops the farthest. */
+  private List<User> usersAround(Event event) {
+    Query query = Query.query(Criteria.where("location").nearSphere(event.getLocation()).maxDistance(radiusKm * 1000))
+        .limit(maxFanout);
+    query.fields().include("latitude", "longitude", "interests");
+    return mongo.find(query, User.class);
+  }
+
+  private boolean inWindow(Event event, Instant now) {
+    return event.getLocation() != null && event.getStartAt() != null
+        && !event.getStartAt().isBefore(now) && !event.getStartAt().isAfter(now.plus(horizon));
+  }
+
+  private FeedEntry entryFor(User user, Event event, Instant now) {
+    if (user.getLatitude() == null || user.getLongitude() == null || !inWindow(event, now)) {
+      return null;
+    }
+    double lat = event.getLocation().getY();
+    double lng = event.getLocation().getX();
+    double distance = GeoDistance.km(user.getLatitude(), user.getLongitude(), lat, lng);
+    if (distance > radiusKm) {
+      return null;
+    }
+    FeedEntry entry = new FeedEntry();
+    entry.setId(user.getId() + ":" + event.getId());
+    entry.setUserId(user.getId());
+    entry.setEventId(event.getId());
+    entry.setScore(score(user.getInterests(), event, distance, now));
+    entry.setDistanceKm(distance);
+    entry.setTitle(event.getTitle());
+    entry.setStartAt(event.getStartAt());
+    entry.setEndAt(event.getEndAt());
+    entry.setLatitude(lat);
+    entry.setLongitude(lng);
+    entry.setTags(event.getTags());
+    entry.setExpiresAt(event.getEndAt() != null ? event.getEndAt() : event.getStartAt());
+    return entry;
+  }
+
+  /** Each shared interest outweighs distance and start time, which break ties within [0, 2). */
+  private double score(Set<String> interests, Event event, double distanceKm, Instant now) {
+    int shared = 0;
+    if (interests != null && event.getTags() != null) {
+      for (String tag : event.getTags()) {
+        if (interests.contains(tag)) {
+          shared++;
+        }
+      }
+    }
+    double closeness = 1 - distanceKm / radiusKm;
+    double soonness = 1 - (double) Duration.between(now, event.getStartAt()).toMinutes() / horizon.toMinutes();
+    return shared * 2 + closeness + soonness;
+  }
+}
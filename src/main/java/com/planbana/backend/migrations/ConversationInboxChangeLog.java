@@ -0,0 +1,109 @@
+package com.planbana.backend.migrations;
+
+import com.planbana.backend.chat.Conversation;
+import com.planbana.backend.chat.ConversationService;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Backfills the participant key, members and last message of existing conversations, then makes
+ * the key unique and indexes the inbox. Of several conversations between the same users the oldest
+ * keeps the plain key; the others get a suffixed one so the unique index can be built without
+ * deleting any history.
+ */
+@ChangeUnit(id = "conversation-inbox", order = "012", author = "system")
+public class ConversationInboxChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    Query missing = Query.query(Criteria.where("participantKey").exists(false))
+        .with(Sort.by(Direction.ASC, "createdAt", "_id"));
+    // Keys already written by a previous, interrupted run
+    Set<String> taken = new HashSet<>(mongo.findDistinct(
+        Query.query(Criteria.where("participantKey").exists(true)), "participantKey", "conversations", String.class));
+    BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "conversations");
+    int pending = 0;
+    try (Stream<Document> stream = mongo.stream(missing, Document.class, "conversations")) {
+      Iterator<Document> conversations = stream.iterator();
+      while (conversations.hasNext()) {
+        Document c = conversations.next();
+        String id = c.getObjectId("_id").toHexString();
+        // Old documents may hold nulls or non-string ids in the array
+        Set<String> participants = new HashSet<>();
+        for (Object userId : c.getList("participantUserIds", Object.class, List.of())) {
+          if (userId != null) {
+            participants.add(userId.toString());
+          }
+        }
+        String key = Conversation.participantKey(participants);
+        if (!taken.add(key)) {
+          key = key + "#" + id;
+        }
+
+        List<Document> members = new ArrayList<>();
+        for (String userId : participants) {
+          members.add(new Document("userId", userId).append("unread", 0L));
+        }
+        Update update = new Update().set("participantKey", key).set("members", members);
+        Document last = latestMessage(mongo, id);
+        if (last != null) {
+          update.set("lastMessage", new Document("id", last.getObjectId("_id").toHexString())
+                  .append("senderUserId", last.getString("senderUserId"))
+                  .append("preview", ConversationService.preview(last.getString("content")))
+                  .append("createdAt", last.getDate("createdAt")))
+              .set("lastMessageAt", last.getDate("createdAt"));
+        } else {
+          update.set("lastMessageAt", c.getDate("createdAt"));
+        }
+        ops.updateOne(Query.query(Criteria.where("_id").is(c.get("_id"))), update);
+        if (++pending == 1000) {
+          ops.execute();
+          ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "conversations");
+          pending = 0;
+        }
+      }
+    }
+    if (pending > 0) {
+      ops.execute();
+    }
+
+    mongo.indexOps("conversations").ensureIndex(new Index().on("participantKey", Direction.ASC).unique()
+        .named("participantKey_1").background());
+    mongo.indexOps("conversations").ensureIndex(new Index().on("participantUserIds", Direction.ASC)
+        .on("lastMessageAt", Direction.DESC).on("_id", Direction.DESC)
+        .named("participantUserIds_1_lastMessageAt_-1__id_-1").background());
+    MigrationSupport.dropIfExists(mongo, "conversations", "participantUserIds_1");
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "conversations", "participantKey_1",
+        "participantUserIds_1_lastMessageAt_-1__id_-1");
+    mongo.indexOps("conversations").ensureIndex(new Index().on("participantUserIds", Direction.ASC)
+        .named("participantUserIds_1").background());
+  }
+
+  private static Document latestMessage(MongoTemplate mongo, String conversationId) {
+    Query query = Query.query(Criteria.where("conversationId").is(conversationId))
+        .with(Sort.by(Direction.DESC, "createdAt", "_id")).limit(1);
+    query.fields().include("senderUserId", "content", "createdAt");
+    return mongo.findOne(query, Document.class, "messages");
+  }
+}
@@ -0,0 +1,31 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * Initialises {@code BaseEntity.version} on documents written before optimistic locking existed.
+ * Without it Spring Data would treat such documents as new on save and try to insert them again.
+ */
+@ChangeUnit(id = "entity-version-backfill", order = "008", author = "system")
+public class EntityVersionChangeLog {
+
+  private static final String[] COLLECTIONS = {"users", "events", "destinations", "conversations"};
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    for (String c : COLLECTIONS) {
+      mongo.updateMulti(Query.query(Criteria.where("version").exists(false)), Update.update("version", 0L), c);
+    }
+  }
+
+  @RollbackExecution
+  public void rollback() {
+    // Leaving the version field in place is harmless
+  }
+}
@@ -0,0 +1,24 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/** Supports cursor pagination of events ordered by (startAt, _id). */
+@ChangeUnit(id = "event-keyset-index", order = "007", author = "system")
+public class EventKeysetIndexChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("events").ensureIndex(new Index().on("startAt", Direction.ASC).on("_id", Direction.ASC)
+        .named("startAt_1__id_1").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "events", "startAt_1__id_1");
+  }
+}
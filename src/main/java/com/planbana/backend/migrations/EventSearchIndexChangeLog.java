@@ -0,0 +1,28 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+
+/** Weighted text index behind the {@code q} parameter of the events listing. */
+@ChangeUnit(id = "event-search-index", order = "006", author = "system")
+public class EventSearchIndexChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("events").ensureIndex(TextIndexDefinition.builder()
+        .named("events_text")
+        .onField("title", 10F)
+        .onField("tags", 5F)
+        .onField("description", 1F)
+        .withDefaultLanguage("english")
+        .build());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "events", "events_text");
+  }
+}
@@ -0,0 +1,29 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.time.Duration;
+
+/** Feed pages, event fan-out/withdrawal and expiry of past events. */
+@ChangeUnit(id = "feed-indexes", order = "010", author = "system")
+public class FeedIndexesChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("user_feed").ensureIndex(new Index().on("userId", Direction.ASC).on("score", Direction.DESC)
+        .on("eventId", Direction.ASC).named("userId_1_score_-1_eventId_1").background());
+    mongo.indexOps("user_feed").ensureIndex(new Index().on("eventId", Direction.ASC).named("eventId_1").background());
+    mongo.indexOps("user_feed").ensureIndex(new Index().on("expiresAt", Direction.ASC).expire(Duration.ZERO)
+        .named("expiresAt_1").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "user_feed", "userId_1_score_-1_eventId_1", "eventId_1", "expiresAt_1");
+  }
+}
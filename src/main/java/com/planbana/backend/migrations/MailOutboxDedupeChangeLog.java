@@ -0,0 +1,38 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.bson.Document;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+
+import java.util.List;
+
+/**
+ * Makes the outbox dedupe key unique only among unsent mail: the dispatcher clears it on sent and
+ * failed entries, so the same (template, recipient, purpose) can be queued again afterwards.
+ */
+@ChangeUnit(id = "mail-outbox-dedupe", order = "014", author = "system")
+public class MailOutboxDedupeChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.getCollection("mail_outbox").updateMany(
+        new Document("status", new Document("$in", List.of("SENT", "FAILED"))),
+        new Document("$unset", new Document("dedupeKey", "")));
+    MigrationSupport.dropIfExists(mongo, "mail_outbox", "dedupeKey_1");
+    mongo.indexOps("mail_outbox").ensureIndex(new Index().on("dedupeKey", Direction.ASC).unique()
+        .partial(PartialIndexFilter.of(new Document("dedupeKey", new Document("$exists", true))))
+        .named("dedupeKey_1_unsent").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "mail_outbox", "dedupeKey_1_unsent");
+    mongo.indexOps("mail_outbox").ensureIndex(new Index().on("dedupeKey", Direction.ASC).unique()
+        .named("dedupeKey_1").background());
+  }
+}
@@ -0,0 +1,41 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.bson.Document;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+
+import java.time.Duration;
+
+/**
+ * Indexes for {@code MailOutboxDispatcher}: due-entry scans, stale-claim recovery (partial, only
+ * entries being sent), claim lookups (partial, only claimed entries) and a TTL for sent mail.
+ */
+@ChangeUnit(id = "mail-outbox-indexes", order = "004", author = "system")
+public class MailOutboxIndexesChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    var ops = mongo.indexOps("mail_outbox");
+    ops.ensureIndex(new Index().on("dedupeKey", Direction.ASC).unique().named("dedupeKey_1").background());
+    ops.ensureIndex(new Index().on("status", Direction.ASC).on("nextAttemptAt", Direction.ASC)
+        .named("status_1_nextAttemptAt_1").background());
+    ops.ensureIndex(new Index().on("status", Direction.ASC).on("lockedUntil", Direction.ASC)
+        .partial(PartialIndexFilter.of(new Document("status", "SENDING")))
+        .named("status_1_lockedUntil_1_sending").background());
+    ops.ensureIndex(new Index().on("claim", Direction.ASC)
+        .partial(PartialIndexFilter.of(new Document("claim", new Document("$exists", true))))
+        .named("claim_1_claimed").background());
+    ops.ensureIndex(new Index().on("sentAt", Direction.ASC).expire(Duration.ofDays(7)).named("sentAt_ttl").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "mail_outbox",
+        "dedupeKey_1", "status_1_nextAttemptAt_1", "status_1_lockedUntil_1_sending", "claim_1_claimed", "sentAt_ttl");
+  }
+}
@@ -0,0 +1,24 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/** Bucket appends and history reads by conversation and window, for {@code app.chat.storage.mode=bucket}. */
+@ChangeUnit(id = "message-bucket-indexes", order = "013", author = "system")
+public class MessageBucketIndexesChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("message_buckets").ensureIndex(new Index().on("conversationId", Direction.ASC)
+        .on("window", Direction.DESC).named("conversationId_1_window_-1").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "message_buckets", "conversationId_1_window_-1");
+  }
+}
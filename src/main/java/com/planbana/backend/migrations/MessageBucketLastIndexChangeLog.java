@@ -0,0 +1,28 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/** History reads walk the buckets of a conversation by (window, last) and stop once a page is full. */
+@ChangeUnit(id = "message-bucket-last-index", order = "016", author = "system")
+public class MessageBucketLastIndexChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("message_buckets").ensureIndex(new Index().on("conversationId", Direction.ASC)
+        .on("window", Direction.DESC).on("last", Direction.DESC).named("conversationId_1_window_-1_last_-1")
+        .background());
+    MigrationSupport.dropIfExists(mongo, "message_buckets", "conversationId_1_window_-1");
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    mongo.indexOps("message_buckets").ensureIndex(new Index().on("conversationId", Direction.ASC)
+        .on("window", Direction.DESC).named("conversationId_1_window_-1").background());
+    MigrationSupport.dropIfExists(mongo, "message_buckets", "conversationId_1_window_-1_last_-1");
+  }
+}
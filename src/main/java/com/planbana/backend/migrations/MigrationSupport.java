@@ -0,0 +1,18 @@
+package com.planbana.backend.migrations;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+final class MigrationSupport {
+
+  private MigrationSupport() {}
+
+  static void dropIfExists(MongoTemplate mongo, String collection, String... indexNames) {
+    var ops = mongo.indexOps(collection);
+    var existing = ops.getIndexInfo().stream().map(i -> i.getName()).toList();
+    for (String name : indexNames) {
+      if (existing.contains(name)) {
+        ops.dropIndex(name);
+      }
+    }
+  }
+}
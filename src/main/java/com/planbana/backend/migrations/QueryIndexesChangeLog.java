@@ -0,0 +1,44 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Indexes for the user, event and chat query paths. Spring Data auto index creation is off, so
+ * the {@code @Indexed} annotations on the entities are documentation only; indexes are owned here.
+ * Builds are requested as background builds (ignored, and non-blocking by default, on 4.2+).
+ */
+@ChangeUnit(id = "query-indexes", order = "002", author = "system")
+public class QueryIndexesChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("users").ensureIndex(new Index().on("email", Direction.ASC).unique().named("email_1").background());
+    mongo.indexOps("users").ensureIndex(new Index().on("interests", Direction.ASC).named("interests_1").background());
+    mongo.indexOps("users").ensureIndex(new Index().on("city", Direction.ASC).named("city_1").background());
+
+    mongo.indexOps("events").ensureIndex(new GeospatialIndex("location").typed(GeoSpatialIndexType.GEO_2DSPHERE).named("location_2dsphere"));
+    mongo.indexOps("events").ensureIndex(new Index().on("startAt", Direction.ASC).on("endAt", Direction.ASC).named("startAt_1_endAt_1").background());
+    mongo.indexOps("events").ensureIndex(new Index().on("endAt", Direction.ASC).named("endAt_1").background());
+
+    mongo.indexOps("messages").ensureIndex(new Index()
+        .on("conversationId", Direction.ASC).on("createdAt", Direction.ASC).on("_id", Direction.ASC)
+        .named("conversationId_1_createdAt_1__id_1").background());
+
+    mongo.indexOps("conversations").ensureIndex(new Index().on("participantUserIds", Direction.ASC).named("participantUserIds_1").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "users", "email_1", "interests_1", "city_1");
+    MigrationSupport.dropIfExists(mongo, "events", "location_2dsphere", "startAt_1_endAt_1", "endAt_1");
+    MigrationSupport.dropIfExists(mongo, "messages", "conversationId_1_createdAt_1__id_1");
+    MigrationSupport.dropIfExists(mongo, "conversations", "participantUserIds_1");
+  }
+}
@@ -0,0 +1,26 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.time.Duration;
+
+/** Expires shared rate-limit buckets once they would have refilled completely. */
+@ChangeUnit(id = "rate-limit-indexes", order = "005", author = "system")
+public class RateLimitIndexesChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("rate_limit_buckets").ensureIndex(new Index().on("expiresAt", Direction.ASC)
+        .expire(Duration.ZERO).named("expiresAt_ttl").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "rate_limit_buckets", "expiresAt_ttl");
+  }
+}
@@ -0,0 +1,31 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/** One RSVP per user and event, attendee listing, and change tracking for counter folding. */
+@ChangeUnit(id = "rsvp-indexes", order = "009", author = "system")
+public class RsvpIndexesChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("event_rsvps").ensureIndex(new Index().on("eventId", Direction.ASC).on("userId", Direction.ASC)
+        .unique().named("eventId_1_userId_1").background());
+    mongo.indexOps("event_rsvps").ensureIndex(new Index().on("eventId", Direction.ASC).on("_id", Direction.ASC)
+        .named("eventId_1__id_1").background());
+    mongo.indexOps("event_rsvp_counters").ensureIndex(new Index().on("eventId", Direction.ASC)
+        .named("eventId_1").background());
+    mongo.indexOps("event_rsvp_counters").ensureIndex(new Index().on("updatedAt", Direction.ASC)
+        .named("updatedAt_1").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "event_rsvps", "eventId_1_userId_1", "eventId_1__id_1");
+    MigrationSupport.dropIfExists(mongo, "event_rsvp_counters", "eventId_1", "updatedAt_1");
+  }
+}
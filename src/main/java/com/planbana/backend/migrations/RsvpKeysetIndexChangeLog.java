@@ -0,0 +1,27 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/** Attendee listing pages by (createdAt, _id) instead of _id alone. */
+@ChangeUnit(id = "rsvp-keyset-index", order = "015", author = "system")
+public class RsvpKeysetIndexChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.indexOps("event_rsvps").ensureIndex(new Index().on("eventId", Direction.ASC)
+        .on("createdAt", Direction.ASC).on("_id", Direction.ASC).named("eventId_1_createdAt_1__id_1").background());
+    MigrationSupport.dropIfExists(mongo, "event_rsvps", "eventId_1__id_1");
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    mongo.indexOps("event_rsvps").ensureIndex(new Index().on("eventId", Direction.ASC).on("_id", Direction.ASC)
+        .named("eventId_1__id_1").background());
+    MigrationSupport.dropIfExists(mongo, "event_rsvps", "eventId_1_createdAt_1__id_1");
+  }
+}
@@ -0,0 +1,36 @@
+package com.planbana.backend.migrations;
+
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.time.Duration;
+
+/**
+ * Lookup indexes for verification and password reset tokens, plus TTL indexes so expired tokens
+ * are removed by the server instead of piling up.
+ */
+@ChangeUnit(id = "token-indexes", order = "003", author = "system")
+public class TokenIndexesChangeLog {
+
+  private static final String[] COLLECTIONS = {"verification_tokens", "password_reset_tokens"};
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    for (String c : COLLECTIONS) {
+      mongo.indexOps(c).ensureIndex(new Index().on("token", Direction.ASC).unique().named("token_1").background());
+      mongo.indexOps(c).ensureIndex(new Index().on("userId", Direction.ASC).named("userId_1").background());
+      mongo.indexOps(c).ensureIndex(new Index().on("expiresAt", Direction.ASC).expire(Duration.ZERO).named("expiresAt_ttl").background());
+    }
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    for (String c : COLLECTIONS) {
+      MigrationSupport.dropIfExists(mongo, c, "token_1", "userId_1", "expiresAt_ttl");
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.planbana.backend.migrations;
+
+import com.planbana.backend.user.User;
+import io.mongock.api.annotations.ChangeUnit;
+import io.mongock.api.annotations.Execution;
+import io.mongock.api.annotations.RollbackExecution;
+import org.bson.Document;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Derives the GeoJSON {@code location} and {@code cityNormalized} of existing users and indexes
+ * them for buddy search and feed fan-out.
+ */
+@ChangeUnit(id = "user-geo", order = "011", author = "system")
+public class UserGeoChangeLog {
+
+  @Execution
+  public void execution(MongoTemplate mongo) {
+    mongo.getCollection("users").updateMany(
+        new Document("location", new Document("$exists", false))
+            .append("latitude", new Document("$gte", -90).append("$lte", 90))
+            .append("longitude", new Document("$gte", -180).append("$lte", 180)),
+        List.of(new Document("$set", new Document("location",
+            new Document("type", "Point").append("coordinates", List.of("$longitude", "$latitude"))))));
+
+    // Normalised in Java so existing rows match what UserController writes
+    Query withCity = Query.query(Criteria.where("city").type(2).and("cityNormalized").exists(false));
+    withCity.fields().include("city");
+    BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "users");
+    int pending = 0;
+    try (Stream<Document> stream = mongo.stream(withCity, Document.class, "users")) {
+      Iterator<Document> users = stream.iterator();
+      while (users.hasNext()) {
+        Document u = users.next();
+        ops.updateOne(Query.query(Criteria.where("_id").is(u.get("_id"))),
+            Update.update("cityNormalized", User.normalizeCity(u.getString("city"))));
+        if (++pending == 1000) {
+          ops.execute();
+          ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "users");
+          pending = 0;
+        }
+      }
+    }
+    if (pending > 0) {
+      ops.execute();
+    }
+
+    mongo.indexOps("users").ensureIndex(new CompoundIndexDefinition(
+        new Document("location", "2dsphere").append("cityNormalized", 1).append("interests", 1))
+        .named("location_2dsphere_cityNormalized_1_interests_1").background());
+    mongo.indexOps("users").ensureIndex(new Index().on("cityNormalized", Direction.ASC).on("_id", Direction.ASC)
+        .named("cityNormalized_1__id_1").background());
+  }
+
+  @RollbackExecution
+  public void rollback(MongoTemplate mongo) {
+    MigrationSupport.dropIfExists(mongo, "users", "location_2dsphere_cityNormalized_1_interests_1",
+        "cityNormalized_1__id_1");
+  }
+}
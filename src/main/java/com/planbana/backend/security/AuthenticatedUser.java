@@ -0,0 +1,31 @@
+package com.planbana.backend.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Principal carried by authenticated requests. Besides the email (username) it keeps the
+ * Mongo user id, so callers can reference the user without looking the document up again.
+ */
+public class AuthenticatedUser extends User {
+
+  private final String userId;
+
+  public AuthenticatedUser(String userId, String email, String password, Collection<? extends GrantedAuthority> authorities) {
+    super(email, password, authorities);
+    this.userId = userId;
+  }
+
+  public String getUserId() { return userId; }
+
+  /** Returns the user id of the given authentication, or null when the principal does not carry one. */
+  public static String idOf(Authentication auth) {
+    if (auth != null && auth.getPrincipal() instanceof AuthenticatedUser u) {
+      return u.getUserId();
+    }
+    return null;
+  }
+}
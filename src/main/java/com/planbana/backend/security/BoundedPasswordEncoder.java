@@ -0,0 +1,33 @@
+package com.planbana.backend.security;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Runs the expensive operations of a delegate encoder on the {@link PasswordHashingPool}.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+  private final PasswordEncoder delegate;
+  private final PasswordHashingPool pool;
+
+  public BoundedPasswordEncoder(PasswordEncoder delegate, PasswordHashingPool pool) {
+    this.delegate = delegate;
+    this.pool = pool;
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return pool.run(() -> delegate.encode(rawPassword));
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return pool.run(() -> delegate.matches(rawPassword, encodedPassword));
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    // Only inspects the hash prefix and cost; cheap enough for the calling thread
+    return delegate.upgradeEncoding(encodedPassword);
+  }
+}
@@ -1,15 +1,14 @@
 package com.planbana.backend.security;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpHeaders;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -20,21 +19,23 @@ import java.util.Arrays;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
   private final JwtService jwtService;
-  private final UserDetailsService userDetailsService;
+  private final TokenPrincipalResolver principalResolver;
 
-  public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+  public JwtAuthenticationFilter(JwtService jwtService, TokenPrincipalResolver principalResolver) {
     this.jwtService = jwtService;
-    this.userDetailsService = userDetailsService;
+    this.principalResolver = principalResolver;
   }
 
   @Override
   protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
     String token = resolveToken(request);
-    if (token != null && jwtService.validateToken(token)) {
-      String username = jwtService.getUsername(token);
-      UserDetails details = userDetailsService.loadUserByUsername(username);
-      UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(details, null, details.getAuthorities());
-      SecurityContextHolder.getContext().setAuthentication(auth);
+    if (token != null) {
+      try {
+        TokenClaims claims = jwtService.verify(token);
+        SecurityContextHolder.getContext().setAuthentication(principalResolver.resolve(claims));
+      } catch (JwtException | UsernameNotFoundException e) {
+        // Invalid token or deleted user: continue unauthenticated
+      }
     }
     filterChain.doFilter(request, response);
   }
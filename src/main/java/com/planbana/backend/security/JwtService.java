@@ -1,32 +1,78 @@
 package com.planbana.backend.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 @Service
 public class JwtService {
 
+  private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  });
+
   private final Key key;
+  private final JwtParser parser;
   private final long accessMinutes;
   private final long refreshDays;
+  // token digest -> verified claims, each entry dropped when its token expires
+  private final Cache<String, TokenClaims> verified;
 
   public JwtService(
       @Value("${app.jwt.secret}") String secret,
       @Value("${app.jwt.access-token-minutes}") long accessMinutes,
-      @Value("${app.jwt.refresh-token-days}") long refreshDays) {
+      @Value("${app.jwt.refresh-token-days}") long refreshDays,
+      @Value("${app.jwt.verify-cache-size:10000}") long verifyCacheSize,
+      MeterRegistry registry) {
     this.key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(java.util.Base64.getEncoder().encodeToString(secret.getBytes())));
+    this.parser = Jwts.parserBuilder().setSigningKey(key).build();
     this.accessMinutes = accessMinutes;
     this.refreshDays = refreshDays;
+    this.verified = Caffeine.newBuilder()
+        .maximumSize(verifyCacheSize)
+        .expireAfter(new Expiry<String, TokenClaims>() {
+          @Override
+          public long expireAfterCreate(String k, TokenClaims v, long currentTime) {
+            return Math.max(0, (v.expiresAt().toEpochMilli() - System.currentTimeMillis()) * 1_000_000L);
+          }
+          @Override
+          public long expireAfterUpdate(String k, TokenClaims v, long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+          @Override
+          public long expireAfterRead(String k, TokenClaims v, long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(registry, verified, "jwtClaims");
   }
 
   public String generateAccess(String subject, Map<String, Object> claims) {
@@ -52,17 +98,43 @@ public class JwtService {
         .compact();
   }
 
-  public boolean validateToken(String token) {
-    try {
-      Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-      return true;
-    } catch (Exception e) {
-      return false;
+  /**
+   * Verifies the signature and expiry of the token and returns its claims. Tokens that were
+   * verified before are served from a bounded cache keyed by the SHA-256 of the token until
+   * their {@code exp}.
+   *
+   * @throws io.jsonwebtoken.JwtException when the token is malformed, forged or expired
+   */
+  public TokenClaims verify(String token) {
+    if (token == null || token.isBlank()) {
+      throw new MalformedJwtException("Empty token");
+    }
+    String digest = digest(token);
+    TokenClaims cached = verified.getIfPresent(digest);
+    if (cached != null) {
+      return cached;
+    }
+    TokenClaims claims = toTokenClaims(parser.parseClaimsJws(token).getBody());
+    verified.put(digest, claims);
+    return claims;
+  }
+
+  private static TokenClaims toTokenClaims(Claims claims) {
+    Object roles = claims.get("roles");
+    List<String> roleNames = null;
+    if (roles instanceof Collection<?> c) {
+      roleNames = c.stream().map(String::valueOf).toList();
     }
+    Date exp = claims.getExpiration();
+    return new TokenClaims(
+        claims.getSubject(),
+        claims.get("uid", String.class),
+        roleNames,
+        exp != null ? exp.toInstant() : Instant.now());
   }
 
-  public String getUsername(String token) {
-    Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
-    return claims.getSubject();
+  private static String digest(String token) {
+    byte[] hash = SHA256.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+    return Base64.getEncoder().withoutPadding().encodeToString(hash);
   }
 }
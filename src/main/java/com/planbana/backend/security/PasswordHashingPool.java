@@ -0,0 +1,129 @@
+package com.planbana.backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Fixed-size executor for password hashing. BCrypt is deliberately slow, so running it on request
+ * threads lets a login burst occupy every servlet thread. Here at most {@code threads} hashes run
+ * at once and {@code queue-capacity} more may wait; anything beyond that fails fast with
+ * {@link PasswordHashingUnavailableException}.
+ *
+ * <p>The caller still blocks until its hash is done, so this bounds how long a request thread is
+ * held rather than freeing it. A task is refused at submission when the queue ahead of it, at the
+ * recent per-hash time, would already take longer than {@code timeout-ms}; otherwise a login burst
+ * would park request threads for the whole timeout only to fail anyway. On timeout a still-queued
+ * task is removed from the queue. A hash that has started cannot be stopped (BCrypt ignores
+ * interrupts), so it finishes on its worker and the result is dropped.
+ */
+@Component
+public class PasswordHashingPool {
+
+  private final ThreadPoolExecutor executor;
+  private final int threads;
+  private final long timeoutMs;
+  /** Moving average of how long one hash takes on a worker, excluding queueing. */
+  private final AtomicLong serviceNanos = new AtomicLong();
+  private final long retryAfterSeconds;
+  private final Timer latency;
+  private final Counter rejected;
+
+  public PasswordHashingPool(MeterRegistry registry,
+                             @Value("${app.security.hashing.threads:4}") int threads,
+                             @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity,
+                             @Value("${app.security.hashing.timeout-ms:5000}") long timeoutMs,
+                             @Value("${app.security.hashing.retry-after-seconds:2}") long retryAfterSeconds) {
+    AtomicInteger seq = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        r -> {
+          Thread t = new Thread(r, "password-hashing-" + seq.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+    this.threads = threads;
+    this.timeoutMs = timeoutMs;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.latency = Timer.builder("auth.password.hashing")
+        .description("Time from submission to completion of a password hash, including queueing")
+        .register(registry);
+    this.rejected = Counter.builder("auth.password.hashing.rejected").register(registry);
+    Gauge.builder("auth.password.hashing.queue", executor, e -> e.getQueue().size()).register(registry);
+    Gauge.builder("auth.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+  }
+
+  public <T> T run(Supplier<T> task) {
+    long start = System.nanoTime();
+    if (expectedWaitNanos() > TimeUnit.MILLISECONDS.toNanos(timeoutMs)) {
+      rejected.increment();
+      throw new PasswordHashingUnavailableException("Password hashing capacity exhausted", retryAfterSeconds);
+    }
+    Future<T> future;
+    try {
+      future = executor.submit(() -> timed(task));
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      throw new PasswordHashingUnavailableException("Password hashing capacity exhausted", retryAfterSeconds);
+    }
+    try {
+      return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      executor.remove((Runnable) future);
+      rejected.increment();
+      throw new PasswordHashingUnavailableException("Password hashing timed out", retryAfterSeconds);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      executor.remove((Runnable) future);
+      throw new PasswordHashingUnavailableException("Password hashing interrupted", retryAfterSeconds);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /** Time until a task submitted now would start, assuming queued tasks take the recent average. */
+  long expectedWaitNanos() {
+    long avg = serviceNanos.get();
+    int ahead = executor.getQueue().size() + executor.getActiveCount() - threads + 1;
+    return ahead <= 0 ? 0 : (long) Math.ceil((double) ahead / threads) * avg;
+  }
+
+  private <T> T timed(Supplier<T> task) {
+    long start = System.nanoTime();
+    try {
+      return task.get();
+    } finally {
+      long took = System.nanoTime() - start;
+      // EWMA with alpha 1/8; the first sample seeds it
+      serviceNanos.updateAndGet(avg -> avg == 0 ? took : avg + (took - avg) / 8);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,16 @@
+package com.planbana.backend.security;
+
+/**
+ * Thrown when the password hashing pool is saturated. Mapped to 503 with a Retry-After header.
+ */
+public class PasswordHashingUnavailableException extends RuntimeException {
+
+  private final long retryAfterSeconds;
+
+  public PasswordHashingUnavailableException(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() { return retryAfterSeconds; }
+}
@@ -1,5 +1,6 @@
 package com.planbana.backend.security;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -9,20 +10,22 @@ import org.springframework.security.authentication.dao.DaoAuthenticationProvider
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.Map;
+
 @Configuration
 @EnableMethodSecurity
 public class SecurityConfig {
 
   private final JwtAuthenticationFilter jwtFilter;
-  private final UserDetailsService userDetailsService;
+  private final UserDetailsServiceImpl userDetailsService;
 
-  public SecurityConfig(JwtAuthenticationFilter jwtFilter, UserDetailsService userDetailsService) {
+  public SecurityConfig(JwtAuthenticationFilter jwtFilter, UserDetailsServiceImpl userDetailsService) {
     this.jwtFilter = jwtFilter;
     this.userDetailsService = userDetailsService;
   }
@@ -32,8 +35,12 @@ public class SecurityConfig {
     http
       .csrf(csrf -> csrf.disable())
       .authorizeHttpRequests(auth -> auth
-          .requestMatchers("/swagger-ui/**", "/v3/api-docs/**", "/actuator/**").permitAll()
+          .requestMatchers("/swagger-ui/**", "/v3/api-docs/**", "/actuator/health/**").permitAll()
+          // Metrics name routes and carry per-route counts; only admins may read them
+          .requestMatchers("/actuator/**").hasRole("ADMIN")
           .requestMatchers("/api/auth/**").permitAll()
+          // Attendee lists name users, unlike the rest of an event
+          .requestMatchers(HttpMethod.GET, "/api/events/*/attendees").authenticated()
           .requestMatchers(HttpMethod.GET, "/api/destinations/**", "/api/events/**").permitAll()
           .anyRequest().authenticated()
       )
@@ -42,16 +49,26 @@ public class SecurityConfig {
     return http.build();
   }
 
+  /**
+   * New hashes are written as {@code {bcrypt}} with the configured cost. Legacy unprefixed hashes
+   * still match through the BCrypt default, and both they and lower-cost hashes report
+   * {@code upgradeEncoding}, so they are rehashed on the next successful login.
+   */
   @Bean
-  public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+  public PasswordEncoder passwordEncoder(PasswordHashingPool hashingPool,
+                                         @Value("${app.security.hashing.bcrypt-strength:10}") int strength) {
+    BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+    DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+    delegating.setDefaultPasswordEncoderForMatches(bcrypt);
+    return new BoundedPasswordEncoder(delegating, hashingPool);
   }
 
   @Bean
-  public AuthenticationManager authenticationManager() {
+  public AuthenticationManager authenticationManager(PasswordEncoder passwordEncoder) {
     DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
-    provider.setPasswordEncoder(passwordEncoder());
+    provider.setPasswordEncoder(passwordEncoder);
     provider.setUserDetailsService(userDetailsService);
+    provider.setUserDetailsPasswordService(userDetailsService);
     return new ProviderManager(provider);
   }
 }
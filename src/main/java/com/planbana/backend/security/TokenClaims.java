@@ -0,0 +1,14 @@
+package com.planbana.backend.security;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Immutable view of a verified token. Instances are shared through the verification cache in
+ * {@link JwtService}, so they must not expose mutable state.
+ *
+ * @param userId null for refresh tokens and for access tokens issued without a {@code uid} claim
+ * @param roles  null when the token carries no {@code roles} claim
+ */
+public record TokenClaims(String subject, String userId, List<String> roles, Instant expiresAt) {
+}
@@ -0,0 +1,40 @@
+package com.planbana.backend.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the {@link Authentication} for a verified token. Access tokens carry the user id and
+ * roles (see {@code AuthController.login}), so the principal is assembled from the claims
+ * without touching Mongo; tokens without those claims fall back to {@link UserDetailsCache}.
+ */
+@Component
+public class TokenPrincipalResolver {
+
+  private final UserDetailsCache userDetailsCache;
+
+  public TokenPrincipalResolver(UserDetailsCache userDetailsCache) {
+    this.userDetailsCache = userDetailsCache;
+  }
+
+  public Authentication resolve(TokenClaims claims) {
+    UserDetails details;
+    if (claims.userId() != null && claims.roles() != null) {
+      List<GrantedAuthority> authorities = new ArrayList<>(claims.roles().size());
+      for (String r : claims.roles()) {
+        authorities.add(new SimpleGrantedAuthority("ROLE_" + r));
+      }
+      details = new AuthenticatedUser(claims.userId(), claims.subject(), "", authorities);
+    } else {
+      details = userDetailsCache.get(claims.subject());
+    }
+    return new UsernamePasswordAuthenticationToken(details, null, details.getAuthorities());
+  }
+}
@@ -0,0 +1,46 @@
+package com.planbana.backend.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded, TTL-evicting cache in front of {@link UserDetailsServiceImpl}. Used only for requests
+ * whose token does not carry enough claims to build the principal; entries live at most
+ * {@code app.security.user-cache.ttl-seconds}, so role changes are picked up within that window
+ * even on nodes that never saw the {@link #evict(String)} call.
+ */
+@Component
+public class UserDetailsCache {
+
+  private final UserDetailsServiceImpl delegate;
+  private final Cache<String, UserDetails> cache;
+
+  public UserDetailsCache(UserDetailsServiceImpl delegate,
+                          MeterRegistry registry,
+                          @Value("${app.security.user-cache.max-size:10000}") long maxSize,
+                          @Value("${app.security.user-cache.ttl-seconds:60}") long ttlSeconds) {
+    this.delegate = delegate;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(registry, cache, "userDetails");
+  }
+
+  public UserDetails get(String email) throws UsernameNotFoundException {
+    return cache.get(email, delegate::loadUserByUsername);
+  }
+
+  public void evict(String email) {
+    cache.invalidate(email);
+  }
+}
@@ -1,28 +1,48 @@
 package com.planbana.backend.security;
 
+import com.planbana.backend.common.PartialUpdater;
 import com.planbana.backend.user.User;
 import com.planbana.backend.user.UserRepository;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
   private final UserRepository repo;
+  private final PartialUpdater updater;
 
-  public UserDetailsServiceImpl(UserRepository repo) {
+  public UserDetailsServiceImpl(UserRepository repo, PartialUpdater updater) {
     this.repo = repo;
+    this.updater = updater;
   }
 
   @Override
   public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
     User u = repo.findByEmail(email).orElseThrow(() -> new UsernameNotFoundException("User not found"));
-    return new org.springframework.security.core.userdetails.User(
+    return toDetails(u);
+  }
+
+  /**
+   * Persists a rehashed password after a successful login with an outdated encoding. Only the hash
+   * is set, so it cannot conflict with a concurrent profile update.
+   */
+  @Override
+  public UserDetails updatePassword(UserDetails user, String newPassword) {
+    User u = repo.findByEmail(user.getUsername()).orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    return toDetails(updater.apply(User.class, u.getId(), null, Map.of("passwordHash", newPassword)));
+  }
+
+  private static UserDetails toDetails(User u) {
+    return new AuthenticatedUser(
+        u.getId(),
         u.getEmail(),
         u.getPasswordHash(),
         u.getRoles().stream().map(r -> new SimpleGrantedAuthority("ROLE_" + r)).collect(Collectors.toList())
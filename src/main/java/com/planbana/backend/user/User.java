@@ -1,10 +1,15 @@
 package com.planbana.backend.user;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.planbana.backend.common.BaseEntity;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
 @Document("users")
@@ -12,6 +17,7 @@ public class User extends BaseEntity {
 
   @Indexed(unique = true)
   private String email;
+  @JsonIgnore
   private String passwordHash;
 
   private String displayName;
@@ -26,6 +32,21 @@ public class User extends BaseEntity {
   private Double latitude;
   private Double longitude;
 
+  // Derived from latitude/longitude and city for indexed search; kept in sync by UserController
+  @JsonIgnore
+  @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+  private GeoJsonPoint location;
+  @JsonIgnore
+  private String cityNormalized;
+
+  /** Canonical form of a city name for exact, indexable matching. */
+  public static String normalizeCity(String city) {
+    if (city == null) {
+      return null;
+    }
+    return city.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
   public String getEmail() { return email; }
   public void setEmail(String email) { this.email = email; }
   public String getPasswordHash() { return passwordHash; }
@@ -48,4 +69,8 @@ public class User extends BaseEntity {
   public void setLatitude(Double latitude) { this.latitude = latitude; }
   public Double getLongitude() { return longitude; }
   public void setLongitude(Double longitude) { this.longitude = longitude; }
+  public GeoJsonPoint getLocation() { return location; }
+  public void setLocation(GeoJsonPoint location) { this.location = location; }
+  public String getCityNormalized() { return cityNormalized; }
+  public void setCityNormalized(String cityNormalized) { this.cityNormalized = cityNormalized; }
 }
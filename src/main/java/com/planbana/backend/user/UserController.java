@@ -1,19 +1,37 @@
 package com.planbana.backend.user;
 
+import com.planbana.backend.buddies.InterestIndex;
+import com.planbana.backend.common.PartialUpdater;
+import com.planbana.backend.feed.FeedService;
+import com.planbana.backend.security.AuthenticatedUser;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Size;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
 
   private final UserRepository repo;
+  private final PartialUpdater updater;
+  private final FeedService feed;
+  private final InterestIndex interestIndex;
 
-  public UserController(UserRepository repo) {
+  public UserController(UserRepository repo, PartialUpdater updater, FeedService feed, InterestIndex interestIndex) {
     this.repo = repo;
+    this.updater = updater;
+    this.feed = feed;
+    this.interestIndex = interestIndex;
   }
 
   @GetMapping("/me")
@@ -26,20 +44,40 @@ public class UserController {
     public String displayName;
     public String avatarUrl;
     public String city;
-    public Double latitude;
-    public Double longitude;
+    @DecimalMin("-90") @DecimalMax("90") public Double latitude;
+    @DecimalMin("-180") @DecimalMax("180") public Double longitude;
+    public Set<String> interests;
+    /** Optional: the version last read; the update is rejected with 409 if it changed since. */
+    public Long version;
   }
 
   @PatchMapping("/me")
-  public Map<String, String> updateMe(@RequestBody UpdateMe req, Authentication auth) {
-    User u = repo.findByEmail(auth.getName()).orElseThrow();
-    if (req.bio != null) u.setBio(req.bio);
-    if (req.displayName != null) u.setDisplayName(req.displayName);
-    if (req.avatarUrl != null) u.setAvatarUrl(req.avatarUrl);
-    if (req.city != null) u.setCity(req.city);
-    if (req.latitude != null) u.setLatitude(req.latitude);
-    if (req.longitude != null) u.setLongitude(req.longitude);
-    repo.save(u);
+  public Map<String, String> updateMe(@Valid @RequestBody UpdateMe req, Authentication auth) {
+    if ((req.latitude == null) != (req.longitude == null)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "latitude and longitude must be given together");
+    }
+    Map<String, Object> changes = new HashMap<>();
+    changes.put("bio", req.bio);
+    changes.put("displayName", req.displayName);
+    changes.put("avatarUrl", req.avatarUrl);
+    changes.put("city", req.city);
+    changes.put("latitude", req.latitude);
+    changes.put("longitude", req.longitude);
+    changes.put("interests", req.interests);
+    if (req.latitude != null) {
+      changes.put("location", new GeoJsonPoint(req.longitude, req.latitude));
+    }
+    if (req.city != null) {
+      changes.put("cityNormalized", User.normalizeCity(req.city));
+    }
+    String userId = AuthenticatedUser.idOf(auth);
+    updater.apply(User.class, userId, req.version, changes);
+    if (req.interests != null) {
+      interestIndex.update(userId, req.interests);
+    }
+    if (req.latitude != null || req.interests != null) {
+      feed.userChanged(userId);
+    }
     return Map.of("message", "updated");
   }
 }
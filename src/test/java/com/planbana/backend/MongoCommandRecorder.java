@@ -0,0 +1,128 @@
+package com.planbana.backend;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the queries the application sends to MongoDB so tests can {@code explain} exactly what
+ * the code issues. Register it through a {@code MongoClientSettingsBuilderCustomizer}.
+ */
+public class MongoCommandRecorder implements CommandListener {
+
+  /** Fields that shape the plan, per command; the rest (session, write concern, ...) is dropped. */
+  private static final Map<String, Set<String>> PLAN_FIELDS = Map.of(
+      "find", Set.of("filter", "sort", "projection", "hint", "skip", "limit", "collation", "min", "max"),
+      "aggregate", Set.of("pipeline", "hint", "collation"),
+      "count", Set.of("query", "limit", "skip", "hint", "collation"),
+      "distinct", Set.of("key", "query", "collation"),
+      "findAndModify", Set.of("query", "sort", "update", "remove", "new", "fields", "upsert", "arrayFilters", "collation"),
+      "update", Set.of("updates"),
+      "delete", Set.of("deletes"));
+
+  private final List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void commandStarted(CommandStartedEvent event) {
+    String name = event.getCommandName();
+    if (!PLAN_FIELDS.containsKey(name)) {
+      return;
+    }
+    BsonValue target = event.getCommand().get(name);
+    if (target == null || !target.isString() || target.asString().getValue().startsWith("mongock")) {
+      return;
+    }
+    // The event's document is only valid during the callback
+    commands.add(event.getCommand().clone());
+  }
+
+  public void clear() {
+    commands.clear();
+  }
+
+  public boolean seen(String commandName, String collection) {
+    return commands.stream().anyMatch(c -> c.getFirstKey().equals(commandName)
+        && c.getString(commandName).getValue().equals(collection));
+  }
+
+  /** Explains every recorded query and returns those whose winning plan scans a collection. */
+  public List<String> collectionScans(MongoTemplate mongo) {
+    List<String> offenders = new ArrayList<>();
+    for (BsonDocument command : commands) {
+      for (BsonDocument explainable : explainable(command)) {
+        Document explain = mongo.getDb().runCommand(
+            new BsonDocument("explain", explainable).append("verbosity", new BsonString("queryPlanner")));
+        if (winningPlanHas(explain, false)) {
+          offenders.add(explainable.toJson());
+        }
+      }
+    }
+    return offenders;
+  }
+
+  private static List<BsonDocument> explainable(BsonDocument command) {
+    String name = command.getFirstKey();
+    BsonDocument base = new BsonDocument(name, command.get(name));
+    for (String field : PLAN_FIELDS.get(name)) {
+      if (command.containsKey(field)) {
+        base.put(field, command.get(field));
+      }
+    }
+    switch (name) {
+      case "aggregate" -> {
+        BsonArray pipeline = base.getArray("pipeline");
+        if (!pipeline.isEmpty() && pipeline.get(0).asDocument().containsKey("$changeStream")) {
+          return List.of();
+        }
+        base.put("cursor", new BsonDocument());
+        return List.of(base);
+      }
+      case "update", "delete" -> {
+        // explain takes a single statement
+        String statements = name + "s";
+        List<BsonDocument> single = new ArrayList<>();
+        for (BsonValue statement : base.getArray(statements)) {
+          single.add(new BsonDocument(name, base.get(name)).append(statements, new BsonArray(List.of(statement))));
+        }
+        return single;
+      }
+      default -> {
+        return List.of(base);
+      }
+    }
+  }
+
+  private static boolean winningPlanHas(Object node, boolean inWinningPlan) {
+    if (node instanceof Document d) {
+      if (inWinningPlan && "COLLSCAN".equals(d.get("stage"))) {
+        return true;
+      }
+      for (Map.Entry<String, Object> e : d.entrySet()) {
+        if (e.getKey().equals("rejectedPlans")) {
+          continue;
+        }
+        if (winningPlanHas(e.getValue(), inWinningPlan || e.getKey().equals("winningPlan"))) {
+          return true;
+        }
+      }
+    } else if (node instanceof List<?> l) {
+      for (Object v : l) {
+        if (winningPlanHas(v, inWinningPlan)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
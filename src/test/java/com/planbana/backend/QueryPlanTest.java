@@ -0,0 +1,227 @@
+package com.planbana.backend;
+
+import com.planbana.backend.auth.MailOutboxDispatcher;
+import com.planbana.backend.auth.MailService;
+import com.planbana.backend.auth.PasswordResetTokenRepository;
+import com.planbana.backend.auth.VerificationTokenRepository;
+import com.planbana.backend.buddies.BuddyController;
+import com.planbana.backend.chat.BucketMessageStore;
+import com.planbana.backend.chat.Conversation;
+import com.planbana.backend.chat.ConversationService;
+import com.planbana.backend.chat.Message;
+import com.planbana.backend.chat.MessageBucketMigrator;
+import com.planbana.backend.chat.MessageRepository;
+import com.planbana.backend.chat.MessageStore;
+import com.planbana.backend.common.KeysetCursor;
+import com.planbana.backend.events.Event;
+import com.planbana.backend.events.EventController;
+import com.planbana.backend.events.RsvpService;
+import com.planbana.backend.feed.FeedService;
+import com.planbana.backend.security.AuthenticatedUser;
+import com.planbana.backend.user.User;
+import com.planbana.backend.user.UserRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Runs the application's read and write paths against a migrated database, records the commands
+ * they send and explains each one: none may be answered with a collection scan. A new query path
+ * belongs in one of these tests together with the change unit that indexes it.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Testcontainers(disabledWithoutDocker = true)
+class QueryPlanTest {
+
+  @Container
+  @ServiceConnection
+  static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+  @TestConfiguration
+  static class Recording {
+    @Bean
+    MongoCommandRecorder mongoCommandRecorder() {
+      return new MongoCommandRecorder();
+    }
+
+    @Bean
+    MongoClientSettingsBuilderCustomizer recordCommands(MongoCommandRecorder recorder) {
+      return settings -> settings.addCommandListener(recorder);
+    }
+  }
+
+  @Autowired MongoCommandRecorder recorder;
+  @Autowired MongoTemplate template;
+  @Autowired UserRepository users;
+  @Autowired EventController events;
+  @Autowired RsvpService rsvps;
+  @Autowired BuddyController buddies;
+  @Autowired FeedService feed;
+  @Autowired ConversationService conversations;
+  @Autowired MessageStore messages;
+  @Autowired MessageRepository messageRepository;
+  @Autowired VerificationTokenRepository verificationTokens;
+  @Autowired PasswordResetTokenRepository resetTokens;
+  @Autowired MailService mail;
+  @Autowired MailOutboxDispatcher mailDispatcher;
+
+  private User alice;
+  private User bob;
+
+  @BeforeEach
+  void seed() {
+    alice = user("alice@example.com", 48.8566, 2.3522);
+    bob = user("bob@example.com", 48.8600, 2.3400);
+    recorder.clear();
+  }
+
+  @Test
+  void usersAndBuddies() {
+    users.findByEmail("alice@example.com");
+    buddies.find(auth(alice), Set.of("hiking"), null, null, 25.0, null, 20, null);
+    buddies.find(auth(alice), null, null, null, 25.0, "Paris", 20, null);
+    buddies.find(auth(alice), Set.of("hiking"), 48.85, 2.35, 25.0, "Paris", 20, null);
+    buddies.matches(auth(alice), Set.of("hiking"), 20);
+
+    assertNoCollectionScans();
+  }
+
+  @Test
+  void eventsListingSearchAndRsvps() {
+    Event event = event("Sunset hike", Instant.now().plus(2, ChronoUnit.DAYS));
+    Instant from = Instant.now();
+    Instant to = from.plus(7, ChronoUnit.DAYS);
+
+    events.list(null, 48.85, 2.35, 25.0, null, null, 0, 20);
+    events.list(null, null, null, 25.0, from, to, 0, 20);
+    events.list(null, null, null, 25.0, null, to, 0, 20);
+    events.scroll(null, 48.85, 2.35, 25.0, from, null, 20, null);
+    events.list("hike", null, null, 25.0, null, null, 0, 20);
+    events.list("hike", 48.85, 2.35, 25.0, null, null, 0, 20);
+    events.get(event.getId());
+
+    events.rsvp(event.getId(), auth(bob));
+    events.rsvp(event.getId(), auth(alice));
+    String next = events.attendees(event.getId(), null, 1).nextCursor();
+    assertThat(events.attendees(event.getId(), next, 1).items()).hasSize(1);
+    rsvps.fold();
+    events.cancelRsvp(event.getId(), auth(bob));
+
+    assertNoCollectionScans();
+  }
+
+  @Test
+  void feedFanOutRebuildAndPages() {
+    Event event = event("Picnic", Instant.now().plus(1, ChronoUnit.DAYS));
+    await().atMost(Duration.ofSeconds(10)).until(() -> recorder.seen("delete", "user_feed"));
+
+    feed.rebuild(alice.getId());
+    feed.page(alice.getId(), null, 10);
+    feed.eventDeleted(event.getId());
+
+    assertNoCollectionScans();
+  }
+
+  @Test
+  void chatConversationsAndHistory() {
+    Conversation conversation = conversations.findOrCreate(alice.getId(), bob.getId(), alice.getEmail());
+    Message message = message(conversation.getId(), alice.getId(), "see you at the park");
+    messages.insert(List.of(message), false);
+    conversations.flushed(List.of(message));
+
+    conversations.inbox(bob.getId(), null, 20);
+    conversations.markRead(conversation.getId(), bob.getId());
+    conversations.isParticipant(conversation.getId(), bob.getId());
+    messages.history(conversation.getId(), null, null, 50);
+    messages.history(conversation.getId(), new KeysetCursor(Instant.now(), new ObjectId().toHexString()), null, 50);
+
+    BucketMessageStore buckets = new BucketMessageStore(template, messageRepository, 200, 86_400_000L);
+    new MessageBucketMigrator(template, buckets, 50).migrateSome();
+    buckets.insert(List.of(message(conversation.getId(), bob.getId(), "on my way")), true);
+    buckets.history(conversation.getId(), null, null, 50);
+    KeysetCursor now = new KeysetCursor(Instant.now(), new ObjectId().toHexString());
+    buckets.history(conversation.getId(), now, null, 50);
+    buckets.history(conversation.getId(), null, now, 50);
+
+    assertNoCollectionScans();
+  }
+
+  @Test
+  void authTokensAndMailOutbox() {
+    verificationTokens.findByToken("missing");
+    resetTokens.findByToken("missing");
+    mail.queue("verify-email", alice.getEmail(), alice.getId(), "Verify your email", "link");
+    mailDispatcher.dispatch();
+    mailDispatcher.refreshPending();
+
+    assertNoCollectionScans();
+  }
+
+  private void assertNoCollectionScans() {
+    assertThat(recorder.collectionScans(template)).as("queries answered with COLLSCAN").isEmpty();
+  }
+
+  private User user(String email, double lat, double lng) {
+    User u = users.findByEmail(email).orElseGet(User::new);
+    u.setEmail(email);
+    u.setPasswordHash("x");
+    u.setDisplayName(email);
+    u.setCity("Paris");
+    u.setCityNormalized(User.normalizeCity("Paris"));
+    u.setInterests(Set.of("hiking", "food"));
+    u.setLatitude(lat);
+    u.setLongitude(lng);
+    u.setLocation(new GeoJsonPoint(lng, lat));
+    return users.save(u);
+  }
+
+  private Event event(String title, Instant startAt) {
+    EventController.CreateEvent req = new EventController.CreateEvent();
+    req.title = title;
+    req.startAt = startAt;
+    req.endAt = startAt.plus(3, ChronoUnit.HOURS);
+    req.lat = 48.857;
+    req.lng = 2.351;
+    req.tags = Set.of("hiking");
+    return events.create(req, auth(alice));
+  }
+
+  private static Message message(String conversationId, String senderUserId, String content) {
+    Message m = new Message();
+    m.setId(new ObjectId().toHexString());
+    m.setConversationId(conversationId);
+    m.setSenderUserId(senderUserId);
+    m.setContent(content);
+    m.setCreatedAt(Instant.now());
+    return m;
+  }
+
+  private static Authentication auth(User user) {
+    AuthenticatedUser principal = new AuthenticatedUser(user.getId(), user.getEmail(), "", List.of());
+    return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+  }
+}
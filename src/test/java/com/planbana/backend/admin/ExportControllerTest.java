@@ -0,0 +1,77 @@
+package com.planbana.backend.admin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.planbana.backend.chat.Message;
+import com.planbana.backend.chat.MessageStore;
+import com.planbana.backend.events.Event;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExportControllerTest {
+
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final MessageStore messages = mock(MessageStore.class);
+  private final ExportController controller =
+      new ExportController(mongo, messages, new ObjectMapper().findAndRegisterModules(), 100, 1);
+
+  @Test
+  void ndjsonLinesAreBareJsonObjects() throws Exception {
+    when(mongo.stream(any(Query.class), eq(Event.class))).thenReturn(Stream.of(event("a"), event("b"), event("c")));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    controller.export("events", "ndjson", null, response);
+
+    String[] lines = response.getContentAsString().split("\n", -1);
+    assertThat(lines).hasSize(4);
+    assertThat(lines[3]).isEmpty();
+    for (int i = 0; i < 3; i++) {
+      assertThat(lines[i]).startsWith("{").endsWith("}");
+    }
+  }
+
+  @Test
+  void messagesComeFromTheStore() throws Exception {
+    String after = new ObjectId().toHexString();
+    Message m = new Message();
+    m.setId(new ObjectId().toHexString());
+    m.setConversationId("c1");
+    m.setContent("hi, there");
+    when(messages.export(after, 100)).thenReturn(Stream.of(m));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    controller.export("messages", "csv", after, response);
+
+    assertThat(response.getContentAsString()).contains(m.getId() + ",c1,,\"hi, there\",");
+    verify(mongo, never()).stream(any(Query.class), eq(Message.class));
+  }
+
+  @Test
+  void nonIdAfterIsRejected() {
+    assertThatThrownBy(() -> controller.export("events", "ndjson", "not-an-id", new MockHttpServletResponse()))
+        .isInstanceOfSatisfying(ResponseStatusException.class,
+            ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+  }
+
+  private static Event event(String title) {
+    Event e = new Event();
+    e.setId(new ObjectId().toHexString());
+    e.setTitle(title);
+    return e;
+  }
+}
@@ -0,0 +1,106 @@
+package com.planbana.backend.admin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteResult;
+import com.planbana.backend.destinations.Destination;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NdjsonImporterTest {
+
+  record Row(String name) {}
+
+  private final List<List<?>> written = new ArrayList<>();
+  private final NdjsonImporter importer = new NdjsonImporter(mongo(), new ObjectMapper());
+
+  @Test
+  void orderedImportWritesTheLinesBeforeTheFirstBadOne() throws Exception {
+    NdjsonImporter.ImportReport report = importer.importStream(body("""
+        {"name":"a"}
+        {"name":"b"}
+        {"name":
+        {"name":"d"}
+        """), Row.class, String.class, Row::name, true, 10, 10);
+
+    assertThat(written).containsExactly(List.of("a", "b"));
+    assertThat(report.inserted()).isEqualTo(2);
+    assertThat(report.stopped()).isTrue();
+    assertThat(report.resumeAtLine()).isEqualTo(3);
+  }
+
+  @Test
+  void unorderedImportSkipsOnlyTheBadLines() throws Exception {
+    NdjsonImporter.ImportReport report = importer.importStream(body("""
+        {"name":"a"}
+        {"name":"bad"}
+        {"name":"c"}
+        """), Row.class, String.class, row -> {
+          if (row.name().equals("bad")) {
+            throw new IllegalArgumentException("bad name");
+          }
+          return row.name();
+        }, false, 10, 10);
+
+    assertThat(written).containsExactly(List.of("a", "c"));
+    assertThat(report.failed()).isEqualTo(1);
+    assertThat(report.stopped()).isFalse();
+    assertThat(report.resumeAtLine()).isNull();
+    assertThat(report.errors()).extracting(NdjsonImporter.LineError::line).containsExactly(2L);
+  }
+
+  @Test
+  void aNullLineIsALineError() throws Exception {
+    NdjsonImporter.ImportReport report = importer.importStream(body("""
+        {"name":"a"}
+        null
+        {"name":"c"}
+        """), Row.class, String.class, Row::name, false, 10, 10);
+
+    assertThat(written).containsExactly(List.of("a", "c"));
+    assertThat(report.errors()).extracting(NdjsonImporter.LineError::line).containsExactly(2L);
+    assertThat(report.errors()).extracting(NdjsonImporter.LineError::error).containsExactly("Expected a JSON object");
+  }
+
+  @Test
+  void insertedEntitiesReachAfterBatchWithTheirIds() throws Exception {
+    List<Destination> seen = new ArrayList<>();
+    importer.importStream(body("""
+        {"name":"Lisbon"}
+        {"name":"Porto"}
+        """), Destination.class, Destination.class, d -> d, false, 10, 10, seen::addAll);
+
+    assertThat(seen).hasSize(2).allSatisfy(d -> assertThat(d.getId()).isNotNull());
+    assertThat(seen).extracting(Destination::getVersion).containsOnly(0L);
+  }
+
+  @SuppressWarnings("unchecked")
+  private MongoTemplate mongo() {
+    MongoTemplate mongo = mock(MongoTemplate.class);
+    BulkOperations bulk = mock(BulkOperations.class);
+    when(mongo.bulkOps(any(BulkOperations.BulkMode.class), any(Class.class))).thenReturn(bulk);
+    when(bulk.insert(anyList())).thenAnswer(inv -> {
+      // The importer reuses its batch list, so copy it at call time
+      written.add(List.copyOf((List<Object>) inv.getArgument(0)));
+      return bulk;
+    });
+    when(bulk.execute()).thenAnswer(inv -> BulkWriteResult.acknowledged(
+        written.get(written.size() - 1).size(), 0, 0, 0, List.of(), List.of()));
+    return mongo;
+  }
+
+  private static ByteArrayInputStream body(String ndjson) {
+    return new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,96 @@
+package com.planbana.backend.auth;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MailOutboxDispatcherTest {
+
+  @RegisterExtension
+  static final GreenMailExtension smtp = new GreenMailExtension(ServerSetupTest.SMTP);
+
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final JavaMailSenderImpl sender = new JavaMailSenderImpl();
+  private MailOutboxDispatcher dispatcher;
+
+  @BeforeEach
+  void setUp() {
+    sender.setHost("localhost");
+    sender.setPort(smtp.getSmtp().getPort());
+    dispatcher = new MailOutboxDispatcher(mongo, sender, new SimpleMeterRegistry(), 50, 8, 30, 3600, 120);
+  }
+
+  @Test
+  void sendsClaimedBatchAndMarksItSent() throws Exception {
+    List<OutboundMail> batch = List.of(
+        mail("m1", "verify-email:a@example.com:u1", "a@example.com", "Verify your email", "token one"),
+        mail("m2", "password-reset:b@example.com:u2", "b@example.com", "Password reset", "token two"));
+    claim(batch);
+
+    dispatcher.dispatch();
+
+    MimeMessage[] received = smtp.getReceivedMessages();
+    assertThat(received).hasSize(2);
+    assertThat(received[0].getAllRecipients()[0].toString()).isEqualTo("a@example.com");
+    assertThat(received[0].getSubject()).isEqualTo("Verify your email");
+    assertThat(GreenMailUtil.getBody(received[1]).trim()).isEqualTo("token two");
+
+    Document set = sentUpdate().getUpdateObject();
+    assertThat(set.get("$set", Document.class).get("status")).isEqualTo(OutboundMail.Status.SENT);
+    assertThat(set.get("$unset", Document.class)).containsKey("dedupeKey");
+  }
+
+  @Test
+  void reschedulesWhenTheServerIsDown() {
+    smtp.stop();
+    claim(List.of(mail("m1", "verify-email:a@example.com:u1", "a@example.com", "Verify your email", "x")));
+
+    dispatcher.dispatch();
+
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    verify(mongo).updateFirst(any(Query.class), update.capture(), eq(OutboundMail.class));
+    Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+    assertThat(set.get("status")).isEqualTo(OutboundMail.Status.PENDING);
+    assertThat(set.get("attempts")).isEqualTo(1);
+    smtp.start();
+  }
+
+  /** First find returns the candidate ids, the second the entries carrying the claim. */
+  private void claim(List<OutboundMail> batch) {
+    when(mongo.find(any(Query.class), eq(OutboundMail.class))).thenReturn(batch, batch);
+  }
+
+  private Update sentUpdate() {
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    verify(mongo, times(2)).updateMulti(any(Query.class), update.capture(), eq(OutboundMail.class));
+    return update.getAllValues().get(1);
+  }
+
+  private static OutboundMail mail(String id, String key, String to, String subject, String text) {
+    OutboundMail m = new OutboundMail(key, to, subject, text);
+    ReflectionTestUtils.setField(m, "id", id);
+    return m;
+  }
+}
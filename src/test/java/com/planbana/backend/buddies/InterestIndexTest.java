@@ -0,0 +1,101 @@
+package com.planbana.backend.buddies;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InterestIndexTest {
+
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final InterestIndex index = new InterestIndex(mongo, new SimpleMeterRegistry());
+
+  @Test
+  void changesMadeWhileRebuildingSurviveTheSwap() {
+    String alice = new ObjectId().toHexString();
+    String bob = new ObjectId().toHexString();
+    // The rebuild reads alice's old interests; she changes them before it reaches bob
+    Stream<Document> users = Stream.of(user(alice, "hiking"), user(bob, "food"))
+        .peek(u -> {
+          if (u.getObjectId("_id").toHexString().equals(bob)) {
+            index.update(alice, List.of("food"));
+          }
+        });
+    when(mongo.stream(any(Query.class), eq(Document.class), eq("users"))).thenReturn(users);
+
+    index.rebuild();
+
+    assertThat(index.match(List.of("food"), bob, 10)).extracting(InterestIndex.Match::userId).containsExactly(alice);
+    assertThat(index.match(List.of("hiking"), null, 10)).isEmpty();
+  }
+
+  /**
+   * Guards the order of magnitude of ranking cost (a local run measured about 140µs per query for
+   * 3000 users) and checks the ranking against a brute-force Jaccard over the same users.
+   */
+  @Test
+  void ranksThreeThousandUsersQuicklyAndCorrectly() {
+    Random random = new Random(17);
+    List<String> tags = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      tags.add("tag" + i);
+    }
+    List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      Set<String> interests = new HashSet<>();
+      while (interests.size() < 3 + random.nextInt(6)) {
+        interests.add(tags.get(random.nextInt(tags.size())));
+      }
+      docs.add(user(new ObjectId().toHexString(), interests.toArray(String[]::new)));
+    }
+    when(mongo.stream(any(Query.class), eq(Document.class), eq("users"))).thenReturn(docs.stream());
+    index.rebuild();
+    List<String> query = List.of("tag1", "tag2", "tag3", "tag5", "tag8");
+
+    List<InterestIndex.Match> matches = index.match(query, null, 20);
+    List<Double> expected = docs.stream()
+        .map(d -> jaccard(query, d.getList("interests", String.class)))
+        .filter(j -> j > 0)
+        .sorted(Comparator.reverseOrder())
+        .limit(20)
+        .toList();
+    assertThat(matches).extracting(InterestIndex.Match::score).containsExactlyElementsOf(expected);
+
+    for (int i = 0; i < 2_000; i++) {
+      index.match(query, null, 20);
+    }
+    int runs = 2_000;
+    long started = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      index.match(query, null, 20);
+    }
+    long micros = (System.nanoTime() - started) / runs / 1_000;
+    // Generous so shared CI machines pass; a regression to per-user scanning costs far more
+    assertThat(micros).as("microseconds per query").isLessThan(2_000);
+  }
+
+  private static double jaccard(List<String> query, List<String> interests) {
+    long shared = interests.stream().filter(query::contains).count();
+    return (double) shared / (query.size() + interests.size() - shared);
+  }
+
+  private static Document user(String id, String... interests) {
+    return new Document("_id", new ObjectId(id)).append("interests", List.of(interests));
+  }
+}
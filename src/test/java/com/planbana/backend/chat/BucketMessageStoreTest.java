@@ -0,0 +1,128 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.common.KeysetCursor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BucketMessageStoreTest {
+
+  private static final Instant WINDOW = Instant.parse("2026-01-01T00:00:00Z");
+
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final BucketMessageStore store = new BucketMessageStore(mongo, mock(MessageRepository.class), 10, 86_400_000L);
+  private final List<Message> all = new ArrayList<>();
+  private final List<Document> buckets = new ArrayList<>();
+  private final AtomicInteger read = new AtomicInteger();
+
+  @BeforeEach
+  void buckets() {
+    MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+    MongoMappingContext context = new MongoMappingContext();
+    context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+    MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+    converter.setCustomConversions(conversions);
+    converter.afterPropertiesSet();
+    when(mongo.getConverter()).thenReturn(converter);
+    store.setLegacyDrained(true);
+
+    // Six buckets of one window; a late batch put second 5 into the last bucket, so buckets overlap
+    for (int b = 0; b < 6; b++) {
+      List<Message> messages = new ArrayList<>();
+      for (int s = b * 10 + 1; s <= b * 10 + 10; s++) {
+        messages.add(message(s == 55 ? 5 : s));
+      }
+      all.addAll(messages);
+      List<Instant> times = messages.stream().map(Message::getCreatedAt).sorted().toList();
+      buckets.add(new Document("window", Date.from(WINDOW))
+          .append("first", Date.from(times.get(0)))
+          .append("last", Date.from(times.get(times.size() - 1)))
+          .append("messages", store.embed(messages)));
+    }
+    // Stands in for the (conversationId, window, last) index and the first-bound of a backward read
+    when(mongo.stream(any(Query.class), eq(Document.class), eq(BucketMessageStore.COLLECTION))).thenAnswer(inv -> {
+      Document filter = inv.<Query>getArgument(0).getQueryObject();
+      Date firstAtMost = filter.get("first") instanceof Document d ? Date.from((Instant) d.get("$lte")) : null;
+      List<Document> byLast = new ArrayList<>(buckets);
+      byLast.sort(Comparator.comparing((Document b) -> b.getDate("last")).reversed());
+      return byLast.stream()
+          .filter(b -> firstAtMost == null || !b.getDate("first").after(firstAtMost))
+          .peek(b -> read.incrementAndGet());
+    });
+  }
+
+  @Test
+  void theNewestPageStopsReadingOnceNoOlderBucketCanMatter() {
+    Slice<Message> page = store.history("c1", null, null, 10);
+
+    assertThat(page.getContent()).extracting(Message::getId).containsExactlyElementsOf(newest(all, 10));
+    assertThat(page.hasNext()).isTrue();
+    // The 10 newest span the two newest buckets; the third is read only to see its last
+    assertThat(read).hasValue(3);
+  }
+
+  @Test
+  void anOlderPageStillFindsMessagesInOverlappingBuckets() {
+    Message cursor = all.stream().filter(m -> m.getCreatedAt().equals(second(11))).findFirst().orElseThrow();
+    Slice<Message> page = store.history("c1", new KeysetCursor(cursor.getCreatedAt(), cursor.getId()), null, 7);
+
+    List<Message> older = all.stream().filter(m -> m.getCreatedAt().isBefore(second(11))).toList();
+    assertThat(page.getContent()).extracting(Message::getId).containsExactlyElementsOf(newest(older, 7));
+    assertThat(page.getContent()).extracting(Message::getCreatedAt).contains(second(5));
+  }
+
+  @Test
+  void anExportMergesBucketsAndDocumentsInIdOrderOnce() {
+    List<Message> sorted = all.stream().sorted(Comparator.comparing(Message::getId)).toList();
+    List<Message> documents = List.of(sorted.get(0), sorted.get(3), sorted.get(4));
+    List<Message> buckets = List.of(sorted.get(1), sorted.get(2), sorted.get(3), sorted.get(5));
+    AtomicInteger closed = new AtomicInteger();
+
+    try (var merged = BucketMessageStore.mergeById(documents.stream().onClose(closed::incrementAndGet),
+        buckets.stream().onClose(closed::incrementAndGet))) {
+      assertThat(merged.map(Message::getId).toList())
+          .containsExactlyElementsOf(sorted.subList(0, 6).stream().map(Message::getId).toList());
+    }
+    assertThat(closed).hasValue(2);
+  }
+
+  private static List<String> newest(List<Message> messages, int n) {
+    return messages.stream()
+        .sorted(Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId).reversed())
+        .limit(n).map(Message::getId).toList();
+  }
+
+  private static Instant second(int s) {
+    return WINDOW.plusSeconds(s);
+  }
+
+  private static Message message(int second) {
+    Message m = new Message();
+    m.setId(new ObjectId().toHexString());
+    m.setSenderUserId("u1");
+    m.setContent("at " + second);
+    m.setCreatedAt(second(second));
+    return m;
+  }
+}
@@ -0,0 +1,138 @@
+package com.planbana.backend.chat;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/** Runs two fan-out nodes against a real single-node replica set, which change streams need. */
+@Testcontainers(disabledWithoutDocker = true)
+class ChangeStreamChatFanoutTest {
+
+  @Container
+  static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+  private static final String TOPIC = LocalSubscriptions.TOPIC_PREFIX + "c1";
+
+  private static MongoClient client;
+  private MongoTemplate template;
+  private final List<ChangeStreamChatFanout> started = new ArrayList<>();
+
+  @BeforeAll
+  static void connect() {
+    client = MongoClients.create(mongo.getReplicaSetUrl());
+  }
+
+  @AfterAll
+  static void disconnect() {
+    client.close();
+  }
+
+  @BeforeEach
+  void database() {
+    template = new MongoTemplate(client, "fanout-" + UUID.randomUUID());
+  }
+
+  @AfterEach
+  void stopNodes() {
+    started.forEach(ChangeStreamChatFanout::stop);
+  }
+
+  @Test
+  void deliversOtherNodesMessagesAndSkipsOwnOnesAcrossARestart() {
+    SimpMessagingTemplate brokerA = mock(SimpMessagingTemplate.class);
+    SimpMessagingTemplate brokerB = mock(SimpMessagingTemplate.class);
+    ChangeStreamChatFanout a = node("node-a", brokerA);
+    node("node-b", brokerB);
+    awaitTokens(2);
+
+    Message fromA = send(a);
+    verify(brokerB, timeout(10_000)).convertAndSend(eq(TOPIC), is(fromA));
+
+    // Node a goes down after broadcasting but before its change stream saw the message
+    a.stop();
+    Message sentBeforeRestart = message();
+    a.sentLocally(sentBeforeRestart);
+    template.insert(sentBeforeRestart);
+    Message fromB = message();
+    fromB.setOriginNode("node-b");
+    template.insert(fromB);
+
+    SimpMessagingTemplate brokerRestarted = mock(SimpMessagingTemplate.class);
+    node("node-a", brokerRestarted);
+    verify(brokerRestarted, timeout(10_000)).convertAndSend(eq(TOPIC), is(fromB));
+    verify(brokerRestarted, never()).convertAndSend(eq(TOPIC), is(sentBeforeRestart));
+    verify(brokerA, never()).convertAndSend(eq(TOPIC), (Object) any());
+  }
+
+  private ChangeStreamChatFanout node(String nodeId, SimpMessagingTemplate broker) {
+    LocalSubscriptions subscriptions = new LocalSubscriptions();
+    StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+    headers.setSessionId("session-" + nodeId);
+    headers.setSubscriptionId("sub-0");
+    headers.setDestination(TOPIC);
+    subscriptions.onSubscribe(new SessionSubscribeEvent(this,
+        MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders())));
+    ChangeStreamChatFanout fanout = new ChangeStreamChatFanout(template, new DocumentMessageStore(template, null),
+        broker, subscriptions, new SimpleMeterRegistry(), nodeId, 100, 50);
+    fanout.start();
+    started.add(fanout);
+    return fanout;
+  }
+
+  private void awaitTokens(long nodes) {
+    // A node has its stream open once it saved a resume token
+    await().atMost(Duration.ofSeconds(20))
+        .until(() -> template.getCollection(ChangeStreamChatFanout.TOKENS).countDocuments() >= nodes);
+  }
+
+  private Message send(ChangeStreamChatFanout node) {
+    Message m = message();
+    node.sentLocally(m);
+    template.insert(m);
+    return m;
+  }
+
+  private static Message message() {
+    Message m = new Message();
+    m.setId(new ObjectId().toHexString());
+    m.setConversationId("c1");
+    m.setSenderUserId("u1");
+    m.setContent("hello");
+    m.setCreatedAt(Instant.now());
+    return m;
+  }
+
+  private static Object is(Message expected) {
+    return argThat((Object payload) -> payload instanceof Message m && m.getId().equals(expected.getId()));
+  }
+}
@@ -0,0 +1,54 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.security.AuthenticatedUser;
+import com.planbana.backend.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ChatControllerTest {
+
+  private final ConversationService conversations = mock(ConversationService.class);
+  private final MessageStore messages = mock(MessageStore.class);
+  private final SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+  private final MessageWriter writer = mock(MessageWriter.class);
+  private final ChatController controller = new ChatController(conversations, messages, mock(UserRepository.class),
+      broker, writer, mock(ChatFanout.class), mock(PresenceRegistry.class), mock(MessageSearchIndex.class));
+  private final MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+  @Test
+  void strangersCannotReadAConversation() throws Exception {
+    mvc.perform(get("/api/chat/conversations/c1/messages").principal(auth("mallory")))
+        .andExpect(status().isNotFound());
+    verify(messages, never()).history(anyString(), any(), any(), anyInt());
+  }
+
+  @Test
+  void strangersCannotSendIntoAConversation() {
+    assertThatThrownBy(() -> controller.send("c1", "hi", auth("mallory")))
+        .isInstanceOf(AccessDeniedException.class);
+    verify(writer, never()).submit(any(), any());
+    verify(broker, never()).convertAndSend(anyString(), (Object) any());
+  }
+
+  static Authentication auth(String userId) {
+    AuthenticatedUser principal = new AuthenticatedUser(userId, userId + "@example.com", "", List.of());
+    return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+  }
+}
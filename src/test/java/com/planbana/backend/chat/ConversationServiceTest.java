@@ -0,0 +1,48 @@
+package com.planbana.backend.chat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationServiceTest {
+
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final ConversationService conversations = new ConversationService(mongo, new SimpleMeterRegistry(), 100, 60_000);
+
+  @Test
+  void membershipIsLookedUpOncePerUserAndConversation() {
+    when(mongo.exists(any(Query.class), eq(Conversation.class))).thenReturn(true, false);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(conversations.isParticipant("c1", "alice")).isTrue();
+      assertThat(conversations.isParticipant("c1", "mallory")).isFalse();
+    }
+    verify(mongo, times(2)).exists(any(Query.class), eq(Conversation.class));
+  }
+
+  @Test
+  void aNewConversationsMembersCanSendWithoutALookup() {
+    Conversation created = new Conversation();
+    created.setId("c1");
+    when(mongo.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+        eq(Conversation.class))).thenReturn(created);
+
+    conversations.findOrCreate("alice", "bob", "alice@example.com");
+
+    assertThat(conversations.isParticipant("c1", "alice")).isTrue();
+    assertThat(conversations.isParticipant("c1", "bob")).isTrue();
+    verify(mongo, never()).exists(any(Query.class), eq(Conversation.class));
+  }
+}
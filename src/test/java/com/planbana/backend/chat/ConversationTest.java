@@ -0,0 +1,17 @@
+package com.planbana.backend.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationTest {
+
+  @Test
+  void participantKeyIsSortedAndSkipsNulls() {
+    assertThat(Conversation.participantKey(new HashSet<>(Arrays.asList("u2", null, "u1")))).isEqualTo("u1:u2");
+    assertThat(Conversation.participantKey(null)).isEmpty();
+  }
+}
@@ -0,0 +1,120 @@
+package com.planbana.backend.chat;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageBucketMigratorTest {
+
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final MessageRepository legacy = mock(MessageRepository.class);
+  private final BucketMessageStore store = new BucketMessageStore(mongo, legacy, 10, 86_400_000L);
+  private final MessageBucketMigrator migrator = new MessageBucketMigrator(mongo, store, 50);
+  // Stands in for the messages collection, by conversation id
+  private final Map<String, List<Message>> documents = new TreeMap<>();
+  private final List<String> bucketed = new ArrayList<>();
+
+  @BeforeEach
+  void collections() {
+    MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+    MongoMappingContext context = new MongoMappingContext();
+    context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+    MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+    converter.setCustomConversions(conversions);
+    converter.afterPropertiesSet();
+    when(mongo.getConverter()).thenReturn(converter);
+
+    when(mongo.exists(any(Query.class), eq(Message.class))).thenAnswer(inv -> !documents.isEmpty());
+    when(mongo.findOne(any(Query.class), eq(Message.class))).thenAnswer(inv -> {
+      Document gt = (Document) inv.<Query>getArgument(0).getQueryObject().get("conversationId");
+      String after = gt.getString("$gt");
+      return documents.keySet().stream().filter(c -> c.compareTo(after) > 0).findFirst()
+          .map(c -> documents.get(c).get(0)).orElse(null);
+    });
+    when(mongo.stream(any(Query.class), eq(Message.class))).thenAnswer(inv -> {
+      String conversationId = inv.<Query>getArgument(0).getQueryObject().getString("conversationId");
+      return new ArrayList<>(documents.getOrDefault(conversationId, List.of())).stream();
+    });
+    BulkOperations bulk = mock(BulkOperations.class);
+    when(mongo.bulkOps(any(BulkOperations.BulkMode.class), eq(BucketMessageStore.COLLECTION))).thenReturn(bulk);
+    when(mongo.remove(any(Query.class), eq(Message.class))).thenAnswer(inv -> {
+      Document in = (Document) inv.<Query>getArgument(0).getQueryObject().get("_id");
+      List<?> ids = in.getList("$in", Object.class);
+      ids.forEach(id -> bucketed.add(id.toString()));
+      documents.values().forEach(list -> list.removeIf(m -> ids.contains(m.getId())));
+      documents.values().removeIf(List::isEmpty);
+      return null;
+    });
+    when(legacy.history(anyString(), any(), any(), anyInt())).thenAnswer(inv ->
+        new SliceImpl<>(new ArrayList<>(documents.getOrDefault(inv.<String>getArgument(0), List.of())),
+            PageRequest.of(0, 50), false));
+    when(mongo.stream(any(Query.class), eq(Document.class), eq(BucketMessageStore.COLLECTION)))
+        .thenAnswer(inv -> Stream.empty());
+  }
+
+  @Test
+  void documentsArrivingAfterAPassAreMovedAndShownMeanwhile() {
+    Message first = document("c1", "before the pass");
+    migrator.migrateSome();
+    assertThat(bucketed).containsExactly(first.getId());
+    assertThat(documents).isEmpty();
+
+    migrator.migrateSome();
+    assertThat(store.isLegacyDrained()).isTrue();
+
+    // A document-mode node still writing, and a message to an id without a conversation
+    Message late = document("c1", "from an old node");
+    Message orphan = document("no-conversation", "hello?");
+    migrator.migrateSome();
+    assertThat(bucketed).contains(late.getId(), orphan.getId());
+    assertThat(store.isLegacyDrained()).isFalse();
+  }
+
+  @Test
+  void historyReadsTheDocumentsUntilNoneAreLeft() {
+    Message late = document("c1", "from an old node");
+    store.setLegacyDrained(true);
+    migrator.migrateSome();
+    // Moved by now, but a document written between two runs is still read from messages
+    Message next = document("c1", "another");
+    assertThat(store.history("c1", null, null, 50).getContent()).extracting(Message::getId)
+        .containsExactly(next.getId());
+    assertThat(bucketed).containsExactly(late.getId());
+  }
+
+  private Message document(String conversationId, String content) {
+    Message m = new Message();
+    m.setId(new ObjectId().toHexString());
+    m.setConversationId(conversationId);
+    m.setSenderUserId("u1");
+    m.setContent(content);
+    m.setCreatedAt(Instant.now());
+    documents.computeIfAbsent(conversationId, c -> new ArrayList<>()).add(m);
+    return m;
+  }
+}
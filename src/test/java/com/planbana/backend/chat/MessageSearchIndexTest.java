@@ -0,0 +1,129 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.common.CursorPage;
+import com.planbana.backend.common.KeysetCursor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageSearchIndexTest {
+
+  private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+
+  private final MessageStore store = mock(MessageStore.class);
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+  private final MessageSearchIndex index = new MessageSearchIndex(store, mongo, meters,
+      1 << 20, 60_000, 30_000, 1, 4, 50, 10);
+  private final List<Message> all = new ArrayList<>();
+  private final CountDownLatch releaseBuild = new CountDownLatch(1);
+
+  @BeforeEach
+  void conversation() {
+    for (int i = 0; i < 30; i++) {
+      all.add(message(i, i % 3 == 0 ? "Café at the park " + i : "see you later " + i));
+    }
+    when(mongo.findOne(any(Query.class), eq(Conversation.class))).thenReturn(new Conversation());
+    // Newest first, older than the cursor, like every store
+    when(store.history(eq("c1"), any(), isNull(), anyInt())).thenAnswer(inv -> {
+      KeysetCursor before = inv.getArgument(1);
+      int size = inv.getArgument(3);
+      List<Message> older = all.stream()
+          .filter(m -> before == null || m.getCreatedAt().isBefore(before.at()))
+          .sorted(Comparator.comparing(Message::getCreatedAt).reversed())
+          .toList();
+      return new SliceImpl<>(older.subList(0, Math.min(size, older.size())), PageRequest.of(0, size),
+          older.size() > size);
+    });
+    doAnswer(inv -> {
+      releaseBuild.await();
+      all.forEach(inv.<Consumer<Message>>getArgument(1));
+      return null;
+    }).when(store).scan(eq("c1"), any());
+  }
+
+  @AfterEach
+  void release() {
+    releaseBuild.countDown();
+    index.shutdown();
+  }
+
+  @Test
+  void tooManyWordsAreRejectedRatherThanDropped() {
+    assertThatThrownBy(() -> index.search("c1", "u1", "one two three four five six seven eight nine", null, 10))
+        .isInstanceOfSatisfying(ResponseStatusException.class,
+            e -> assertThat(e.getStatusCode().value()).isEqualTo(400));
+    assertThat(index.search("c1", "u1", "one two three four five six seven eight", null, 10).items()).isEmpty();
+  }
+
+  @Test
+  void whileTheIndexBuildsSearchesReadTheHistory() {
+    CursorPage<MessageSearchHit> first = index.search("c1", "u1", "cafe pa", null, 3);
+
+    assertThat(first.items()).extracting(MessageSearchHit::content)
+        .containsExactly("Café at the park 27", "Café at the park 24", "Café at the park 21");
+    assertThat(first.items().get(0).highlights()).containsExactly(new int[] {0, 4}, new int[] {12, 16});
+    assertThat(meters.get("chat.search.fallback").counter().count()).isEqualTo(1);
+
+    // Ten messages a page: this one runs out of budget before it has three hits
+    CursorPage<MessageSearchHit> second = index.search("c1", "u1", "cafe pa", first.nextCursor(), 3);
+    assertThat(second.items()).extracting(MessageSearchHit::content)
+        .containsExactly("Café at the park 18", "Café at the park 15", "Café at the park 12");
+    CursorPage<MessageSearchHit> rest = index.search("c1", "u1", "cafe pa", second.nextCursor(), 10);
+    assertThat(rest.items()).extracting(MessageSearchHit::content)
+        .containsExactly("Café at the park 9", "Café at the park 6", "Café at the park 3", "Café at the park 0");
+    assertThat(rest.nextCursor()).isNull();
+  }
+
+  @Test
+  void onceBuiltSearchesAreServedFromTheIndex() {
+    index.search("c1", "u1", "park", null, 3);
+    releaseBuild.countDown();
+    await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+      clearInvocations(store);
+      CursorPage<MessageSearchHit> page = index.search("c1", "u1", "cafe pa", null, 3);
+      verify(store, never()).history(any(), any(), any(), anyInt());
+      assertThat(page.items()).extracting(MessageSearchHit::content)
+          .containsExactly("Café at the park 27", "Café at the park 24", "Café at the park 21");
+    });
+  }
+
+  private static Message message(int second, String content) {
+    Message m = new Message();
+    m.setId(new ObjectId().toHexString());
+    m.setConversationId("c1");
+    m.setSenderUserId("u1");
+    m.setContent(content);
+    m.setCreatedAt(START.plusSeconds(second));
+    return m;
+  }
+}
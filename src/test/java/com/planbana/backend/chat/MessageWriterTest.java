@@ -0,0 +1,153 @@
+package com.planbana.backend.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageWriterTest {
+
+  @TempDir
+  Path journalDir;
+
+  private final MessageStore store = mock(MessageStore.class);
+  private final List<String> stored = new CopyOnWriteArrayList<>();
+  private MessageWriter writer;
+
+  @AfterEach
+  void stop() {
+    if (writer != null) {
+      writer.stop();
+    }
+  }
+
+  @Test
+  void aRejectedMessageIsSplitOffAndDeadLettered() throws Exception {
+    when(store.insert(anyList(), anyBoolean())).thenAnswer(inv -> {
+      List<Message> batch = inv.getArgument(0);
+      if (batch.stream().anyMatch(m -> m.getContent().equals("poison"))) {
+        throw new DataIntegrityViolationException("document failed validation");
+      }
+      batch.forEach(m -> stored.add(m.getContent()));
+      return Set.of();
+    });
+    writer = start();
+
+    for (String content : List.of("a", "b", "poison", "c", "d")) {
+      writer.submit(message(content), "alice@example.com");
+    }
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> stored.size() == 4);
+    assertThat(stored).containsExactlyInAnyOrder("a", "b", "c", "d");
+    Path deadLetters = journalDir.resolve("dead-letters.ndjson");
+    await().atMost(Duration.ofSeconds(5)).until(() -> Files.exists(deadLetters));
+    assertThat(Files.readAllLines(deadLetters)).singleElement().asString()
+        .contains("\"content\":\"poison\"").contains("document failed validation");
+  }
+
+  @Test
+  void anUnreachableMongoIsRetriedPastMaxAttempts() {
+    AtomicInteger attempts = new AtomicInteger();
+    when(store.insert(anyList(), anyBoolean())).thenAnswer(inv -> {
+      if (attempts.incrementAndGet() <= 4) {
+        throw new DataAccessResourceFailureException("connection refused");
+      }
+      List<Message> batch = inv.getArgument(0);
+      batch.forEach(m -> stored.add(m.getContent()));
+      return Set.of();
+    });
+    writer = start();
+
+    writer.submit(message("hello"), "alice@example.com");
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> stored.contains("hello"));
+    assertThat(journalDir.resolve("dead-letters.ndjson")).doesNotExist();
+  }
+
+  @Test
+  void aFailingListenerHoldsTheAckSoTheNextStartReplaysToIt() throws Exception {
+    when(store.insert(anyList(), anyBoolean())).thenAnswer(inv -> {
+      List<Message> batch = inv.getArgument(0);
+      boolean replay = inv.getArgument(1);
+      batch.forEach(m -> stored.add(m.getContent()));
+      // The second start finds the message already stored
+      return replay ? Set.of(0) : Set.of();
+    });
+    AtomicInteger failures = new AtomicInteger();
+    writer = start(messages -> {
+      failures.incrementAndGet();
+      throw new IllegalStateException("inbox update failed");
+    });
+    writer.submit(message("hello"), "alice@example.com");
+    await().atMost(Duration.ofSeconds(10)).until(() -> failures.get() >= 2);
+    writer.stop();
+
+    List<String> notified = new CopyOnWriteArrayList<>();
+    writer = start(messages -> messages.forEach(m -> notified.add(m.getContent())));
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> notified.contains("hello"));
+    assertThat(stored).containsExactly("hello", "hello");
+  }
+
+  @Test
+  void acknowledgedMessagesAreNotReplayedAfterACrash() throws Exception {
+    when(store.insert(anyList(), anyBoolean())).thenAnswer(inv -> {
+      List<Message> batch = inv.getArgument(0);
+      batch.forEach(m -> stored.add(m.getContent()));
+      return Set.of();
+    });
+    List<String> notified = new CopyOnWriteArrayList<>();
+    MessageWriter crashed = start(messages -> messages.forEach(m -> notified.add(m.getContent())));
+    try {
+      crashed.submit(message("a"), "alice@example.com");
+      crashed.submit(message("b"), "alice@example.com");
+      await().atMost(Duration.ofSeconds(10)).until(() -> notified.size() == 2);
+
+      // Without stop() the segment is left behind, as after a crash
+      writer = start();
+      writer.submit(message("c"), "alice@example.com");
+      await().atMost(Duration.ofSeconds(10)).until(() -> stored.contains("c"));
+      assertThat(stored).containsExactly("a", "b", "c");
+    } finally {
+      crashed.stop();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private MessageWriter start(MessageFlushListener... listenerBeans) {
+    ObjectProvider<MessageFlushListener> listeners = mock(ObjectProvider.class);
+    when(listeners.orderedStream()).thenAnswer(inv -> Stream.of(listenerBeans));
+    MessageWriter w = new MessageWriter(store, new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry(),
+        listeners, 100, 10, 200, 2, journalDir.toString(), 1 << 20, false);
+    w.start();
+    return w;
+  }
+
+  private static Message message(String content) {
+    Message m = new Message();
+    m.setConversationId("c1");
+    m.setSenderUserId("u1");
+    m.setContent(content);
+    return m;
+  }
+}
@@ -0,0 +1,140 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.security.AuthenticatedUser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class PresenceRegistryTest {
+
+  private final SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+  private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+  private final PresenceRegistry presence = new PresenceRegistry(broker, meters, 4, 0, 6000);
+
+  @Test
+  void aSubscribeAfterTheDisconnectDoesNotBringTheSessionBack() {
+    presence.onConnected(connected("s1", "alice"));
+    presence.onDisconnect(disconnected("s1", "alice"));
+    presence.onSubscribe(subscribed("s1", "alice", "c1"));
+
+    assertThat(meters.get("chat.presence.sessions").gauge().value()).isZero();
+    presence.flush();
+    verify(broker, never()).convertAndSend(anyString(), (Object) any());
+  }
+
+  @Test
+  void aUserStaysConnectedWhileAnySessionIsLeft() {
+    presence.onConnected(connected("s1", "alice"));
+    presence.onSubscribe(subscribed("s1", "alice", "c1"));
+    presence.onConnected(connected("s2", "alice"));
+    presence.flush();
+    clearInvocations(broker);
+
+    presence.onDisconnect(disconnected("s1", "alice"));
+    assertThat(lastStatus("alice")).isEqualTo(PresenceRegistry.Status.AWAY);
+
+    presence.onDisconnect(disconnected("s2", "alice"));
+    assertThat(lastStatus("alice")).isEqualTo(PresenceRegistry.Status.OFFLINE);
+  }
+
+  @Test
+  void concurrentReconnectsNeverLoseTheSessionThatStays() throws Exception {
+    presence.onConnected(connected("stays", "alice"));
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    CountDownLatch go = new CountDownLatch(1);
+    for (int t = 0; t < 8; t++) {
+      int thread = t;
+      pool.execute(() -> {
+        try {
+          go.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < 2000; i++) {
+          String id = "s" + thread + "-" + i;
+          presence.onConnected(connected(id, "alice"));
+          presence.onDisconnect(disconnected(id, "alice"));
+        }
+      });
+    }
+    go.countDown();
+    pool.shutdown();
+    assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+    presence.onSubscribe(subscribed("stays", "alice", "c1"));
+    presence.flush();
+    clearInvocations(broker);
+    // Still connected through "stays", so leaving c1 makes alice away there, not offline
+    presence.onUnsubscribe(new SessionUnsubscribeEvent(this, frame(StompCommand.UNSUBSCRIBE, "stays", "c1"),
+        auth("alice")));
+    assertThat(lastStatus("alice")).isEqualTo(PresenceRegistry.Status.AWAY);
+  }
+
+  private PresenceRegistry.Status lastStatus(String userId) {
+    presence.flush();
+    ArgumentCaptor<Object> frames = ArgumentCaptor.forClass(Object.class);
+    verify(broker, atLeastOnce()).convertAndSend(anyString(), frames.capture());
+    List<PresenceRegistry.UserPresence> users = new ArrayList<>();
+    for (Object f : frames.getAllValues()) {
+      users.addAll(((PresenceRegistry.PresenceFrame) f).users());
+    }
+    clearInvocations(broker);
+    return users.stream().filter(u -> u.userId().equals(userId)).reduce((a, b) -> b).orElseThrow().status();
+  }
+
+  private SessionConnectedEvent connected(String sessionId, String userId) {
+    return new SessionConnectedEvent(this, frame(StompCommand.CONNECTED, sessionId, null), auth(userId));
+  }
+
+  private SessionSubscribeEvent subscribed(String sessionId, String userId, String conversationId) {
+    return new SessionSubscribeEvent(this, frame(StompCommand.SUBSCRIBE, sessionId, conversationId), auth(userId));
+  }
+
+  private SessionDisconnectEvent disconnected(String sessionId, String userId) {
+    return new SessionDisconnectEvent(this, frame(StompCommand.DISCONNECT, sessionId, null), sessionId,
+        CloseStatus.NORMAL, auth(userId));
+  }
+
+  private static Message<byte[]> frame(StompCommand command, String sessionId, String conversationId) {
+    StompHeaderAccessor headers = StompHeaderAccessor.create(command);
+    headers.setSessionId(sessionId);
+    if (conversationId != null) {
+      headers.setDestination(LocalSubscriptions.TOPIC_PREFIX + conversationId);
+      headers.setSubscriptionId("sub-" + conversationId);
+    }
+    return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+  }
+
+  private static Authentication auth(String userId) {
+    AuthenticatedUser principal = new AuthenticatedUser(userId, userId + "@example.com", "", List.of());
+    return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+  }
+}
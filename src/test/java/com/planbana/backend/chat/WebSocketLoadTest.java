@@ -0,0 +1,226 @@
+package com.planbana.backend.chat;
+
+import com.planbana.backend.security.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Holds {@code loadtest.sessions} (2000 by default) SockJS sessions open against the running
+ * server with {@code overflow: drop}, two to a conversation, broadcasts to every conversation and
+ * checks that each session receives every message and stays connected. No database is needed:
+ * sessions authenticate with a minted access token and the broadcasts go straight to the broker.
+ *
+ * <p>The load test takes tens of seconds, so it runs only when asked for, e.g.
+ * {@code mvn test -Dtest=WebSocketLoadTest -Dloadtest.sessions=2000}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "mongock.enabled=false",
+    "spring.data.mongodb.uri=mongodb://localhost:1/load?serverSelectionTimeoutMS=500",
+    "app.websocket.overflow=drop"})
+@ActiveProfiles("test")
+class WebSocketLoadTest {
+
+  private static final int SESSIONS = Integer.getInteger("loadtest.sessions", 2000);
+  private static final int BROADCASTS = 20;
+  private static final String TOPIC = LocalSubscriptions.TOPIC_PREFIX + "load-";
+
+  @LocalServerPort int port;
+  @Autowired JwtService jwt;
+  @Autowired SimpMessagingTemplate broker;
+  @Autowired @Qualifier("subProtocolWebSocketHandler") WebSocketHandler handler;
+
+  private final List<StompSession> sessions = new ArrayList<>();
+  private final AtomicInteger disconnected = new AtomicInteger();
+
+  @AfterEach
+  void disconnect() {
+    sessions.forEach(StompSession::disconnect);
+  }
+
+  @Test
+  @EnabledIfSystemProperty(named = "loadtest.sessions", matches = "\\d+")
+  void thousandsOfSessionsAllReceiveEveryBroadcast() throws Exception {
+    assertThat(handler).isInstanceOf(WebSocketBrokerConfig.DroppingSubProtocolWebSocketHandler.class);
+
+    WebSocketStompClient client = new WebSocketStompClient(
+        new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+    // Presence frames share the topics as JSON, so take every payload as raw bytes
+    client.setMessageConverter(new SimpleMessageConverter());
+
+    AtomicInteger[] received = new AtomicInteger[SESSIONS];
+    AtomicInteger[] warmedUp = new AtomicInteger[SESSIONS];
+    Semaphore inFlight = new Semaphore(200);
+    List<CompletableFuture<StompSession>> connecting = new ArrayList<>();
+    for (int i = 0; i < SESSIONS; i++) {
+      received[i] = new AtomicInteger();
+      warmedUp[i] = new AtomicInteger();
+      inFlight.acquire();
+      CompletableFuture<StompSession> connected = client.connectAsync(
+          "http://localhost:" + port + "/ws", headers("load-" + i), new StompHeaders(), new Handler())
+          .whenComplete((s, e) -> inFlight.release());
+      connecting.add(connected);
+    }
+    for (int i = 0; i < SESSIONS; i++) {
+      StompSession session = connecting.get(i).get(30, TimeUnit.SECONDS);
+      sessions.add(session);
+      session.subscribe(TOPIC + i / 2, counter(received[i], warmedUp[i]));
+    }
+
+    // Subscriptions register asynchronously; broadcast warm-ups (not counted) until every session has one
+    await().atMost(Duration.ofSeconds(60)).pollInterval(Duration.ofSeconds(1)).until(() -> {
+      broadcast("warm-up");
+      return allAtLeast(warmedUp, 1);
+    });
+    for (int m = 0; m < BROADCASTS; m++) {
+      broadcast("message " + m);
+    }
+
+    await().atMost(Duration.ofSeconds(60)).untilAsserted(() -> {
+      for (int i = 0; i < SESSIONS; i++) {
+        assertThat(received[i].get()).as("messages at session %d", i).isEqualTo(BROADCASTS);
+      }
+    });
+    assertThat(disconnected).hasValue(0);
+    assertThat(sessions).allMatch(StompSession::isConnected);
+  }
+
+  @Test
+  void aStuckSessionLosesItsOldestMessagesInsteadOfBeingClosed() throws Exception {
+    WebSocketSession stuck = mock(WebSocketSession.class);
+    when(stuck.isOpen()).thenReturn(true);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(inv -> {
+      release.await();
+      return null;
+    }).when(stuck).sendMessage(any());
+    WebSocketSession session = ((WebSocketBrokerConfig.DroppingSubProtocolWebSocketHandler) handler).decorateSession(stuck);
+
+    // The first send holds the flush; the rest overflow the 512 KB buffer behind it
+    CompletableFuture<Void> first = CompletableFuture.runAsync(() -> send(session, "first"));
+    await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> verify(stuck).sendMessage(any()));
+    String padding = "x".repeat(16 * 1024);
+    for (int i = 0; i < 100; i++) {
+      send(session, i + ":" + padding);
+    }
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+
+    verify(stuck, never()).close(any());
+    ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+    verify(stuck, atLeast(2)).sendMessage(sent.capture());
+    List<String> frames = sent.getAllValues().stream().map(m -> ((TextMessage) m).getPayload()).toList();
+    assertThat(frames.get(0)).isEqualTo("first");
+    List<Integer> delivered = frames.subList(1, frames.size()).stream()
+        .map(f -> Integer.parseInt(f.substring(0, f.indexOf(':')))).toList();
+    // The oldest were dropped; what is left is the newest, in order, and fits the buffer
+    assertThat(delivered.get(0)).isGreaterThan(0);
+    assertThat(delivered.get(delivered.size() - 1)).isEqualTo(99);
+    for (int i = 1; i < delivered.size(); i++) {
+      assertThat(delivered.get(i)).isEqualTo(delivered.get(i - 1) + 1);
+    }
+    assertThat(delivered.size() * padding.length()).isLessThanOrEqualTo(512 * 1024);
+  }
+
+  private static void send(WebSocketSession session, String text) {
+    try {
+      session.sendMessage(new TextMessage(text));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void broadcast(String text) {
+    for (int c = 0; c < (SESSIONS + 1) / 2; c++) {
+      broker.convertAndSend(TOPIC + c, text);
+    }
+  }
+
+  private WebSocketHttpHeaders headers(String userId) {
+    WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+    String token = jwt.generateAccess(userId + "@example.com", Map.of("uid", userId, "roles", List.of("USER")));
+    headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    return headers;
+  }
+
+  private static boolean allAtLeast(AtomicInteger[] counts, int n) {
+    for (AtomicInteger c : counts) {
+      if (c.get() < n) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static StompFrameHandler counter(AtomicInteger received, AtomicInteger warmedUp) {
+    return new StompFrameHandler() {
+      @Override
+      public Type getPayloadType(StompHeaders headers) {
+        return byte[].class;
+      }
+
+      @Override
+      public void handleFrame(StompHeaders headers, Object payload) {
+        String text = new String((byte[]) payload, StandardCharsets.UTF_8);
+        if (text.equals("warm-up")) {
+          warmedUp.incrementAndGet();
+        } else if (text.startsWith("message ")) {
+          received.incrementAndGet();
+        }
+      }
+    };
+  }
+
+  private final class Handler extends StompSessionHandlerAdapter {
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+      disconnected.incrementAndGet();
+    }
+  }
+}
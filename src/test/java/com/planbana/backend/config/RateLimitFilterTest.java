@@ -0,0 +1,49 @@
+package com.planbana.backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+  @Test
+  void spoofedLeftmostForwardedForDoesNotBuyAFreshBucket() throws Exception {
+    RateLimitFilter filter = filter(1);
+
+    assertThat(status(filter, "10.0.0.1, 203.0.113.7")).isEqualTo(200);
+    assertThat(status(filter, "10.0.0.2, 203.0.113.7")).isEqualTo(429);
+    assertThat(status(filter, "198.51.100.9")).isEqualTo(200);
+  }
+
+  @Test
+  void clientIsTakenTrustedProxiesFromTheRight() throws Exception {
+    RateLimitFilter filter = filter(2);
+
+    assertThat(status(filter, "1.1.1.1, 203.0.113.7, 10.1.0.1")).isEqualTo(200);
+    assertThat(status(filter, "2.2.2.2, 203.0.113.7, 10.1.0.2")).isEqualTo(429);
+    // Shorter than the proxy chain: falls back to the peer address
+    assertThat(status(filter, "203.0.113.8")).isEqualTo(200);
+    assertThat(status(filter, "203.0.113.9")).isEqualTo(429);
+  }
+
+  private static RateLimitFilter filter(int trustedProxies) {
+    RateLimitProperties props = new RateLimitProperties();
+    props.setRequestsPerMinute(1);
+    props.setTrustForwardedFor(true);
+    props.setTrustedProxies(trustedProxies);
+    return new RateLimitFilter(props, new LocalRateLimitBucketFactory(), new SimpleMeterRegistry());
+  }
+
+  private static int status(RateLimitFilter filter, String forwardedFor) throws Exception {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/events");
+    req.setRemoteAddr("10.9.9.9");
+    req.addHeader("X-Forwarded-For", forwardedFor);
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    filter.doFilter(req, res, new MockFilterChain());
+    return res.getStatus();
+  }
+}
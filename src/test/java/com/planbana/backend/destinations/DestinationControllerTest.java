@@ -0,0 +1,50 @@
+package com.planbana.backend.destinations;
+
+import com.planbana.backend.common.PartialUpdater;
+import com.planbana.backend.config.ApiExceptionHandler;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class DestinationControllerTest {
+
+  private final DestinationRepository repo = mock(DestinationRepository.class);
+  private final MockMvc mvc = MockMvcBuilders
+      .standaloneSetup(new DestinationController(repo, mock(PartialUpdater.class)))
+      .setControllerAdvice(new ApiExceptionHandler())
+      .build();
+
+  @Test
+  void createIgnoresAClientSentIdAndVersion() throws Exception {
+    when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+    mvc.perform(post("/api/destinations").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"id\": \"64b000000000000000000001\", \"version\": 3, \"name\": \"Lisbon\"}"))
+        .andExpect(status().isOk());
+
+    ArgumentCaptor<Destination> saved = ArgumentCaptor.forClass(Destination.class);
+    verify(repo).save(saved.capture());
+    assertThat(saved.getValue().getId()).isNull();
+    assertThat(saved.getValue().getVersion()).isNull();
+    assertThat(saved.getValue().getName()).isEqualTo("Lisbon");
+  }
+
+  @Test
+  void aLostVersionRaceIsAConflict() throws Exception {
+    when(repo.save(any())).thenThrow(new OptimisticLockingFailureException("version moved on"));
+
+    mvc.perform(post("/api/destinations").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"Porto\"}"))
+        .andExpect(status().isConflict());
+  }
+}
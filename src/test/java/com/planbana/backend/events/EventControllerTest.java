@@ -0,0 +1,65 @@
+package com.planbana.backend.events;
+
+import com.planbana.backend.common.PartialUpdater;
+import com.planbana.backend.feed.FeedService;
+import com.planbana.backend.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class EventControllerTest {
+
+  private final PartialUpdater updater = mock(PartialUpdater.class);
+  private final EventController controller = new EventController(mock(EventRepository.class),
+      mock(MongoTemplate.class), mock(UserRepository.class), mock(NearbyEventCache.class), updater,
+      mock(RsvpService.class), mock(FeedService.class));
+
+  @Test
+  void nonStringTitleIsRejected() {
+    for (Object title : List.of(42, true, List.of("a"), Map.of("x", "y"))) {
+      assertThatThrownBy(() -> controller.update("e1", Map.of("title", title), null))
+          .isInstanceOfSatisfying(ResponseStatusException.class,
+              ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+    verifyNoInteractions(updater);
+  }
+
+  @Test
+  void explicitNullClearsAndAbsentFieldsAreLeftAlone() {
+    when(updater.apply(eq(Event.class), eq("e1"), any(), anyMap(), anySet())).thenReturn(new Event());
+    Map<String, Object> body = new HashMap<>();
+    body.put("description", null);
+    body.put("title", "Sunset hike");
+    body.put("version", 3);
+
+    controller.update("e1", body, null);
+
+    verify(updater).apply(Event.class, "e1", 3L, Map.of("title", "Sunset hike"), Set.of("description"));
+  }
+
+  @Test
+  void nonIntegerVersionIsRejected() {
+    assertThatThrownBy(() -> controller.update("e1", Map.of("title", "x", "version", "3"), null))
+        .isInstanceOf(ResponseStatusException.class);
+    assertThatThrownBy(() -> controller.update("e1", Map.of("title", "x", "version", 3.5), null))
+        .isInstanceOf(ResponseStatusException.class);
+    verifyNoInteractions(updater);
+  }
+}
@@ -0,0 +1,85 @@
+package com.planbana.backend.events;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NearbyEventCacheTest {
+
+  private static final double PARIS_LAT = 48.8566;
+  private static final double PARIS_LNG = 2.3522;
+
+  private final MongoTemplate mongo = mock(MongoTemplate.class);
+  private final NearbyEventCache cache = new NearbyEventCache(mongo, new SimpleMeterRegistry(), true, 10_000, 500, 60);
+
+  @Test
+  void loadThatRacedAWriteIsNotServed() throws Exception {
+    Event before = event("before", PARIS_LAT, PARIS_LNG);
+    Event after = event("after", PARIS_LAT, PARIS_LNG);
+    CountDownLatch querying = new CountDownLatch(1);
+    CountDownLatch written = new CountDownLatch(1);
+    when(mongo.find(any(Query.class), eq(Event.class)))
+        .thenAnswer(inv -> {
+          querying.countDown();
+          written.await(5, TimeUnit.SECONDS);
+          return List.of(before);
+        })
+        .thenReturn(List.of(before, after));
+
+    CompletableFuture<List<Event>> read = CompletableFuture.supplyAsync(() -> near(PARIS_LAT, PARIS_LNG));
+    querying.await(5, TimeUnit.SECONDS);
+    // The event is stored after the load queried, and invalidated before the load installs
+    cache.invalidate(after.getLocation());
+    written.countDown();
+
+    assertThat(read.get(5, TimeUnit.SECONDS)).containsExactlyInAnyOrder(before, after);
+    assertThat(near(PARIS_LAT, PARIS_LNG)).containsExactlyInAnyOrder(before, after);
+    verify(mongo, times(2)).find(any(Query.class), eq(Event.class));
+  }
+
+  @Test
+  void writeOnlyDropsTilesThatCoverIt() {
+    when(mongo.find(any(Query.class), eq(Event.class))).thenReturn(List.of());
+    near(PARIS_LAT, PARIS_LNG);
+    near(-33.8688, 151.2093);
+    verify(mongo, times(2)).find(any(Query.class), eq(Event.class));
+
+    cache.invalidate(new GeoJsonPoint(PARIS_LNG + 0.01, PARIS_LAT));
+    near(PARIS_LAT, PARIS_LNG);
+    near(-33.8688, 151.2093);
+
+    verify(mongo, times(3)).find(any(Query.class), eq(Event.class));
+  }
+
+  @Test
+  void indexCellsCoverTheAntimeridian() {
+    List<String> cells = NearbyEventCache.indexCellsAround(0, 179.9);
+    assertThat(cells).contains(GeohashCell.of(0, 179.9, 4).hash(), GeohashCell.of(0, -179.9, 4).hash());
+  }
+
+  private List<Event> near(double lat, double lng) {
+    return cache.find(lat, lng, 5, null, null, 0, 20);
+  }
+
+  private static Event event(String id, double lat, double lng) {
+    Event e = new Event();
+    e.setId(id);
+    e.setLocation(new GeoJsonPoint(lng, lat));
+    return e;
+  }
+}
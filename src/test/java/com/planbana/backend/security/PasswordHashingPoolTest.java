@@ -0,0 +1,85 @@
+package com.planbana.backend.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class PasswordHashingPoolTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final PasswordHashingPool pool = new PasswordHashingPool(registry, 1, 10, 300, 2);
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    pool.shutdown();
+  }
+
+  @Test
+  void rejectsWithoutWaitingWhenTheQueueCannotDrainInTime() {
+    pool.run(() -> sleep(200));
+    CompletableFuture<Object> busy = CompletableFuture.supplyAsync(() -> pool.run(this::block));
+    await().until(() -> active() == 1);
+    CompletableFuture<Object> queued = CompletableFuture.supplyAsync(() -> pool.run(() -> sleep(200)));
+    await().until(() -> queue() == 1);
+
+    long start = System.nanoTime();
+    assertThatThrownBy(() -> pool.run(() -> sleep(200)))
+        .isInstanceOf(PasswordHashingUnavailableException.class);
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(100);
+
+    assertThat(busy).failsWithin(2, TimeUnit.SECONDS);
+    assertThat(queued).failsWithin(2, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void timedOutTaskIsTakenOffTheQueue() {
+    CompletableFuture<Object> busy = CompletableFuture.supplyAsync(() -> pool.run(this::block));
+    await().until(() -> active() == 1);
+    CompletableFuture<Object> queued = CompletableFuture.supplyAsync(() -> pool.run(() -> sleep(10)));
+    await().until(() -> queue() == 1);
+
+    assertThat(queued).failsWithin(2, TimeUnit.SECONDS);
+    assertThat(queue()).isZero();
+    assertThat(busy).failsWithin(2, TimeUnit.SECONDS);
+    assertThat(registry.counter("auth.password.hashing.rejected").count()).isEqualTo(2);
+  }
+
+  private double active() {
+    return registry.get("auth.password.hashing.active").gauge().value();
+  }
+
+  private double queue() {
+    return registry.get("auth.password.hashing.queue").gauge().value();
+  }
+
+  /** Holds the worker until the test ends and, like BCrypt, ignores interrupts. */
+  private Object block() {
+    while (release.getCount() > 0) {
+      try {
+        release.await();
+      } catch (InterruptedException ignored) {
+        // keep going
+      }
+    }
+    return null;
+  }
+
+  private static Object sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+}
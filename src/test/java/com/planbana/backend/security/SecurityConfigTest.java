@@ -0,0 +1,55 @@
+package com.planbana.backend.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Which routes anonymous callers and plain users reach; no database is needed to be refused. */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "mongock.enabled=false",
+    "spring.data.mongodb.uri=mongodb://localhost:1/security?serverSelectionTimeoutMS=500"})
+@ActiveProfiles("test")
+class SecurityConfigTest {
+
+  @Autowired TestRestTemplate http;
+  @Autowired JwtService jwt;
+
+  @Test
+  void healthIsPublicButMetricsNeedAnAdmin() {
+    assertThat(get("/actuator/health", null).getStatusCode())
+        .isNotIn(HttpStatus.UNAUTHORIZED, HttpStatus.FORBIDDEN);
+    assertThat(get("/actuator/metrics", null).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    assertThat(get("/actuator/metrics/http.server.requests", null).getStatusCode())
+        .isEqualTo(HttpStatus.UNAUTHORIZED);
+    // The 403 is rendered on an error dispatch the token filter does not see, so it may come back as 401
+    assertThat(get("/actuator/metrics", "USER").getStatusCode())
+        .isIn(HttpStatus.UNAUTHORIZED, HttpStatus.FORBIDDEN);
+    assertThat(get("/actuator/metrics", "ADMIN").getStatusCode()).isEqualTo(HttpStatus.OK);
+  }
+
+  @Test
+  void attendeeListsNeedASignedInUser() {
+    assertThat(get("/api/events/e1/attendees", null).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+  }
+
+  private ResponseEntity<String> get(String path, String role) {
+    HttpHeaders headers = new HttpHeaders();
+    if (role != null) {
+      String token = jwt.generateAccess("u1@example.com", Map.of("uid", "u1", "roles", List.of(role)));
+      headers.setBearerAuth(token);
+    }
+    return http.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+  }
+}
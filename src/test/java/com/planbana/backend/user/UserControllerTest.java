@@ -0,0 +1,35 @@
+package com.planbana.backend.user;
+
+import com.planbana.backend.buddies.InterestIndex;
+import com.planbana.backend.common.PartialUpdater;
+import com.planbana.backend.feed.FeedService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class UserControllerTest {
+
+  private final PartialUpdater updater = mock(PartialUpdater.class);
+  private final FeedService feed = mock(FeedService.class);
+  private final MockMvc mvc = MockMvcBuilders.standaloneSetup(
+      new UserController(mock(UserRepository.class), updater, feed, mock(InterestIndex.class))).build();
+
+  @Test
+  void outOfRangeCoordinatesAreRejected() throws Exception {
+    for (String body : new String[] {
+        "{\"latitude\": 91, \"longitude\": 0}",
+        "{\"latitude\": -90.5, \"longitude\": 0}",
+        "{\"latitude\": 0, \"longitude\": 180.01}",
+        "{\"latitude\": 0, \"longitude\": -200}"}) {
+      mvc.perform(patch("/api/users/me").contentType(MediaType.APPLICATION_JSON).content(body))
+          .andExpect(status().isBadRequest());
+    }
+    verifyNoInteractions(updater, feed);
+  }
+}